@@ -0,0 +1,118 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.Document;
+import it.unimi.di.big.mg4j.document.DocumentIterator;
+import it.unimi.dsi.io.WordReader;
+import it.unimi.dsi.lang.MutableString;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Parsing chunk documents into mg4j Documents, and reading their terms
+ * through ChunkWordReader, as index building does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChunkParsingBenchmark {
+    @Param({ "1000" })
+    int documents;
+
+    @Param({ "100" })
+    int termsPerDocument;
+
+    byte[] chunk;
+
+    // One stream of documents * termsPerDocument terms, as chunk bytes and as
+    // the text that a plain Reader would return.
+    ChunkStreamReader streamReader;
+    String streamText;
+
+    final ChunkWordReader wordReader = new ChunkWordReader();
+    final MutableString word = new MutableString();
+    final MutableString nonWord = new MutableString();
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticCorpus corpus = new SyntheticCorpus(100000, 1.0, 42);
+        chunk = corpus.chunk(documents, termsPerDocument);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < documents * termsPerDocument; ++i) {
+            text.append(corpus.term()).append('\0');
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        streamReader = new ChunkStreamReader(ByteBuffer.wrap(bytes));
+        streamReader.addSegment(0, bytes.length);
+        streamText = text.append('\0').toString();
+    }
+
+
+    /**
+     * Parses every document of the chunk and reads every term of every field.
+     */
+    @Benchmark
+    public long chunkDocumentSequence() throws IOException {
+        ChunkDocumentSequence sequence = new ChunkDocumentSequence(new ByteArrayInputStream(chunk), FieldSchema.DEFAULT);
+        int fieldCount = FieldSchema.DEFAULT.fieldCount();
+        long terms = 0;
+        DocumentIterator iterator = sequence.iterator();
+        Document document;
+        while ((document = iterator.nextDocument()) != null) {
+            for (int f = 0; f < fieldCount; ++f) {
+                WordReader reader = document.wordReader(f);
+                reader.setReader((Reader)document.content(f));
+                while (reader.next(word, nonWord)) {
+                    ++terms;
+                }
+            }
+            document.close();
+        }
+        iterator.close();
+        sequence.close();
+        return terms;
+    }
+
+
+    /**
+     * ChunkWordReader.next() on its fast path, decoding terms straight from
+     * the chunk's bytes.
+     */
+    @Benchmark
+    public long chunkWordReaderTermSource() throws IOException {
+        streamReader.rewind();
+        wordReader.setReader(streamReader);
+        long terms = 0;
+        while (wordReader.next(word, nonWord)) {
+            ++terms;
+        }
+        return terms;
+    }
+
+
+    /**
+     * ChunkWordReader.next() on its general path, one char at a time from a
+     * Reader.
+     */
+    @Benchmark
+    public long chunkWordReaderReader() throws IOException {
+        wordReader.setReader(new StringReader(streamText));
+        long terms = 0;
+        while (wordReader.next(word, nonWord)) {
+            ++terms;
+        }
+        return terms;
+    }
+}
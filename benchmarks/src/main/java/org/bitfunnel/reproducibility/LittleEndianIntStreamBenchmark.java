@@ -0,0 +1,57 @@
+package org.bitfunnel.reproducibility;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * LittleEndianIntStream.putInt(), which writes every posting of an exported
+ * index. The stream writes to the null device, where there is one, so the
+ * benchmark measures buffering rather than the disk.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LittleEndianIntStreamBenchmark {
+    static final int INTS_PER_INVOCATION = 1024;
+
+    File file;
+    FileOutputStream out;
+    LittleEndianIntStream stream;
+    int value = 0;
+
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        File devNull = new File("/dev/null");
+        file = devNull.exists() ? devNull : File.createTempFile("putInt", ".bin");
+        out = new FileOutputStream(file);
+        stream = new LittleEndianIntStream(out);
+    }
+
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        stream.close();
+        out.close();
+        if (!file.getPath().equals("/dev/null")) {
+            file.delete();
+        }
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(INTS_PER_INVOCATION)
+    public void putInt() throws IOException {
+        for (int i = 0; i < INTS_PER_INVOCATION; ++i) {
+            stream.putInt(value++);
+        }
+    }
+}
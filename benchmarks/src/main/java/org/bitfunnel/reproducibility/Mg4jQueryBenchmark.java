@@ -0,0 +1,114 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.index.Index;
+import it.unimi.di.big.mg4j.query.SelectedInterval;
+import it.unimi.di.big.mg4j.query.parser.SimpleParser;
+import it.unimi.di.big.mg4j.search.DocumentIteratorBuilderVisitor;
+import it.unimi.di.big.mg4j.search.score.DocumentScoreInfo;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Conjunctive queries through ExperimentalQueryEngine.process(), set up as
+ * Mg4jQueryProcessor does, and posting list export with IndexExporter, over
+ * an mg4j index of a synthetic corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Mg4jQueryBenchmark {
+    /**
+     * The index, built once per trial with ParallelIndexBuilder and shared by
+     * all threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Corpus {
+        @Param({ "20000" })
+        int documents;
+
+        @Param({ "100" })
+        int termsPerDocument;
+
+        @Param({ "2", "3" })
+        int termsPerQuery;
+
+        Path directory;
+        String basename;
+        Mg4jIndex index;
+        List<String> queries;
+
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            SyntheticCorpus corpus = new SyntheticCorpus(100000, 1.0, 42);
+            directory = Files.createTempDirectory("mg4j-benchmark");
+            Path manifest = SyntheticCorpus.writeManifest(corpus.chunk(documents, termsPerDocument), directory, "corpus");
+            basename = directory.resolve("index").toString();
+            new ParallelIndexBuilder(manifest.toString(), basename, false, false).run(1, false);
+            index = new Mg4jIndex(basename, FieldSchema.DEFAULT);
+            queries = corpus.queries(1000, termsPerQuery);
+        }
+
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            SyntheticCorpus.delete(directory);
+        }
+    }
+
+
+    ExperimentalQueryEngine engine;
+    final ObjectArrayList<DocumentScoreInfo<Reference2ObjectMap<Index, SelectedInterval[]>>> results = new ObjectArrayList<>();
+    int query = 0;
+
+    IndexExporter exporter;
+    Path exportBasename;
+
+
+    @Setup(Level.Trial)
+    public void setup(Corpus corpus) throws Exception {
+        Mg4jIndex index = corpus.index;
+        engine = new ExperimentalQueryEngine(
+            new SimpleParser( index.indexMap.keySet(), index.defaultField, index.termProcessors ),
+            new DocumentIteratorBuilderVisitor(
+                    index.indexMap,
+                    index.defaultIndex, 1000 ),
+            index.indexMap);
+
+        exporter = new IndexExporter(corpus.basename, FieldSchema.DEFAULT);
+        exportBasename = Files.createTempDirectory(corpus.directory, "export").resolve("index");
+    }
+
+
+    /**
+     * One query of the log, in turn.
+     */
+    @Benchmark
+    public int conjunctiveQuery(Corpus corpus) throws Exception {
+        results.clear();
+        String text = corpus.queries.get(query);
+        query = (query + 1) % corpus.queries.size();
+        return engine.process(text, 0, 1000000000, results);
+    }
+
+
+    /**
+     * Every posting list of the text field, written in the Partitioned
+     * Elias-Fano input format.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void exportPostings() throws Exception {
+        exporter.exportIndex(exportBasename);
+    }
+}
@@ -0,0 +1,148 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Generates BitFunnel chunks and query logs whose terms follow a Zipf
+ * distribution, like natural language text, so the benchmarks run offline
+ * and on the same data everywhere. The same seed gives the same corpus.
+ *
+ * Documents have a body in stream 00 (the "text" field of the default schema,
+ * and the field LuceneQueryProcessor searches) and a short title in stream 01.
+ */
+public class SyntheticCorpus {
+    private final String[] vocabulary;
+    // cumulative[i] is the probability of drawing one of vocabulary[0..i].
+    private final double[] cumulative;
+    private final Random random;
+
+
+    /**
+     * @param exponent the Zipf exponent. The term of rank r is drawn with
+     * probability proportional to 1 / r^exponent. English text is close to 1.
+     */
+    public SyntheticCorpus(int vocabularySize, double exponent, long seed) {
+        vocabulary = new String[vocabularySize];
+        cumulative = new double[vocabularySize];
+        double total = 0;
+        for (int rank = 0; rank < vocabularySize; ++rank) {
+            vocabulary[rank] = "t" + Integer.toString(rank, 36);
+            total += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < vocabularySize; ++rank) {
+            cumulative[rank] /= total;
+        }
+        random = new Random(seed);
+    }
+
+
+    /**
+     * @return a term drawn from the Zipf distribution.
+     */
+    public String term() {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        return vocabulary[Math.min(rank >= 0 ? rank : -rank - 1, vocabulary.length - 1)];
+    }
+
+
+    /**
+     * @return a chunk, in the text format, of documentCount documents with
+     * bodies of termsPerDocument terms and titles of three.
+     */
+    public byte[] chunk(int documentCount, int termsPerDocument) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(documentCount * termsPerDocument * 8);
+        StringBuilder document = new StringBuilder();
+        for (int i = 0; i < documentCount; ++i) {
+            document.setLength(0);
+            document.append(String.format("%016x", i)).append('\0');
+            appendStream(document, "00", termsPerDocument);
+            appendStream(document, "01", 3);
+            document.append('\0');
+            byte[] bytes = document.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+        out.write(0);
+        return out.toByteArray();
+    }
+
+
+    /**
+     * @return count conjunctive queries, in the query log format, of
+     * termsPerQuery distinct terms each.
+     */
+    public List<String> queries(int count, int termsPerQuery) {
+        List<String> queries = new ArrayList<>(count);
+        List<String> terms = new ArrayList<>(termsPerQuery);
+        for (int i = 0; i < count; ++i) {
+            terms.clear();
+            while (terms.size() < Math.min(termsPerQuery, vocabulary.length)) {
+                String term = term();
+                if (!terms.contains(term)) {
+                    terms.add(term);
+                }
+            }
+            queries.add(String.join(" ", terms));
+        }
+        return queries;
+    }
+
+
+    /**
+     * Writes chunk to directory/name.chunk and a manifest listing it to
+     * directory/name.manifest, for ParallelIndexBuilder.
+     *
+     * @return the path of the manifest.
+     */
+    public static Path writeManifest(byte[] chunk, Path directory, String name) throws IOException {
+        Path chunkPath = directory.resolve(name + ".chunk");
+        Files.write(chunkPath, chunk);
+        Path manifest = directory.resolve(name + ".manifest");
+        Files.write(manifest, Arrays.asList(chunkPath.toString()), StandardCharsets.UTF_8);
+        return manifest;
+    }
+
+
+    /**
+     * Deletes directory and everything in it.
+     */
+    public static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+
+    private void appendStream(StringBuilder document, String streamId, int termCount) {
+        document.append(streamId).append('\0');
+        for (int i = 0; i < termCount; ++i) {
+            document.append(term()).append('\0');
+        }
+        document.append('\0');
+    }
+}
@@ -0,0 +1,83 @@
+package org.bitfunnel.runner;
+
+import org.bitfunnel.reproducibility.SyntheticCorpus;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * CorpusFile.process(), which parses chunks for Lucene ingestion, reporting
+ * to a processor that only counts, so only parsing is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CorpusFileBenchmark {
+    @Param({ "1000" })
+    int documents;
+
+    @Param({ "100" })
+    int termsPerDocument;
+
+    byte[] chunk;
+
+
+    static class CountingProcessor implements IRawDocumentProcessor {
+      long terms = 0;
+
+      @Override public void openDocumentSet() { }
+      @Override public void openDocument(long documentId) { }
+      @Override public void openStream(String name) { }
+      @Override public void term(byte[] bytes, int offset, int length) { ++terms; }
+      @Override public void closeStream() { }
+      @Override public void closeDocument() { }
+      @Override public void closeDocumentSet() { }
+    }
+
+
+    static class CountingStringProcessor implements IDocumentProcessor {
+      long terms = 0;
+
+      @Override public void openDocumentSet() { }
+      @Override public void openDocument(Long documentId) { }
+      @Override public void openStream(String name) { }
+      @Override public void term(String term) { ++terms; }
+      @Override public void closeStream() { }
+      @Override public void closeDocument() { }
+      @Override public void closeDocumentSet() { }
+    }
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        chunk = new SyntheticCorpus(100000, 1.0, 42).chunk(documents, termsPerDocument);
+    }
+
+
+    /**
+     * Terms as byte slices of the parser's buffer.
+     */
+    @Benchmark
+    public long raw() throws IOException {
+        CountingProcessor processor = new CountingProcessor();
+        new CorpusFile(new ByteArrayInputStream(chunk)).process(processor);
+        return processor.terms;
+    }
+
+
+    /**
+     * Terms as Strings, through StringDocumentProcessorAdapter.
+     */
+    @Benchmark
+    public long strings() throws IOException {
+        CountingStringProcessor processor = new CountingStringProcessor();
+        new CorpusFile(new ByteArrayInputStream(chunk)).process(processor);
+        return processor.terms;
+    }
+}
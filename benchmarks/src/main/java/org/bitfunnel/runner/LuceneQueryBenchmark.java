@@ -0,0 +1,115 @@
+package org.bitfunnel.runner;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.bitfunnel.reproducibility.SyntheticCorpus;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Conjunctive ConstantScoreQuery execution over a Lucene index of a synthetic
+ * corpus, with queries built as LuceneQueryProcessor builds them, and
+ * ingestion of the corpus with TokenStreamDocumentProcessor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LuceneQueryBenchmark {
+    @Param({ "20000" })
+    int documents;
+
+    @Param({ "100" })
+    int termsPerDocument;
+
+    @Param({ "2", "3" })
+    int termsPerQuery;
+
+    byte[] chunk;
+    Directory directory;
+    DirectoryReader reader;
+    IndexSearcher searcher;
+    List<String> queries;
+
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int query = 0;
+    }
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(100000, 1.0, 42);
+        chunk = corpus.chunk(documents, termsPerDocument);
+        queries = corpus.queries(1000, termsPerQuery);
+
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()));
+        new CorpusFile(new ByteArrayInputStream(chunk)).process(new TokenStreamDocumentProcessor(writer));
+        writer.forceMerge(1);
+        writer.close();
+
+        reader = DirectoryReader.open(directory);
+        searcher = new IndexSearcher(reader);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+
+    /**
+     * One query of the log, in turn.
+     */
+    @Benchmark
+    public int constantScoreQuery(Cursor cursor) throws IOException {
+        String[] terms = queries.get(cursor.query).split(" ");
+        cursor.query = (cursor.query + 1) % queries.size();
+
+        BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder();
+        for (String termText : terms) {
+            queryBuilder.add(new TermQuery(new Term("00", termText)), BooleanClause.Occur.FILTER);
+        }
+        TotalHitCountCollector collector = new TotalHitCountCollector();
+        searcher.search(new ConstantScoreQuery(queryBuilder.build()), collector);
+        return collector.getTotalHits();
+    }
+
+
+    /**
+     * Indexing the whole corpus into memory.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long ingest() throws IOException {
+        try (Directory target = new RAMDirectory();
+             IndexWriter writer = new IndexWriter(target, new IndexWriterConfig(new StandardAnalyzer()))) {
+            TokenStreamDocumentProcessor processor = new TokenStreamDocumentProcessor(writer);
+            new CorpusFile(new ByteArrayInputStream(chunk)).process(processor);
+            writer.commit();
+            return processor.documentCount();
+        }
+    }
+}
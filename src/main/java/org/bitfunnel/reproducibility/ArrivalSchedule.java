@@ -0,0 +1,102 @@
+package org.bitfunnel.reproducibility;
+
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Issues queries at a target arrival rate, whether or not earlier queries have
+ * finished, for open-loop load generation. Each query carries the time it was
+ * scheduled to arrive, so its latency includes the time it waited for a free
+ * thread, and a dispatcher that falls behind does not hide that wait.
+ */
+public class ArrivalSchedule {
+    public enum Arrivals {
+        // Evenly spaced arrivals.
+        CONSTANT,
+        // Exponentially distributed gaps between arrivals, as from many independent users.
+        POISSON
+    }
+
+
+    /**
+     * A query, and System.nanoTime() when it was scheduled to arrive.
+     */
+    public static class ScheduledQuery {
+        public final int queryIndex;
+        public final long scheduledNanos;
+
+        ScheduledQuery(int queryIndex, long scheduledNanos) {
+            this.queryIndex = queryIndex;
+            this.scheduledNanos = scheduledNanos;
+        }
+    }
+
+    // Tells a worker that the pass has ended.
+    public static final ScheduledQuery END = new ScheduledQuery(-1, 0);
+
+    // Waits shorter than this are spun, since parking can oversleep by as much.
+    static final long SPIN_NANOS = 50 * 1000;
+
+    private final double queriesPerSecond;
+    private final Arrivals arrivals;
+    private final Random random;
+
+
+    public ArrivalSchedule(double queriesPerSecond, Arrivals arrivals, long seed) {
+        if (queriesPerSecond <= 0) {
+            throw new IllegalArgumentException("ArrivalSchedule: the arrival rate must be positive.");
+        }
+        this.queriesPerSecond = queriesPerSecond;
+        this.arrivals = arrivals;
+        this.random = new Random(seed);
+    }
+
+
+    public double queriesPerSecond() {
+        return queriesPerSecond;
+    }
+
+
+    public Arrivals arrivals() {
+        return arrivals;
+    }
+
+
+    /**
+     * @return the gap before the next arrival, in nanoseconds.
+     */
+    public double nextGapNanos() {
+        double mean = 1e9 / queriesPerSecond;
+        if (arrivals == Arrivals.POISSON) {
+            return -Math.log(1.0 - random.nextDouble()) * mean;
+        }
+        return mean;
+    }
+
+
+    /**
+     * Puts queryCount queries into queue at their scheduled arrival times,
+     * followed by an END for each of workerCount workers. The queue should be
+     * unbounded, so a backlog builds up instead of delaying arrivals.
+     */
+    public void dispatch(int queryCount, BlockingQueue<ScheduledQuery> queue, int workerCount) throws InterruptedException {
+        long start = System.nanoTime();
+        double offset = 0;
+        for (int i = 0; i < queryCount; ++i) {
+            long scheduled = start + (long)offset;
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) {
+                if (wait > SPIN_NANOS) {
+                    LockSupport.parkNanos(wait - SPIN_NANOS);
+                }
+            }
+            queue.put(new ScheduledQuery(i, scheduled));
+            offset += nextGapNanos();
+        }
+        for (int i = 0; i < workerCount; ++i) {
+            queue.put(END);
+        }
+    }
+}
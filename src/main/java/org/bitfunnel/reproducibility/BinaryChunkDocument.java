@@ -0,0 +1,151 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.Document;
+import it.unimi.dsi.io.WordReader;
+import it.unimi.dsi.lang.MutableString;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * A document read from a binary chunk. Streams are kept as term ids into the
+ * chunk's term dictionary, so parsing does no utf-8 decoding at all.
+ *
+ * <p>BinaryChunkDocumentIterator reuses a single instance, which is only valid
+ * until the next call to nextDocument().
+ */
+public class BinaryChunkDocument implements Document {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final BinaryTermDictionary dictionary;
+
+    // Streams of fields that are not indexed are skipped. Field i is the stream schema.streamId(i).
+    private final FieldSchema schema;
+
+    private MutableString title = new MutableString();
+    private MutableString uri = new MutableString();
+
+    // Term ids of all streams of the document.
+    private int[] terms = new int[16 * 1024];
+    private int termCount = 0;
+
+    // Reused for every stream of the document.
+    private ChunkWordReader wordReader = new ChunkWordReader();
+
+    // BitFunnel chunk specifies a 8-bit stream identifiers, so max stream id is 255.
+    private static final int STREAM_COUNT = 256;
+
+    // Readers are allocated on first use and kept for reuse. Only indexed streams
+    // are stored, so there is a slot for each stream id up to the schema's largest.
+    private BinaryStreamReader streams[];
+
+    // Ids of the streams present in the current document.
+    private int usedStreams[];
+    private int usedStreamCount = 0;
+
+
+    BinaryChunkDocument(BinaryTermDictionary dictionary, FieldSchema schema) {
+        this.dictionary = dictionary;
+        this.schema = schema;
+        this.streams = new BinaryStreamReader[schema.streamSlots()];
+        this.usedStreams = new int[schema.streamSlots()];
+    }
+
+
+    /**
+     * Discards the current contents and reads the streams of the reader's
+     * current document.
+     */
+    void parse(BinaryChunkReader reader) throws IOException {
+        title.length(0);
+        uri.length(0);
+        termCount = 0;
+        for (int i = 0; i < usedStreamCount; ++i) {
+            streams[usedStreams[i]].clear();
+        }
+        usedStreamCount = 0;
+
+        // Use the same 16 hex digit id as the text format for the title and the uri.
+        long id = reader.documentId();
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            title.append(HEX_DIGITS[(int)(id >>> shift) & 0xf]);
+        }
+        uri.append("localhost://");
+        uri.append(title);
+
+        int streamId;
+        while ((streamId = reader.nextStream()) != -1) {
+            if (streamId >= STREAM_COUNT) {
+                throw new IOException(String.format("BinaryChunkDocument.parse(): stream id %d out of range.", streamId));
+            }
+            if (!schema.isIndexed(streamId)) {
+                reader.skipStream();
+                continue;
+            }
+
+            int start = termCount;
+            int termId;
+            while ((termId = reader.nextTerm()) != -1) {
+                if (termCount == terms.length) {
+                    growTerms();
+                }
+                terms[termCount++] = termId;
+            }
+
+            if (streams[streamId] == null) {
+                streams[streamId] = new BinaryStreamReader(dictionary, terms);
+            }
+            if (!streams[streamId].hasSegments()) {
+                usedStreams[usedStreamCount++] = streamId;
+            }
+            streams[streamId].addSegment(start, termCount);
+        }
+    }
+
+
+    private void growTerms() {
+        terms = Arrays.copyOf(terms, terms.length * 2);
+        for (BinaryStreamReader stream : streams) {
+            if (stream != null) {
+                stream.setTerms(terms);
+            }
+        }
+    }
+
+
+    @Override
+    public CharSequence title() {
+        return title;
+    }
+
+
+    @Override
+    public CharSequence uri() {
+        return uri;
+    }
+
+
+    @Override
+    public Object content(int i) throws IOException {
+        BinaryStreamReader stream = (i >= 0 && i < schema.fieldCount()) ? streams[schema.streamId(i)] : null;
+        if (stream == null || !stream.hasSegments()) {
+            throw new IOException(String.format("BinaryChunkDocument.content: %d stream does not exist.", i));
+        }
+
+        stream.rewind();
+        return stream;
+    }
+
+
+    @Override
+    public WordReader wordReader(int i) {
+        return wordReader;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        // Intentional nop. The iterator reuses this document.
+    }
+}
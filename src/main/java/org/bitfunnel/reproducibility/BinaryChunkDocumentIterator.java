@@ -0,0 +1,42 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.Document;
+import it.unimi.di.big.mg4j.document.DocumentIterator;
+
+import java.io.IOException;
+
+
+/**
+ * Iterates over the documents of a binary chunk. See BinaryChunkReader for the format.
+ */
+public class BinaryChunkDocumentIterator implements DocumentIterator {
+    private final BinaryChunkReader reader;
+    private final BinaryChunkDocument document;
+
+
+    public BinaryChunkDocumentIterator(BinaryChunkReader reader) {
+        this(reader, FieldSchema.DEFAULT);
+    }
+
+
+    public BinaryChunkDocumentIterator(BinaryChunkReader reader, FieldSchema schema) {
+        this.reader = reader;
+        this.document = new BinaryChunkDocument(reader.dictionary(), schema);
+    }
+
+
+    @Override
+    public Document nextDocument() throws IOException {
+        if (!reader.nextDocument()) {
+            return null;
+        }
+        document.parse(reader);
+        return document;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        // Intentional nop. The input is owned by the sequence.
+    }
+}
@@ -0,0 +1,68 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.DocumentFactory;
+import it.unimi.di.big.mg4j.document.DocumentIterator;
+import it.unimi.di.big.mg4j.document.DocumentSequence;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * A DocumentSequence over a BitFunnel chunk file in the binary format
+ * written by BinaryChunkFile.
+ */
+public class BinaryChunkDocumentSequence implements DocumentSequence {
+    private final InputStream input;
+    private FieldSchema schema = FieldSchema.DEFAULT;
+
+
+    public BinaryChunkDocumentSequence(String file) throws IOException {
+        input = ChunkCompression.open(file);
+    }
+
+
+    /**
+     * Constructs a sequence over a chunk that is already open. The sequence closes input.
+     */
+    public BinaryChunkDocumentSequence(InputStream input) {
+        this.input = input;
+    }
+
+
+    public BinaryChunkDocumentSequence(String file, FieldSchema schema) throws IOException {
+        this(file);
+        this.schema = schema;
+    }
+
+
+    public BinaryChunkDocumentSequence(InputStream input, FieldSchema schema) {
+        this(input);
+        this.schema = schema;
+    }
+
+
+    @Override
+    public DocumentIterator iterator() throws IOException {
+        return new BinaryChunkDocumentIterator(new BinaryChunkReader(input), schema);
+    }
+
+
+    @Override
+    public DocumentFactory factory() {
+        return new ChunkDocumentFactory(schema);
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+
+    @Override
+    public void filename(CharSequence charSequence) throws IOException {
+        // Intentional nop. See javadoc for filename() method of it.unimi.di.big.mg4j.document.DocumentSequence
+        // for more information.
+    }
+}
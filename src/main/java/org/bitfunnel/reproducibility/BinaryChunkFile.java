@@ -0,0 +1,158 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.lang.MutableString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Writes a BitFunnel chunk in the binary format. Each term is spelled out
+ * once per chunk, the first time it is emitted. After that it is written as a
+ * varint term id. See BinaryChunkReader for the grammar.
+ *
+ * <p>Documents are assembled in memory and handed to ChunkFile's output
+ * buffer when their DocumentScope closes.
+ */
+public class BinaryChunkFile extends ChunkFile {
+    // Term text -> term id, for every term defined so far in this chunk.
+    private final Object2IntOpenHashMap<MutableString> dictionary = new Object2IntOpenHashMap<>();
+
+    // Holds the (possibly lower cased) text of the term being emitted.
+    private final MutableString scratch = new MutableString();
+
+    // Definitions of the terms first seen in the current document.
+    private final FastByteArrayOutputStream definitions = new FastByteArrayOutputStream();
+    private int definitionCount = 0;
+
+    // The current document's streams, each with its id and length prefix.
+    private final FastByteArrayOutputStream streams = new FastByteArrayOutputStream();
+
+    // Term ids of the current stream.
+    private final FastByteArrayOutputStream terms = new FastByteArrayOutputStream();
+
+    private int documentId;
+    private int streamId;
+
+
+    public BinaryChunkFile(OutputStream outputStream)
+    {
+        super(outputStream);
+        writeHeader();
+    }
+
+
+    public BinaryChunkFile(FileChannel channel)
+    {
+        super(channel);
+        writeHeader();
+    }
+
+
+    private void writeHeader() {
+        dictionary.defaultReturnValue(-1);
+        write(BinaryChunkReader.MAGIC, 0, BinaryChunkReader.MAGIC.length);
+        write(BinaryChunkReader.VERSION);
+    }
+
+
+    @Override
+    protected void term(CharSequence text, boolean toLowerCase) {
+        scratch.length(0);
+        scratch.append(text);
+        if (toLowerCase) {
+            scratch.toLowerCase();
+        }
+
+        int termId = dictionary.getInt(scratch);
+        if (termId == -1) {
+            termId = dictionary.size();
+            dictionary.put(scratch.copy(), termId);
+
+            // New terms are rare, so going through a String is fine here.
+            byte[] bytes = scratch.toString().getBytes(StandardCharsets.UTF_8);
+            writeVarInt(definitions, bytes.length);
+            append(definitions, bytes, bytes.length);
+            ++definitionCount;
+        }
+        writeVarInt(terms, termId);
+    }
+
+
+    @Override
+    protected void openDocument(int documentId) {
+        this.documentId = documentId;
+        definitions.reset();
+        definitionCount = 0;
+        streams.reset();
+    }
+
+
+    @Override
+    protected void openStream(int streamId) {
+        this.streamId = streamId;
+        terms.reset();
+    }
+
+
+    @Override
+    protected void closeStream() {
+        writeVarInt(streams, streamId + 1);
+        writeVarInt(streams, terms.length);
+        append(streams, terms.array, terms.length);
+    }
+
+
+    @Override
+    protected void closeDocument() {
+        // Header goes into the (now unused) terms buffer.
+        terms.reset();
+        writeVarLong(terms, documentId + 1L);
+        writeVarInt(terms, definitionCount);
+
+        write(terms.array, 0, terms.length);
+        write(definitions.array, 0, definitions.length);
+        write(streams.array, 0, streams.length);
+        write(0);
+    }
+
+
+    @Override
+    protected void closeFile() {
+        write(0);
+        flush();
+    }
+
+
+    // FastByteArrayOutputStream.write() declares IOException, but never throws it.
+    private static void append(FastByteArrayOutputStream out, byte[] bytes, int length) {
+        try {
+            out.write(bytes, 0, length);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Error writing bytes.");
+        }
+    }
+
+
+    static void writeVarInt(FastByteArrayOutputStream out, int value) {
+        writeVarLong(out, value & 0xffffffffL);
+    }
+
+
+    /**
+     * Writes {@code value} as a little-endian base-128 varint: seven bits
+     * per byte, with the high bit set on every byte but the last.
+     */
+    static void writeVarLong(FastByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+}
@@ -0,0 +1,290 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+
+
+/**
+ * Reads a BitFunnel chunk in the binary format written by BinaryChunkFile.
+ *
+ * <pre>
+ * Grammar:
+ *      Chunk: Magic Version Document* End
+ *      Magic: 'B' 'F' 'C' 'B'
+ *      Version: 1
+ *      Document: VarLong(DocumentId + 1) VarInt(TermCount) Term{TermCount} Stream* End
+ *      Term: VarInt(ByteCount) Utf8{ByteCount}
+ *      Stream: VarInt(StreamId + 1) VarInt(ByteCount) VarInt(TermId)*
+ *      End: 0
+ * </pre>
+ *
+ * Varints are little-endian base 128, seven bits per byte, with the high bit
+ * set on every byte but the last. The terms defined by a document get the next
+ * ids of the chunk's term dictionary, in order, and may be referenced by that
+ * document and every later one. Since definitions precede the streams, a
+ * stream can be skipped using its byte count without losing any terms.
+ *
+ * <p>Usage: call nextDocument() until it returns false. For each document,
+ * call nextStream() until it returns -1 and, for each stream, nextTerm()
+ * until it returns -1.
+ */
+public class BinaryChunkReader implements AutoCloseable {
+    static final byte[] MAGIC = { 'B', 'F', 'C', 'B' };
+    public static final int MAGIC_LENGTH = 4;
+    static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    private final BinaryTermDictionary dictionary = new BinaryTermDictionary();
+
+    private long documentId = -1;
+
+    // True from nextDocument() until nextStream() reaches the document's End.
+    private boolean documentOpen = false;
+
+    // Bytes of the current stream that have not been read yet.
+    private int streamRemaining = 0;
+
+
+    public BinaryChunkReader(InputStream input) throws IOException {
+        this.input = input;
+        for (byte b : MAGIC) {
+            if (readByte() != b) {
+                throw new IOException("BinaryChunkReader: not a binary chunk.");
+            }
+        }
+        if (readByte() != VERSION) {
+            throw new IOException("BinaryChunkReader: unsupported binary chunk version.");
+        }
+    }
+
+
+    /**
+     * Returns true if {@code file}, once decompressed, starts with the binary chunk magic number.
+     */
+    public static boolean isBinaryChunk(String file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            return Arrays.equals(ChunkCompression.readPrefix(input, MAGIC.length), MAGIC);
+        }
+    }
+
+
+    /**
+     * Returns true if input starts with the binary chunk magic number. The bytes
+     * read are pushed back, so input needs room for MAGIC_LENGTH bytes.
+     */
+    public static boolean isBinaryChunk(PushbackInputStream input) throws IOException {
+        byte[] header = new byte[MAGIC.length];
+        int count = 0;
+        while (count < header.length) {
+            int n = input.read(header, count, header.length - count);
+            if (n == -1) {
+                break;
+            }
+            count += n;
+        }
+        input.unread(header, 0, count);
+        return count == header.length && Arrays.equals(header, MAGIC);
+    }
+
+
+    /**
+     * Advances to the next document, skipping whatever is left of the current
+     * one, and reads its term definitions into the dictionary.
+     * @return false at the end of the chunk.
+     */
+    public boolean nextDocument() throws IOException {
+        while (nextStream() != -1) {
+            // Skip remaining streams.
+        }
+
+        long value = readVarLong();
+        if (value == 0) {
+            documentId = -1;
+            if (fill(1)) {
+                throw new IOException("BinaryChunkReader.nextDocument(): expected EOF, but found trailing content.");
+            }
+            return false;
+        }
+        documentId = value - 1;
+        documentOpen = true;
+
+        int termCount = readVarInt();
+        for (int i = 0; i < termCount; ++i) {
+            int length = readVarInt();
+            if (length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length));
+            }
+            if (!fill(length)) {
+                throw new IOException("BinaryChunkReader.nextDocument(): unexpected EOF.");
+            }
+            dictionary.add(buffer, position, length);
+            position += length;
+        }
+
+        return true;
+    }
+
+
+    public long documentId() {
+        return documentId;
+    }
+
+
+    /**
+     * Advances to the next stream of the current document, skipping whatever is
+     * left of the current stream.
+     * @return the stream id, or -1 if the document has no more streams.
+     */
+    public int nextStream() throws IOException {
+        if (!documentOpen) {
+            return -1;
+        }
+        skipStream();
+        int value = readVarInt();
+        if (value == 0) {
+            documentOpen = false;
+            return -1;
+        }
+        streamRemaining = readVarInt();
+        return value - 1;
+    }
+
+
+    /**
+     * @return the id of the next term of the current stream, or -1 at the end of the stream.
+     */
+    public int nextTerm() throws IOException {
+        if (streamRemaining == 0) {
+            return -1;
+        }
+        int start = position;
+        int termId;
+        if (limit - position >= 5) {
+            termId = readVarIntFast();
+            streamRemaining -= position - start;
+        }
+        else {
+            termId = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                termId |= (b & 0x7f) << shift;
+                shift += 7;
+                --streamRemaining;
+            } while ((b & 0x80) != 0);
+        }
+        if (streamRemaining < 0) {
+            throw new IOException("BinaryChunkReader.nextTerm(): term runs past the end of the stream.");
+        }
+        if (termId >= dictionary.size()) {
+            throw new IOException(String.format("BinaryChunkReader.nextTerm(): term %d is not defined.", termId));
+        }
+        return termId;
+    }
+
+
+    /**
+     * Skips the remainder of the current stream.
+     */
+    public void skipStream() throws IOException {
+        while (streamRemaining > 0) {
+            if (position == limit && !fill(1)) {
+                throw new IOException("BinaryChunkReader.skipStream(): unexpected EOF.");
+            }
+            int n = Math.min(streamRemaining, limit - position);
+            position += n;
+            streamRemaining -= n;
+        }
+    }
+
+
+    public BinaryTermDictionary dictionary() {
+        return dictionary;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+
+    private int readByte() throws IOException {
+        if (position == limit && !fill(1)) {
+            throw new IOException("BinaryChunkReader: unexpected EOF.");
+        }
+        return buffer[position++] & 0xff;
+    }
+
+
+    private int readVarInt() throws IOException {
+        if (limit - position >= 5) {
+            return readVarIntFast();
+        }
+        return (int)readVarLong();
+    }
+
+
+    // Caller guarantees at least five bytes in the buffer.
+    private int readVarIntFast() throws IOException {
+        int b = buffer[position++];
+        if (b >= 0) {
+            return b;
+        }
+        int value = b & 0x7f;
+        for (int shift = 7; shift < 35; shift += 7) {
+            b = buffer[position++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("BinaryChunkReader: malformed varint.");
+    }
+
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long)(b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("BinaryChunkReader: malformed varint.");
+    }
+
+
+    /**
+     * Ensures that at least {@code count} unread bytes are in the buffer,
+     * which must be able to hold them.
+     * @return false if the input ends first.
+     */
+    private boolean fill(int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < count) {
+            int n = input.read(buffer, limit, buffer.length - limit);
+            if (n == -1) {
+                return false;
+            }
+            limit += n;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,145 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.dsi.lang.MutableString;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+
+/**
+ * A Reader over a stream of a binary chunk document. The stream is held as
+ * segments of term ids in an array shared by all streams of the document.
+ *
+ * <p>Like ChunkStreamReader, read() produces the text format of the stream,
+ * "(Term End)* End". ChunkWordReader skips that and copies each term's text
+ * straight from the term dictionary through nextTerm().
+ */
+class BinaryStreamReader extends Reader implements TermSource {
+    private final BinaryTermDictionary dictionary;
+    private int[] terms;
+
+    // Segment i spans terms[segments[2 * i]] to terms[segments[2 * i + 1]].
+    private int[] segments = new int[2 * 2];
+    private int segmentCount = 0;
+
+    // Read position: current segment and index into terms.
+    private int segment = 0;
+    private int cursor = 0;
+
+    // Char position within the current term, for read(). A value equal to
+    // the term's length denotes the '\0' that follows it.
+    private int charIndex = 0;
+    private boolean atEnd = false;
+
+
+    BinaryStreamReader(BinaryTermDictionary dictionary, int[] terms) {
+        this.dictionary = dictionary;
+        this.terms = terms;
+    }
+
+
+    void setTerms(int[] terms) {
+        this.terms = terms;
+    }
+
+
+    void addSegment(int start, int end) {
+        if (2 * segmentCount + 2 > segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        segments[2 * segmentCount] = start;
+        segments[2 * segmentCount + 1] = end;
+        ++segmentCount;
+        if (segmentCount == 1) {
+            rewind();
+        }
+    }
+
+
+    boolean hasSegments() {
+        return segmentCount > 0;
+    }
+
+
+    void clear() {
+        segmentCount = 0;
+    }
+
+
+    void rewind() {
+        segment = 0;
+        cursor = segmentCount > 0 ? segments[0] : 0;
+        charIndex = 0;
+        atEnd = false;
+    }
+
+
+    /**
+     * Moves cursor to the next term, crossing segment boundaries.
+     * @return false if there are no more terms.
+     */
+    private boolean seekTerm() {
+        while (segment < segmentCount) {
+            if (cursor < segments[2 * segment + 1]) {
+                return true;
+            }
+            if (++segment < segmentCount) {
+                cursor = segments[2 * segment];
+            }
+        }
+        return false;
+    }
+
+
+    @Override
+    public boolean nextTerm(MutableString term) throws IOException {
+        if (!seekTerm()) {
+            return false;
+        }
+        term.length(0);
+        dictionary.append(terms[cursor++], term);
+        return true;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        if (!seekTerm()) {
+            if (atEnd) {
+                return -1;
+            }
+            atEnd = true;
+            return 0;
+        }
+        int id = terms[cursor];
+        int start = dictionary.start(id);
+        int length = dictionary.end(id) - start;
+        if (charIndex < length) {
+            return dictionary.chars()[start + charIndex++];
+        }
+        charIndex = 0;
+        ++cursor;
+        return 0;
+    }
+
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int count = 0;
+        while (count < len) {
+            int c = read();
+            if (c == -1) {
+                return count == 0 ? -1 : count;
+            }
+            cbuf[off + count++] = (char)c;
+        }
+        return count;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        // Intentional nop. The terms are owned by the document.
+    }
+}
@@ -0,0 +1,118 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.dsi.lang.MutableString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * The term dictionary of a binary chunk. Terms are numbered in the order they
+ * are defined. Besides a String per term, the text of every term is kept in
+ * a single char arena, so appending a term to a MutableString is an array copy.
+ */
+public class BinaryTermDictionary {
+    private char[] chars = new char[64 * 1024];
+    private int charCount = 0;
+
+    // Term i occupies chars[offsets[i]] to chars[offsets[i + 1]].
+    private int[] offsets = new int[4 * 1024 + 1];
+    private int size = 0;
+
+    // The String for each term.
+    private String[] strings = new String[4 * 1024];
+
+    // The utf-8 bytes of term i are bytes[byteOffsets[i]] to bytes[byteOffsets[i + 1]].
+    private byte[] bytes = new byte[64 * 1024];
+    private int[] byteOffsets = new int[4 * 1024 + 1];
+
+
+    /**
+     * Defines the next term from its utf-8 bytes.
+     * @return the id of the new term.
+     */
+    int add(byte[] bytes, int offset, int length) {
+        // Term definitions are rare compared to references, so decoding through
+        // a String is fine here.
+        String text = new String(bytes, offset, length, StandardCharsets.UTF_8);
+
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            strings = Arrays.copyOf(strings, strings.length * 2);
+            byteOffsets = Arrays.copyOf(byteOffsets, byteOffsets.length * 2);
+        }
+        int byteCount = byteOffsets[size];
+        if (byteCount + length > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, byteCount + length));
+        }
+        if (charCount + text.length() > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + text.length()));
+        }
+
+        text.getChars(0, text.length(), chars, charCount);
+        charCount += text.length();
+        System.arraycopy(bytes, offset, this.bytes, byteCount, length);
+        byteOffsets[size + 1] = byteCount + length;
+        strings[size] = text;
+        offsets[++size] = charCount;
+
+        return size - 1;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Appends the text of term {@code id} to {@code target}.
+     */
+    public void append(int id, MutableString target) {
+        int start = offsets[id];
+        target.append(chars, start, offsets[id + 1] - start);
+    }
+
+
+    public String get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException(String.format("BinaryTermDictionary.get(): term %d is not defined.", id));
+        }
+        return strings[id];
+    }
+
+
+    /**
+     * The utf-8 bytes of all terms. Term {@code id} spans
+     * {@code byteStart(id)} to {@code byteEnd(id)}. The array is replaced
+     * as terms are added.
+     */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+
+    public int byteStart(int id) {
+        return byteOffsets[id];
+    }
+
+
+    public int byteEnd(int id) {
+        return byteOffsets[id + 1];
+    }
+
+
+    char[] chars() {
+        return chars;
+    }
+
+
+    int start(int id) {
+        return offsets[id];
+    }
+
+
+    int end(int id) {
+        return offsets[id + 1];
+    }
+}
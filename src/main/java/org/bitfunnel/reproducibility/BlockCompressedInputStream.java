@@ -0,0 +1,227 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+/**
+ * Reads a stream written by BlockCompressedOutputStream.
+ *
+ * <p>Compressed blocks are read on the calling thread and, when an Executor is
+ * given, decompressed on its threads, up to {@code blocksAhead} blocks ahead
+ * of the reader. Blocks are returned in order either way.
+ */
+public class BlockCompressedInputStream extends InputStream {
+    private final DataInputStream input;
+    private final Executor executor;
+    private final int blocksAhead;
+
+    // Blocks being decompressed, in order.
+    private final ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+    private boolean inputEnded = false;
+
+    private byte[] block = new byte[0];
+    private int position = 0;
+
+
+    /**
+     * Decompresses blocks on the calling thread.
+     */
+    public BlockCompressedInputStream(InputStream input) throws IOException {
+        this(input, null, 1);
+    }
+
+
+    public BlockCompressedInputStream(InputStream input, Executor executor, int blocksAhead) throws IOException {
+        this.input = new DataInputStream(input);
+        this.executor = executor;
+        this.blocksAhead = Math.max(1, blocksAhead);
+
+        byte[] magic = new byte[BlockCompressedOutputStream.MAGIC.length];
+        this.input.readFully(magic);
+        for (int i = 0; i < magic.length; ++i) {
+            if (magic[i] != BlockCompressedOutputStream.MAGIC[i]) {
+                throw new IOException("BlockCompressedInputStream: not a block compressed file.");
+            }
+        }
+        if (this.input.read() != BlockCompressedOutputStream.VERSION) {
+            throw new IOException("BlockCompressedInputStream: unsupported version.");
+        }
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        if (position == block.length && !nextBlock()) {
+            return -1;
+        }
+        return block[position++] & 0xff;
+    }
+
+
+    @Override
+    public int read(byte[] bytes, int offset, int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        if (position == block.length && !nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(count, block.length - position);
+        System.arraycopy(block, position, bytes, offset, n);
+        position += n;
+        return n;
+    }
+
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        // Blocks that have not started decompressing are skipped.
+        for (CompletableFuture<byte[]> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+        input.close();
+    }
+
+
+    /**
+     * Returns up to the first length bytes of a block compressed stream,
+     * decompressing no more of the first block than that, e.g. to sniff the
+     * format of its contents.
+     */
+    static byte[] readPrefix(InputStream stream, int length) throws IOException {
+        DataInputStream input = new BlockCompressedInputStream(stream).input;
+        int compressedLength = input.readInt();
+        if (compressedLength == 0) {
+            return new byte[0];
+        }
+        int blockLength = input.readInt();
+        if (compressedLength < 0 || blockLength < 0) {
+            throw new IOException("BlockCompressedInputStream: bad block header.");
+        }
+        byte[] compressed = new byte[compressedLength];
+        input.readFully(compressed);
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] result = new byte[Math.min(length, blockLength)];
+            int n = 0;
+            while (n < result.length) {
+                int r = inflater.inflate(result, n, result.length - n);
+                if (r == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("BlockCompressedInputStream: block is shorter than its header says.");
+                }
+                n += r;
+            }
+            return result;
+        }
+        catch (DataFormatException e) {
+            throw new IOException("BlockCompressedInputStream: corrupt block.", e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+
+    /**
+     * Makes the next block current.
+     * @return false at the end of the stream.
+     */
+    private boolean nextBlock() throws IOException {
+        while (pending.size() < blocksAhead && !inputEnded) {
+            readBlock();
+        }
+        if (pending.isEmpty()) {
+            return false;
+        }
+
+        try {
+            block = pending.remove().get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("BlockCompressedInputStream: interrupted.");
+        }
+        catch (ExecutionException e) {
+            throw new IOException("BlockCompressedInputStream: corrupt block.", e.getCause());
+        }
+        position = 0;
+        return true;
+    }
+
+
+    /**
+     * Reads the next compressed block and starts decompressing it.
+     */
+    private void readBlock() throws IOException {
+        int compressedLength = input.readInt();
+        if (compressedLength == 0) {
+            inputEnded = true;
+            return;
+        }
+        int length = input.readInt();
+        if (compressedLength < 0 || length < 0) {
+            throw new IOException("BlockCompressedInputStream: bad block header.");
+        }
+        byte[] compressed = new byte[compressedLength];
+        input.readFully(compressed);
+
+        if (executor == null) {
+            pending.add(CompletableFuture.completedFuture(inflate(compressed, length)));
+        }
+        else {
+            pending.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return inflate(compressed, length);
+                }
+                catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+    }
+
+
+    private static byte[] inflate(byte[] compressed, int length) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] result = new byte[length];
+            int n = 0;
+            while (n < length) {
+                int r = inflater.inflate(result, n, length - n);
+                if (r == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                n += r;
+            }
+            if (n != length) {
+                throw new IOException("BlockCompressedInputStream: block is shorter than its header says.");
+            }
+            return result;
+        }
+        catch (DataFormatException e) {
+            throw new IOException("BlockCompressedInputStream: corrupt block.", e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+}
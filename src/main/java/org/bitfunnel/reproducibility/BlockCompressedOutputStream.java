@@ -0,0 +1,126 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+
+/**
+ * Writes a stream as a sequence of independently compressed blocks, so that a
+ * BlockCompressedInputStream can decompress blocks in parallel.
+ *
+ * <pre>
+ * Grammar:
+ *      File: Magic Version Block* End
+ *      Magic: 'B' 'F' 'C' 'Z'
+ *      Version: 1
+ *      Block: Int32(CompressedByteCount) Int32(ByteCount) Deflate{CompressedByteCount}
+ *      End: Int32(0)
+ * </pre>
+ *
+ * Int32s are big-endian. Each block is raw deflate data (no zlib header) that
+ * decompresses to ByteCount bytes.
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+    static final byte[] MAGIC = { 'B', 'F', 'C', 'Z' };
+    static final int VERSION = 1;
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private final DataOutputStream output;
+    private final Deflater deflater;
+    private final byte[] block;
+    private byte[] compressed;
+    private int length = 0;
+    private boolean closed = false;
+
+
+    public BlockCompressedOutputStream(OutputStream output) throws IOException {
+        this(output, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+
+    public BlockCompressedOutputStream(OutputStream output, int blockSize, int level) throws IOException {
+        this.output = new DataOutputStream(output);
+        this.deflater = new Deflater(level, true);
+        this.block = new byte[blockSize];
+        this.compressed = new byte[blockSize + blockSize / 8 + 64];
+        this.output.write(MAGIC);
+        this.output.write(VERSION);
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == block.length) {
+            writeBlock();
+        }
+        block[length++] = (byte)b;
+    }
+
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+        while (count > 0) {
+            if (length == block.length) {
+                writeBlock();
+            }
+            int n = Math.min(count, block.length - length);
+            System.arraycopy(bytes, offset, block, length, n);
+            length += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+
+    /**
+     * Writes the buffered bytes as a block, even if it is not full.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (length > 0) {
+            writeBlock();
+        }
+        output.flush();
+    }
+
+
+    /**
+     * Writes the last block and the end marker, and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (length > 0) {
+                writeBlock();
+            }
+            output.writeInt(0);
+            output.close();
+            deflater.end();
+        }
+    }
+
+
+    private void writeBlock() throws IOException {
+        deflater.reset();
+        deflater.setInput(block, 0, length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                byte[] larger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, larger, 0, compressedLength);
+                compressed = larger;
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        output.writeInt(compressedLength);
+        output.writeInt(length);
+        output.write(compressed, 0, compressedLength);
+        length = 0;
+    }
+}
@@ -0,0 +1,157 @@
+package org.bitfunnel.reproducibility;
+
+import com.martiansoftware.jsap.*;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * Opens chunk files whether they are raw, gzip compressed or block compressed
+ * (see BlockCompressedOutputStream). Block compressed files are decompressed
+ * in parallel on the common fork join pool. Gzip files can only be
+ * decompressed sequentially, so convert them with main() to read them faster.
+ */
+public class ChunkCompression {
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] GZIP_MAGIC = { (byte)0x1f, (byte)0x8b };
+
+
+    /**
+     * @return the uncompressed contents of file.
+     */
+    public static InputStream open(String file) throws IOException {
+        return open(new FileInputStream(file));
+    }
+
+
+    /**
+     * @return the uncompressed contents of stream, which holds a raw, gzip or block compressed chunk.
+     */
+    public static InputStream open(InputStream stream) throws IOException {
+        PushbackInputStream input = new PushbackInputStream(stream, 4);
+        byte[] header = new byte[4];
+        int count = readFully(input, header, header.length);
+        input.unread(header, 0, count);
+
+        if (startsWith(header, count, BlockCompressedOutputStream.MAGIC)) {
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            return new BlockCompressedInputStream(input, pool, pool.getParallelism() + 1);
+        }
+        else if (startsWith(header, count, GZIP_MAGIC)) {
+            return new GZIPInputStream(input, GZIP_BUFFER_SIZE);
+        }
+        else {
+            return input;
+        }
+    }
+
+
+    /**
+     * @return up to the first length bytes of the uncompressed contents of
+     * stream, decompressing as little as possible. Unlike open(), this does
+     * not start decompressing blocks ahead on the common pool, so it is cheap
+     * enough for sniffing the format of a chunk.
+     */
+    public static byte[] readPrefix(InputStream stream, int length) throws IOException {
+        PushbackInputStream input = new PushbackInputStream(stream, 4);
+        byte[] header = new byte[4];
+        int count = readFully(input, header, header.length);
+        input.unread(header, 0, count);
+
+        if (startsWith(header, count, BlockCompressedOutputStream.MAGIC)) {
+            return BlockCompressedInputStream.readPrefix(input, length);
+        }
+
+        InputStream contents = startsWith(header, count, GZIP_MAGIC) ? new GZIPInputStream(input) : input;
+        byte[] prefix = new byte[length];
+        count = readFully(contents, prefix, length);
+        return count == length ? prefix : Arrays.copyOf(prefix, count);
+    }
+
+
+    /**
+     * Returns true if file is gzip or block compressed. Compressed files cannot be
+     * memory-mapped or split at byte offsets.
+     */
+    public static boolean isCompressed(String file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] header = new byte[4];
+            int count = readFully(input, header, header.length);
+            return startsWith(header, count, BlockCompressedOutputStream.MAGIC) ||
+                   startsWith(header, count, GZIP_MAGIC);
+        }
+    }
+
+
+    /**
+     * Reads up to length bytes, stopping early only at the end of input.
+     * @return the number of bytes read.
+     */
+    private static int readFully(InputStream input, byte[] bytes, int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            int n = input.read(bytes, count, length - count);
+            if (n == -1) {
+                break;
+            }
+            count += n;
+        }
+        return count;
+    }
+
+
+    private static boolean startsWith(byte[] header, int count, byte[] magic) {
+        if (count < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; ++i) {
+            if (header[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        SimpleJSAP jsap = new SimpleJSAP( ChunkCompression.class.getName(),
+                "Converts a raw or gzip compressed chunk file to a block compressed chunk file, or back with --decompress.",
+                new Parameter[] {
+                        new Switch( "decompress", 'd', "decompress", "Write the raw chunk instead." ),
+                        new FlaggedOption( "blockSize", JSAP.INTSIZE_PARSER, Integer.toString(BlockCompressedOutputStream.DEFAULT_BLOCK_SIZE), JSAP.NOT_REQUIRED, 'b', "block-size", "The uncompressed size of a block." ),
+                        new FlaggedOption( "level", JSAP.INTEGER_PARSER, "6", JSAP.NOT_REQUIRED, 'l', "level", "The deflate compression level, from 1 (fastest) to 9 (smallest)." ),
+                        new UnflaggedOption( "input", JSAP.STRING_PARSER, JSAP.REQUIRED, "The chunk file to read." ),
+                        new UnflaggedOption( "output", JSAP.STRING_PARSER, JSAP.REQUIRED, "The chunk file to write." ),
+                });
+
+        JSAPResult jsapResult = jsap.parse( args );
+        if ( jsap.messagePrinted() ) return;
+
+        long startTime = System.nanoTime();
+        OutputStream fileOutput = new BufferedOutputStream(new FileOutputStream(jsapResult.getString( "output" )), GZIP_BUFFER_SIZE);
+        try (InputStream input = open(jsapResult.getString( "input" ));
+             OutputStream output = jsapResult.getBoolean( "decompress" ) ?
+                     fileOutput :
+                     new BlockCompressedOutputStream(fileOutput, jsapResult.getInt( "blockSize" ), jsapResult.getInt( "level" ))) {
+            byte[] buffer = new byte[GZIP_BUFFER_SIZE];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                output.write(buffer, 0, n);
+            }
+        }
+
+        System.out.println(String.format("Wrote %s in %f seconds.",
+                jsapResult.getString( "output" ),
+                (System.nanoTime() - startTime) * 1e-9));
+    }
+}
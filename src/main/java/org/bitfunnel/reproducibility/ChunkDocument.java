@@ -5,10 +5,8 @@ import it.unimi.dsi.io.WordReader;
 import it.unimi.dsi.lang.MutableString;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Vector;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 
 public class ChunkDocument implements Document {
@@ -19,108 +17,89 @@ public class ChunkDocument implements Document {
     private MutableString uri = new MutableString();
 
     // buffer holds UTF-8 content of all document streams.
-    // Assumes that all documents are truncated at 256kb.
+    // It starts small and doubles on demand. Since documents are recycled through
+    // a ChunkDocumentPool, each pooled document settles at the size of the largest
+    // document it has held. GOV2 documents are truncated at 256kb.
     // http://ir.dcs.gla.ac.uk/test_collections/gov2-summary.htm
-    private static final int BUFFER_SIZE = 1024 * 1024;
-    private byte buffer[] = new byte[BUFFER_SIZE];
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private byte buffer[] = new byte[INITIAL_BUFFER_SIZE];
 
     // Index into buffer where next byte will be written.
     private int writeCursor = 0;
 
-    /**
-     * StreamSegment represents a contiguous collection of terms for a
-     * document stream (or field in mg4j parlance) with backing utf-8 data
-     * in buffer[offset..offset + length - 1].
-     * A single stream may be modeled as the concatenation of multiple segments.
-     */
-    private class StreamSegment {
-        public StreamSegment(int offset, int length) {
-            this.offset = offset;
-            this.length = length;
-        }
+    // ByteBuffer view of buffer, shared by the stream readers.
+    private ByteBuffer bufferView = ByteBuffer.wrap(buffer);
 
-        /**
-         * Returns a ByteArrayInputStream corresponding to this segment's
-         * underlying buffer data. When the trim parameter is false, the
-         * stream corresponds to buffer index values in the range
-         *   [offset, offset + length - 1]
-         * When the trim parameter is true, the stream corresponds to buffer
-         * index values in the range
-         *   [offset, offset + length - 2)
-         * The trim functionality is provided to exclude EOF bytes during
-         * stream concatenation.
-         */
-        ByteArrayInputStream istream(boolean trim) {
-            return new ByteArrayInputStream(buffer, offset, length - (trim ? 1 : 0));
-        }
+    // Reused for every stream of the document.
+    private ChunkWordReader wordReader = new ChunkWordReader();
 
-        int offset;
-        int length;
-    }
+    // Mapping from stream id to a reader over the stream's segments of backing data in buffer.
+    // A single stream may be modeled as the concatenation of multiple segments.
+    // Readers are allocated on first use and kept for reuse. Only indexed streams
+    // are stored, so there is a slot for each stream id up to the schema's largest.
+    ChunkStreamReader streams[];
 
-    // A Stream is a collection of one or more StreamSegments
-    private class Stream {
-        public Stream(StreamSegment seg) {
-            this.count = 1;
-            segment = seg;
-        }
+    // Ids of the streams present in the current document.
+    private int usedStreams[];
+    private int usedStreamCount = 0;
 
-        public int size() {
-            return count;
-        }
+    // Pool that receives this document on close(), or null if not pooled.
+    private final ChunkDocumentPool pool;
 
-        public void add(StreamSegment seg) {
-            if (count == 1) {
-                segments = new ArrayList();
-                segments.add(segment);
-            }
+    // Streams of fields that are not indexed are skipped by the parser. Field i is the stream schema.streamId(i).
+    private final FieldSchema schema;
 
-            segments.add(seg);
-            ++count;
-        }
+    // True while the document sits in the pool. Guards against closing twice.
+    private boolean released = false;
 
-        // Return an InputStream that effectively concatenates
-        // together all segments in the stream
-        public Reader reader() {
-            InputStream istream;
-            if (count == 1) {
-                istream = segment.istream(false);
-            } else if (count == 2) {
-                InputStream seg1 = segments.get(0).istream(true);
-                InputStream seg2 = segments.get(1).istream(false);
-                istream = new SequenceInputStream(seg1, seg2);
-            }
-            else {
-                // Build a SequenceInputStream using an enumerator,
-                // which Vector delivers using elements()
-                Vector<InputStream> istreams = new Vector();
-
-                Iterator<StreamSegment> it = segments.iterator();
-                while (it.hasNext()) {
-                    StreamSegment s = it.next();
-                    istreams.add(s.istream(it.hasNext()));
-                }
-                istream = new SequenceInputStream(istreams.elements());
-            }
+    // TODO: Decide how this class throws parse errors.
+    public ChunkDocument(PushbackInputStream input) throws IOException
+    {
+        this(input, FieldSchema.DEFAULT);
+    }
 
-            return new InputStreamReader(istream, StandardCharsets.UTF_8);
-        }
 
-        int count;
-        StreamSegment segment;
-        ArrayList<StreamSegment> segments;
+    public ChunkDocument(PushbackInputStream input, FieldSchema schema) throws IOException
+    {
+        this.pool = null;
+        this.schema = schema;
+        this.streams = new ChunkStreamReader[schema.streamSlots()];
+        this.usedStreams = new int[schema.streamSlots()];
+        parse(input);
     }
 
-    // BitFunnel chunk specifies a 8-bit stream identifiers, so max stream id is 255.
-    private static final int STREAM_COUNT = 256;
 
-    // Mapping from stream id to (offset, length) of stream's backing data in buffer.
-    Stream streams[] = new Stream[STREAM_COUNT];
+    /**
+     * Constructs an empty document that returns itself to {@code pool} when closed.
+     * Call parse() to fill it in.
+     */
+    ChunkDocument(ChunkDocumentPool pool, FieldSchema schema) {
+        this.pool = pool;
+        this.schema = schema;
+        this.streams = new ChunkStreamReader[schema.streamSlots()];
+        this.usedStreams = new int[schema.streamSlots()];
+    }
 
-    // TODO: Decide how this class throws parse errors.
-    public ChunkDocument(PushbackInputStream input) throws IOException
+
+    /**
+     * Discards the current contents, if any, and parses the next document from input.
+     * @param input
+     * @throws IOException
+     */
+    void parse(PushbackInputStream input) throws IOException
     {
         this.input = input;
+        released = false;
+
+        // Forget the previous document, keeping the buffer and stream readers.
+        id.length(0);
+        title.length(0);
+        uri.length(0);
+        writeCursor = 0;
+        for (int i = 0; i < usedStreamCount; ++i) {
+            streams[usedStreams[i]].clear();
+        }
+        usedStreamCount = 0;
 
         // Parse the document header.
         parseHeader();
@@ -201,6 +180,11 @@ public class ChunkDocument implements Document {
                 throw new IOException("ChunkDocument.tryParseStream(): expected zero after stream id.");
             }
 
+            if (!schema.isIndexed(id)) {
+                skipStream(prev);
+                return true;
+            }
+
             // Append the contents of this stream to the end of the buffer.
             // Scan past bytes that match "(Term End)*" End where Term is a sequence of non-zero utf-8 bytes
             // and End is the byte '\0'.
@@ -215,19 +199,23 @@ public class ChunkDocument implements Document {
                     throw new IOException("ChunkDocument.tryParseStream(): unexpected EOF.");
                 }
 
+                if (writeCursor == buffer.length) {
+                    growBuffer();
+                }
                 buffer[writeCursor++] = (byte)c;
                 if (prev == 0 && c == 0) {
                     // We're at the end of the stream.
-                    int length = writeCursor - offset;
-                    StreamSegment segment = new StreamSegment(offset, length);
+                    // The segment excludes the End that terminates the stream.
+                    int length = writeCursor - offset - 1;
 
-                    // Add an stream entry in the streams table: id --> (offset, length)
+                    // Add a segment to the stream's entry in the streams table: id --> (offset, length)
                     if (streams[id] == null) {
-                        streams[id] = new Stream(segment);
+                        streams[id] = new ChunkStreamReader(bufferView);
                     }
-                    else {
-                        streams[id].add(segment);
+                    if (!streams[id].hasSegments()) {
+                        usedStreams[usedStreamCount++] = id;
                     }
+                    streams[id].addSegment(offset, length);
 
                     return true;
                 }
@@ -239,6 +227,39 @@ public class ChunkDocument implements Document {
     }
 
 
+    /**
+     * Consumes the rest of a stream, through its "End End", without copying it.
+     * @param prev the byte before the rest of the stream.
+     */
+    private void skipStream(int prev) throws IOException {
+        while (true) {
+            int c = input.read();
+            if (c == -1) {
+                throw new IOException("ChunkDocument.tryParseStream(): unexpected EOF.");
+            }
+            if (prev == 0 && c == 0) {
+                return;
+            }
+            prev = c;
+        }
+    }
+
+
+    /**
+     * Doubles the size of buffer, preserving its contents. Stream readers
+     * are pointed at the new buffer.
+     */
+    private void growBuffer() {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        bufferView = ByteBuffer.wrap(buffer);
+        for (ChunkStreamReader stream : streams) {
+            if (stream != null) {
+                stream.setBuffer(bufferView);
+            }
+        }
+    }
+
+
     /**
      * Copies {@code digitCount} consecutive hex digits from input to a MutableString.
      * @param digits
@@ -316,22 +337,30 @@ public class ChunkDocument implements Document {
 
     @Override
     public Object content(int i) throws IOException {
-        Stream stream = streams[i];
-        if (stream == null) {
+        if (i < 0 || i >= schema.fieldCount()) {
+            throw new IOException(String.format("ChunkDocument.content: no field %d.", i));
+        }
+        ChunkStreamReader stream = streams[schema.streamId(i)];
+        if (stream == null || !stream.hasSegments()) {
             throw new IOException(String.format("ChunkDocument.content: %d stream does not exist.", i));
         }
 
-        return stream.reader();
+        stream.rewind();
+        return stream;
     }
 
 
     public WordReader wordReader(int i) {
-        return new ChunkWordReader();
+        return wordReader;
     }
 
 
     @Override
     public void close() throws IOException {
         // System.out.println("ChunkDocument.close()");
+        if (pool != null && !released) {
+            released = true;
+            pool.release(this);
+        }
     }
 }
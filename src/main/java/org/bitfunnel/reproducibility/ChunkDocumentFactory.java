@@ -9,45 +9,35 @@ import java.io.InputStream;
 import java.io.PushbackInputStream;
 
 public class ChunkDocumentFactory implements DocumentFactory {
+    // The fields are the indexed fields of the schema.
+    private final FieldSchema schema;
+
+    public ChunkDocumentFactory() {
+        this(FieldSchema.DEFAULT);
+    }
+
+    public ChunkDocumentFactory(FieldSchema schema) {
+        this.schema = schema;
+    }
+
     @Override
     public int numberOfFields() {
-        return 2;
+        return schema.fieldCount();
     }
 
     @Override
     public String fieldName(int i) {
-        // TODO: replace hard-coded field names with data-driven solution.
-        if (i == 0) {
-            return "text";
-        }
-        else if (i == 1) {
-            return "title";
-        }
-        else {
-            return null;
-        }
+        return schema.fieldName(i);
     }
 
     @Override
     public int fieldIndex(String s) {
-        // TODO: replace hard-coded field names with data-driven solution.
-        if (s.equals("text"))
-        {
-            return 0;
-        }
-        else if (s.equals("title")) {
-            return 1;
-        }
-        else
-        {
-            return -1;
-        }
+        return schema.fieldIndex(s);
     }
 
     @Override
     public FieldType fieldType(int i) {
-        // TODO: replace hard-coded field names with data-driven solution.
-        if (i == 0 || i == 1) {
+        if (i >= 0 && i < schema.fieldCount()) {
             return DocumentFactory.FieldType.TEXT;
         }
         else {
@@ -58,12 +48,12 @@ public class ChunkDocumentFactory implements DocumentFactory {
     @Override
     public Document getDocument(InputStream inputStream, Reference2ObjectMap<Enum<?>, Object> reference2ObjectMap) throws IOException {
         System.out.println("ChunkDocumentFactory.getDocument()");
-        return new ChunkDocument(new PushbackInputStream(inputStream));
+        return new ChunkDocument(new PushbackInputStream(inputStream), schema);
     }
 
     @Override
     public DocumentFactory copy() {
-        System.out.println("ChunkDocumentFactory.copy(): not implemented - returns null.");
-        return null;
+        // ChunkDocumentFactory is immutable.
+        return new ChunkDocumentFactory(schema);
     }
 }
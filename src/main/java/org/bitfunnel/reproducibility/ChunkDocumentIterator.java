@@ -9,8 +9,16 @@ import java.io.PushbackInputStream;
 public class ChunkDocumentIterator implements it.unimi.di.big.mg4j.document.DocumentIterator {
     PushbackInputStream input;
 
+    // Documents are recycled when the caller closes them.
+    ChunkDocumentPool pool;
+
     public ChunkDocumentIterator(InputStream input) {
+        this(input, FieldSchema.DEFAULT);
+    }
+
+    public ChunkDocumentIterator(InputStream input, FieldSchema schema) {
         this.input = new PushbackInputStream(input);
+        this.pool = new ChunkDocumentPool(schema);
     }
 
 
@@ -35,7 +43,9 @@ public class ChunkDocumentIterator implements it.unimi.di.big.mg4j.document.Docu
             // There's at least one more document left.
             // Position the stream at the beginning of the document.
             input.unread(c);
-            return new ChunkDocument(input);
+            ChunkDocument document = pool.acquire();
+            document.parse(input);
+            return document;
         }
     }
 
@@ -0,0 +1,59 @@
+package org.bitfunnel.reproducibility;
+
+import java.util.ArrayDeque;
+
+
+/**
+ * A pool of reusable ChunkDocuments. A pooled document returns itself to the
+ * pool when it is closed, so its buffer, stream readers and strings can be
+ * used again for a later document.
+ *
+ * The pool is not thread safe. It is meant to be owned by a single
+ * ChunkDocumentIterator.
+ */
+public class ChunkDocumentPool {
+    private final ArrayDeque<ChunkDocument> free = new ArrayDeque<>();
+
+    // The schema of every document in the pool.
+    private final FieldSchema schema;
+
+    // Number of ChunkDocuments ever created by this pool.
+    private int allocated = 0;
+
+
+    public ChunkDocumentPool() {
+        this(FieldSchema.DEFAULT);
+    }
+
+
+    public ChunkDocumentPool(FieldSchema schema) {
+        this.schema = schema;
+    }
+
+
+    /**
+     * Returns a free document, creating one if the pool is empty.
+     */
+    ChunkDocument acquire() {
+        ChunkDocument document = free.poll();
+        if (document == null) {
+            document = new ChunkDocument(this, schema);
+            ++allocated;
+        }
+        return document;
+    }
+
+
+    void release(ChunkDocument document) {
+        free.push(document);
+    }
+
+
+    /**
+     * Returns the number of documents this pool has created. With callers that
+     * close each document before requesting the next, this stays at one.
+     */
+    public int allocated() {
+        return allocated;
+    }
+}
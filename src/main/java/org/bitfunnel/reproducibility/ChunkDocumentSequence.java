@@ -4,34 +4,55 @@ import it.unimi.di.big.mg4j.document.DocumentFactory;
 import it.unimi.di.big.mg4j.document.DocumentIterator;
 import it.unimi.di.big.mg4j.document.DocumentSequence;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 
 public class ChunkDocumentSequence implements DocumentSequence{
-    FileInputStream input;
+    InputStream input;
+    FieldSchema schema = FieldSchema.DEFAULT;
 
     /**
-     * Constructs a ChunkDocumentSequence corresponding to a BitFunnel chunk file.
+     * Constructs a ChunkDocumentSequence corresponding to a BitFunnel chunk file, which may be compressed.
      * See <a href="http://bitfunnel.org/corpus-file-format/">Corpus File Format.</a>
      * @param file
-     * @throws FileNotFoundException
+     * @throws IOException
      */
-    public ChunkDocumentSequence(String file) throws FileNotFoundException {
-        input = new FileInputStream(file);
+    public ChunkDocumentSequence(String file) throws IOException {
+        input = ChunkCompression.open(file);
         // System.out.println(String.format("ChunkDocumentSequence.ChunkDocumentSequence(%s)", file));
     }
 
+    /**
+     * Constructs a ChunkDocumentSequence over a chunk that is already open, e.g. one being read by a ReadAhead.
+     * The sequence closes input.
+     */
+    public ChunkDocumentSequence(InputStream input) {
+        this.input = input;
+    }
+
+    /**
+     * Constructs a ChunkDocumentSequence whose documents have the fields of schema.
+     */
+    public ChunkDocumentSequence(InputStream input, FieldSchema schema) {
+        this.input = input;
+        this.schema = schema;
+    }
+
+    public ChunkDocumentSequence(String file, FieldSchema schema) throws IOException {
+        this(file);
+        this.schema = schema;
+    }
+
     @Override
     public DocumentIterator iterator() throws IOException {
         // System.out.println("ChunkDocumentSequence.iterator()");
-        return new ChunkDocumentIterator(input);
+        return new ChunkDocumentIterator(input, schema);
     }
 
     @Override
     public DocumentFactory factory() {
         System.out.println("ChunkDocumentSequence.factory()");
-        return new ChunkDocumentFactory();
+        return new ChunkDocumentFactory(schema);
     }
 
     @Override
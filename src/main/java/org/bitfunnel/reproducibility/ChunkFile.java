@@ -2,25 +2,225 @@ package org.bitfunnel.reproducibility;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
+/**
+ * Writes a BitFunnel chunk file.
+ *
+ * <p>Output is accumulated in a large buffer and written in blocks, either to
+ * an OutputStream or, through a direct buffer, to a FileChannel. Terms are
+ * encoded to utf-8 straight from their chars, so emitting a term does not
+ * allocate. A ChunkFile is not thread safe. Threads should each write their
+ * own chunk.
+ *
+ * <p>Call flush(), or close the FileScope, before closing the underlying
+ * stream or channel.
+ */
 public class ChunkFile {
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+    // Exactly one of outputStream and channel is non-null.
     OutputStream outputStream;
+    FileChannel channel;
+
+    // Bytes waiting to be written. Backed by an array when writing to an
+    // OutputStream, direct when writing to a FileChannel.
+    private final ByteBuffer buffer;
+
+    // Bytes handed to the stream or channel so far.
+    private long bytesFlushed = 0;
+
+    // When non-null, records document and stream offsets and block checksums.
+    private ChunkIndex.Builder index = null;
+
 
     public ChunkFile(OutputStream outputStream)
     {
         this.outputStream = outputStream;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+
+    public ChunkFile(FileChannel channel)
+    {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+
+    /**
+     * Writes a term.
+     */
+    public void emit(CharSequence text) {
+        term(text, false);
+    }
+
+
+    /**
+     * Writes a term, converting it to lower case one code point at a time.
+     * Unlike String.toLowerCase(), this ignores the locale and context
+     * sensitive rules such as the final form of Greek sigma.
+     */
+    public void emitLowerCase(CharSequence text) {
+        term(text, true);
+    }
+
+
+    /**
+     * @return the number of bytes written so far, including buffered bytes.
+     */
+    public long bytesWritten() {
+        return bytesFlushed + buffer.position();
     }
 
 
-    public void emit(String text) {
+    /**
+     * Records the offsets of the documents and streams written from now on,
+     * and the checksums of the bytes written, into index. Only meaningful for
+     * the text format, whose documents can be read at their offsets.
+     */
+    public void setIndex(ChunkIndex.Builder index) {
+        this.index = index;
+    }
+
+
+    /**
+     * Writes buffered bytes to the underlying stream or channel.
+     */
+    public void flush() {
+        buffer.flip();
+        if (index != null) {
+            index.update(buffer);
+        }
         try {
-            outputStream.write(text.getBytes(StandardCharsets.UTF_8));
-            outputStream.write((byte)0);
+            if (channel != null) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            else {
+                outputStream.write(buffer.array(), 0, buffer.limit());
+            }
         }
         catch (IOException e) {
             throw new RuntimeException("Error writing bytes.");
         }
+        bytesFlushed += buffer.limit();
+        buffer.clear();
+    }
+
+
+    protected void term(CharSequence text, boolean toLowerCase) {
+        writeUtf8(text, toLowerCase);
+        write(0);
+    }
+
+
+    // The scopes below delegate to these methods so that subclasses
+    // can write a different chunk format.
+
+    protected void openDocument(int documentId) {
+        writeHex(documentId & 0xffffffffL, 16);
+        write(0);
+    }
+
+
+    protected void openStream(int streamId) {
+        writeHex(streamId, 2);
+        write(0);
+    }
+
+
+    protected void closeStream() {
+        // Write trailing '\0'
+        write(0);
+    }
+
+
+    protected void closeDocument() {
+        // Write trailing '\0'
+        write(0);
+    }
+
+
+    protected void closeFile() {
+        // Write trailing '\0'
+        write(0);
+        flush();
+    }
+
+
+    protected void write(int b) {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte)b);
+    }
+
+
+    protected void write(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+
+    private void writeHex(long value, int digitCount) {
+        for (int shift = 4 * (digitCount - 1); shift >= 0; shift -= 4) {
+            write(HEX_DIGITS[(int)(value >>> shift) & 0xf]);
+        }
+    }
+
+
+    private void writeUtf8(CharSequence text, boolean toLowerCase) {
+        final int length = text.length();
+        for (int i = 0; i < length; ++i) {
+            int c = text.charAt(i);
+            if (Character.isHighSurrogate((char)c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                c = Character.toCodePoint((char)c, text.charAt(++i));
+            }
+            if (toLowerCase) {
+                c = Character.toLowerCase(c);
+            }
+
+            // A code point takes at most four bytes.
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            if (c < 0x80) {
+                buffer.put((byte)c);
+            }
+            else if (c < 0x800) {
+                buffer.put((byte)(0xc0 | (c >> 6)));
+                buffer.put((byte)(0x80 | (c & 0x3f)));
+            }
+            else if (c < 0x10000) {
+                // Unpaired surrogates become '?', as with String.getBytes().
+                if (c >= 0xd800 && c <= 0xdfff) {
+                    buffer.put((byte)'?');
+                    continue;
+                }
+                buffer.put((byte)(0xe0 | (c >> 12)));
+                buffer.put((byte)(0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte)(0x80 | (c & 0x3f)));
+            }
+            else {
+                buffer.put((byte)(0xf0 | (c >> 18)));
+                buffer.put((byte)(0x80 | ((c >> 12) & 0x3f)));
+                buffer.put((byte)(0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte)(0x80 | (c & 0x3f)));
+            }
+        }
     }
 
 
@@ -29,35 +229,41 @@ public class ChunkFile {
         }
 
         @Override
-        public void close() throws Exception {
-            // Write trailing '\0'
-            emit("");
+        public void close() {
+            if (index != null) {
+                index.endDocuments(bytesWritten());
+            }
+            closeFile();
         }
     }
 
 
     public class DocumentScope implements java.lang.AutoCloseable {
         public DocumentScope(int documentId) {
-            emit(String.format("%016x", documentId));
+            if (index != null) {
+                index.addDocument(documentId & 0xffffffffL, bytesWritten());
+            }
+            openDocument(documentId);
         }
 
         @Override
-        public void close() throws Exception {
-            // Write trailing '\0'
-            emit("");
+        public void close() {
+            closeDocument();
         }
     }
 
 
     public class StreamScope implements java.lang.AutoCloseable {
         public StreamScope(int streamId) {
-            emit(String.format("%02x", streamId));
+            if (index != null) {
+                index.addStream(streamId, bytesWritten());
+            }
+            openStream(streamId);
         }
 
         @Override
-        public void close() throws Exception {
-            // Write trailing '\0'
-            emit("");
+        public void close() {
+            closeStream();
         }
     }
 }
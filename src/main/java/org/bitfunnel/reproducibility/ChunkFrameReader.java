@@ -0,0 +1,97 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+
+/**
+ * Reads the frames of a stream written by ChunkFrameWriter. A stream that ends
+ * between frames, for example because the producer exited, ends like one with
+ * an end marker. A stream that ends inside a frame is an error.
+ */
+public class ChunkFrameReader implements AutoCloseable {
+    private final DataInputStream input;
+    private final long maxFrameBytes;
+    private boolean ended = false;
+    // System.nanoTime() when the first bytes of the last frame arrived.
+    private long arrivalNanos = 0;
+
+
+    /**
+     * @param maxFrameBytes the largest frame to accept. Each frame is read into memory.
+     */
+    public ChunkFrameReader(InputStream input, long maxFrameBytes) throws IOException {
+        this.input = new DataInputStream(input);
+        this.maxFrameBytes = Math.min(maxFrameBytes, Integer.MAX_VALUE - 8);
+
+        byte[] magic = new byte[ChunkFrameWriter.MAGIC.length];
+        this.input.readFully(magic);
+        if (!Arrays.equals(magic, ChunkFrameWriter.MAGIC)) {
+            throw new IOException("ChunkFrameReader: not a framed chunk stream.");
+        }
+        if (this.input.read() != ChunkFrameWriter.VERSION) {
+            throw new IOException("ChunkFrameReader: unsupported version.");
+        }
+    }
+
+
+    /**
+     * Blocks until the next frame has arrived.
+     * @return the chunk in the next frame, or null at the end of the stream.
+     */
+    public byte[] nextFrame() throws IOException {
+        if (ended) {
+            return null;
+        }
+
+        // Only an end of stream before the first byte of the length is clean.
+        int first = input.read();
+        if (first < 0) {
+            ended = true;
+            return null;
+        }
+        arrivalNanos = System.nanoTime();
+        long length = first;
+        try {
+            for (int i = 1; i < Long.BYTES; ++i) {
+                length = (length << 8) | input.readUnsignedByte();
+            }
+        }
+        catch (EOFException e) {
+            throw new IOException("ChunkFrameReader: stream ended inside a frame length.");
+        }
+        if (length == 0) {
+            ended = true;
+            return null;
+        }
+        if (length < 0 || length > maxFrameBytes) {
+            throw new IOException(String.format("ChunkFrameReader: frame of %d bytes is larger than the %d byte limit.", length, maxFrameBytes));
+        }
+
+        byte[] frame = new byte[(int)length];
+        try {
+            input.readFully(frame);
+        }
+        catch (EOFException e) {
+            throw new IOException("ChunkFrameReader: stream ended inside a frame.");
+        }
+        return frame;
+    }
+
+
+    /**
+     * @return System.nanoTime() when the start of the frame last returned by nextFrame() arrived.
+     */
+    public long arrivalNanos() {
+        return arrivalNanos;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
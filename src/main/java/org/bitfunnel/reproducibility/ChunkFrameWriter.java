@@ -0,0 +1,123 @@
+package org.bitfunnel.reproducibility;
+
+import com.martiansoftware.jsap.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+
+/**
+ * Writes chunks to a stream, such as a pipe, as a sequence of frames that a
+ * ChunkFrameReader reads back, so chunks can be indexed as they are produced
+ * without landing them on disk.
+ *
+ * <pre>
+ * Grammar:
+ *      Stream: Magic Version Frame* End
+ *      Magic: 'B' 'F' 'C' 'S'
+ *      Version: 1
+ *      Frame: Int64(ByteCount) Chunk{ByteCount}
+ *      End: Int64(0)
+ * </pre>
+ *
+ * Int64s are big-endian. Each frame holds one complete chunk, in the text or
+ * binary format, raw or compressed. The output is flushed after every frame.
+ */
+public class ChunkFrameWriter implements AutoCloseable {
+    static final byte[] MAGIC = { 'B', 'F', 'C', 'S' };
+    static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream output;
+    private boolean closed = false;
+
+
+    public ChunkFrameWriter(OutputStream output) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+        this.output.write(MAGIC);
+        this.output.write(VERSION);
+        this.output.flush();
+    }
+
+
+    /**
+     * Writes bytes[offset, offset + length) as a frame.
+     */
+    public void writeFrame(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            throw new IOException("ChunkFrameWriter: empty frame.");
+        }
+        output.writeLong(length);
+        output.write(bytes, offset, length);
+        output.flush();
+    }
+
+
+    /**
+     * Writes the contents of a chunk file, as is, as a frame.
+     */
+    public void writeFile(String file) throws IOException {
+        long length = Files.size(Paths.get(file));
+        if (length == 0) {
+            throw new IOException(String.format("ChunkFrameWriter: %s is empty.", file));
+        }
+        output.writeLong(length);
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int n = input.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                if (n == -1) {
+                    throw new IOException(String.format("ChunkFrameWriter: %s changed while it was written.", file));
+                }
+                output.write(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+        output.flush();
+    }
+
+
+    /**
+     * Writes the end marker and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            output.writeLong(0);
+            output.close();
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        SimpleJSAP jsap = new SimpleJSAP( ChunkFrameWriter.class.getName(),
+                "Writes the chunk files of a manifest to stdout as a framed chunk stream, for StreamingIndexBuilder.",
+                new Parameter[] {
+                        new FlaggedOption( "delay", JSAP.LONG_PARSER, "0", JSAP.NOT_REQUIRED, 'd', "delay", "Milliseconds to wait between frames, to simulate a producer." ),
+                        new UnflaggedOption( "manifest", JSAP.STRING_PARSER, JSAP.REQUIRED, "The manifest file. One chunk file per line." ),
+                });
+
+        JSAPResult jsapResult = jsap.parse( args );
+        if ( jsap.messagePrinted() ) return;
+
+        long delay = jsapResult.getLong( "delay" );
+        try (ChunkFrameWriter writer = new ChunkFrameWriter(System.out)) {
+            for (String file : Files.readAllLines(Paths.get(jsapResult.getString( "manifest" )), Charset.defaultCharset())) {
+                writer.writeFile(file);
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package org.bitfunnel.reproducibility;
+
+import com.martiansoftware.jsap.*;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+
+/**
+ * The sidecar index of a chunk file, written to {@code <chunk file>.idx} by
+ * GenerateBitFunnelChunks. It holds the byte offset of every document and of
+ * each of its streams, so documents can be read without parsing the file from
+ * the start (see IndexedChunkDocumentSequence), and a CRC32 of every block of
+ * the chunk, so a damaged file can be found without re-indexing it.
+ *
+ * <pre>
+ * Grammar:
+ *      File: Magic Version Length BlockSize BlockCount Checksum{BlockCount} DocumentCount Document{DocumentCount} End
+ *      Magic: 'B' 'F' 'C' 'I'
+ *      Version: 1
+ *      Length: Int64(uncompressed byte count of the chunk)
+ *      BlockSize: Int32
+ *      Checksum: Int32(CRC32 of a block of the uncompressed chunk)
+ *      Document: Int64(DocumentId) Int64(Offset) Int32(StreamCount) Stream{StreamCount}
+ *      Stream: Int8(StreamId) Int32(Offset from the start of the document)
+ *      End: Int64(Offset just past the last document)
+ * </pre>
+ *
+ * Integers are big-endian. Offsets and checksums are of the uncompressed
+ * chunk, so they hold whether or not the chunk file was compressed, but only
+ * uncompressed text chunks can be read at an offset.
+ */
+public class ChunkIndex {
+    static final byte[] MAGIC = { 'B', 'F', 'C', 'I' };
+    static final int VERSION = 1;
+
+    public static final String EXTENSION = ".idx";
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private final long length;
+    private final int blockSize;
+    private final int[] checksums;
+
+    private final long[] documentIds;
+    // offsets[documentCount] is the end of the last document.
+    private final long[] offsets;
+    // The streams of document i are streamStarts[i] to streamStarts[i + 1].
+    private final int[] streamStarts;
+    private final int[] streamIds;
+    private final int[] streamOffsets;
+
+    // True if document ids increase, so indexOf() can binary search.
+    private final boolean sorted;
+
+
+    private ChunkIndex(long length, int blockSize, int[] checksums, long[] documentIds, long[] offsets,
+                       int[] streamStarts, int[] streamIds, int[] streamOffsets) {
+        this.length = length;
+        this.blockSize = blockSize;
+        this.checksums = checksums;
+        this.documentIds = documentIds;
+        this.offsets = offsets;
+        this.streamStarts = streamStarts;
+        this.streamIds = streamIds;
+        this.streamOffsets = streamOffsets;
+
+        boolean increasing = true;
+        for (int i = 1; i < documentIds.length && increasing; ++i) {
+            increasing = documentIds[i - 1] < documentIds[i];
+        }
+        this.sorted = increasing;
+    }
+
+
+    /**
+     * @return the name of the index of chunkFile.
+     */
+    public static String path(String chunkFile) {
+        return chunkFile + EXTENSION;
+    }
+
+
+    /**
+     * Returns the index of chunkFile, or null if it has none.
+     */
+    public static ChunkIndex forChunk(String chunkFile) throws IOException {
+        String path = path(chunkFile);
+        return Files.isRegularFile(Paths.get(path)) ? read(path) : null;
+    }
+
+
+    public static ChunkIndex read(String path) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            byte[] magic = new byte[MAGIC.length];
+            input.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(String.format("ChunkIndex: %s is not a chunk index.", path));
+            }
+            if (input.read() != VERSION) {
+                throw new IOException(String.format("ChunkIndex: %s has an unsupported version.", path));
+            }
+
+            long length = input.readLong();
+            int blockSize = input.readInt();
+            int[] checksums = new int[input.readInt()];
+            for (int b = 0; b < checksums.length; ++b) {
+                checksums[b] = input.readInt();
+            }
+
+            int documentCount = input.readInt();
+            long[] documentIds = new long[documentCount];
+            long[] offsets = new long[documentCount + 1];
+            int[] streamStarts = new int[documentCount + 1];
+            IntArrayList streamIds = new IntArrayList();
+            IntArrayList streamOffsets = new IntArrayList();
+            for (int i = 0; i < documentCount; ++i) {
+                documentIds[i] = input.readLong();
+                offsets[i] = input.readLong();
+                streamStarts[i] = streamIds.size();
+                int streamCount = input.readInt();
+                for (int s = 0; s < streamCount; ++s) {
+                    streamIds.add(input.readUnsignedByte());
+                    streamOffsets.add(input.readInt());
+                }
+            }
+            offsets[documentCount] = input.readLong();
+            streamStarts[documentCount] = streamIds.size();
+
+            return new ChunkIndex(length, blockSize, checksums, documentIds, offsets,
+                                  streamStarts, streamIds.toIntArray(), streamOffsets.toIntArray());
+        }
+    }
+
+
+    public void write(String path) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            output.write(MAGIC);
+            output.write(VERSION);
+            output.writeLong(length);
+            output.writeInt(blockSize);
+            output.writeInt(checksums.length);
+            for (int checksum : checksums) {
+                output.writeInt(checksum);
+            }
+            output.writeInt(documentIds.length);
+            for (int i = 0; i < documentIds.length; ++i) {
+                output.writeLong(documentIds[i]);
+                output.writeLong(offsets[i]);
+                output.writeInt(streamStarts[i + 1] - streamStarts[i]);
+                for (int s = streamStarts[i]; s < streamStarts[i + 1]; ++s) {
+                    output.writeByte(streamIds[s]);
+                    output.writeInt(streamOffsets[s]);
+                }
+            }
+            output.writeLong(offsets[documentIds.length]);
+        }
+    }
+
+
+    /**
+     * @return the number of bytes of the uncompressed chunk.
+     */
+    public long length() {
+        return length;
+    }
+
+
+    public int documentCount() {
+        return documentIds.length;
+    }
+
+
+    public long documentId(int i) {
+        return documentIds[i];
+    }
+
+
+    /**
+     * @return the offset of document i. offset(documentCount()) is the end of the last document.
+     */
+    public long offset(int i) {
+        return offsets[i];
+    }
+
+
+    public int streamCount(int i) {
+        return streamStarts[i + 1] - streamStarts[i];
+    }
+
+
+    public int streamId(int i, int s) {
+        return streamIds[streamStarts[i] + s];
+    }
+
+
+    /**
+     * @return the offset of stream s of document i.
+     */
+    public long streamOffset(int i, int s) {
+        return offsets[i] + streamOffsets[streamStarts[i] + s];
+    }
+
+
+    /**
+     * @return the position in the chunk of the document with the given id, or -1.
+     */
+    public int indexOf(long documentId) {
+        if (sorted) {
+            int i = Arrays.binarySearch(documentIds, documentId);
+            return i >= 0 ? i : -1;
+        }
+        for (int i = 0; i < documentIds.length; ++i) {
+            if (documentIds[i] == documentId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Returns the offset of the first document that starts at or after from,
+     * or the end of the last document if there is none.
+     */
+    public long nextDocumentOffset(long from) {
+        int i = Arrays.binarySearch(offsets, from);
+        if (i < 0) {
+            i = Math.min(-i - 1, offsets.length - 1);
+        }
+        return offsets[i];
+    }
+
+
+    /**
+     * Compares the checksums with the blocks of input, the uncompressed chunk.
+     * @return the number of the first block that does not match, or -1 if all do.
+     */
+    public long verify(InputStream input) throws IOException {
+        byte[] block = new byte[blockSize];
+        CRC32 crc = new CRC32();
+        long total = 0;
+        for (int b = 0; ; ++b) {
+            int n = 0;
+            int r;
+            while (n < blockSize && (r = input.read(block, n, blockSize - n)) != -1) {
+                n += r;
+            }
+            if (n == 0) {
+                return b == checksums.length && total == length ? -1 : b;
+            }
+            total += n;
+            crc.reset();
+            crc.update(block, 0, n);
+            if (b >= checksums.length || (int)crc.getValue() != checksums[b]) {
+                return b;
+            }
+        }
+    }
+
+
+    /**
+     * Records the documents, streams and block checksums of a chunk as a
+     * ChunkFile writes it. Offsets are ChunkFile.bytesWritten().
+     */
+    public static class Builder {
+        private final int blockSize;
+        private final CRC32 crc = new CRC32();
+        private final IntArrayList checksums = new IntArrayList();
+        // Bytes of the current block fed to crc so far.
+        private int blockFill = 0;
+        private long length = 0;
+
+        private final LongArrayList documentIds = new LongArrayList();
+        private final LongArrayList offsets = new LongArrayList();
+        private final IntArrayList streamStarts = new IntArrayList();
+        private final IntArrayList streamIds = new IntArrayList();
+        private final IntArrayList streamOffsets = new IntArrayList();
+        private long end = 0;
+
+
+        public Builder() {
+            this(DEFAULT_BLOCK_SIZE);
+        }
+
+
+        public Builder(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+
+        void addDocument(long documentId, long offset) {
+            documentIds.add(documentId);
+            offsets.add(offset);
+            streamStarts.add(streamIds.size());
+        }
+
+
+        void addStream(int streamId, long offset) {
+            streamIds.add(streamId);
+            streamOffsets.add((int)(offset - offsets.getLong(offsets.size() - 1)));
+        }
+
+
+        void endDocuments(long offset) {
+            end = offset;
+        }
+
+
+        /**
+         * Adds the remaining bytes of buffer to the checksums, without changing its position.
+         */
+        void update(ByteBuffer buffer) {
+            ByteBuffer bytes = buffer.duplicate();
+            while (bytes.hasRemaining()) {
+                int n = Math.min(bytes.remaining(), blockSize - blockFill);
+                ByteBuffer slice = bytes.slice();
+                slice.limit(n);
+                crc.update(slice);
+                bytes.position(bytes.position() + n);
+                blockFill += n;
+                length += n;
+                if (blockFill == blockSize) {
+                    endBlock();
+                }
+            }
+        }
+
+
+        private void endBlock() {
+            checksums.add((int)crc.getValue());
+            crc.reset();
+            blockFill = 0;
+        }
+
+
+        public ChunkIndex build() {
+            if (blockFill > 0) {
+                endBlock();
+            }
+            long[] documentOffsets = Arrays.copyOf(offsets.toLongArray(), offsets.size() + 1);
+            documentOffsets[offsets.size()] = end;
+            int[] starts = Arrays.copyOf(streamStarts.toIntArray(), streamStarts.size() + 1);
+            starts[streamStarts.size()] = streamIds.size();
+            return new ChunkIndex(length, blockSize, checksums.toIntArray(), documentIds.toLongArray(), documentOffsets,
+                                  starts, streamIds.toIntArray(), streamOffsets.toIntArray());
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        SimpleJSAP jsap = new SimpleJSAP( ChunkIndex.class.getName(),
+                "Verifies chunk files against the block checksums of their .idx files.",
+                new Parameter[] {
+                        new Switch( "list", 'l', "list", "Also print the id, offset, length and streams of every document." ),
+                        new UnflaggedOption( "chunkFiles", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, JSAP.GREEDY, "The chunk files to verify." ),
+                });
+
+        JSAPResult jsapResult = jsap.parse( args );
+        if ( jsap.messagePrinted() ) return;
+
+        int failures = 0;
+        for (String chunkFile : jsapResult.getStringArray( "chunkFiles" )) {
+            ChunkIndex index = read(path(chunkFile));
+            if (jsapResult.getBoolean( "list" )) {
+                for (int i = 0; i < index.documentCount(); ++i) {
+                    StringBuilder streams = new StringBuilder();
+                    for (int s = 0; s < index.streamCount(i); ++s) {
+                        streams.append(String.format(" %02x@%d", index.streamId(i, s), index.streamOffset(i, s)));
+                    }
+                    System.out.println(String.format("  %016x %d %d%s",
+                            index.documentId(i),
+                            index.offset(i),
+                            index.offset(i + 1) - index.offset(i),
+                            streams));
+                }
+            }
+
+            long block;
+            try (InputStream input = ChunkCompression.open(chunkFile)) {
+                block = index.verify(input);
+            }
+            if (block == -1) {
+                System.out.println(String.format("%s: %d documents, %d blocks OK.",
+                        chunkFile, index.documentCount(), index.checksums.length));
+            }
+            else {
+                System.out.println(String.format("%s: block %d (bytes %d to %d) does not match its checksum.",
+                        chunkFile, block, block * index.blockSize, (block + 1) * index.blockSize));
+                ++failures;
+            }
+        }
+
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -4,17 +4,72 @@ import it.unimi.di.big.mg4j.document.Document;
 import it.unimi.di.big.mg4j.document.DocumentIterator;
 import it.unimi.di.big.mg4j.document.DocumentSequence;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
 
 public class ChunkManifestDocumentIterator implements DocumentIterator {
     private String[] chunkFiles;
+    // When true, chunk files are memory-mapped instead of read through a FileInputStream.
+    private boolean mapped;
     private int current = 0;
     private DocumentSequence sequence = null;
     private DocumentIterator iterator = null;
     private Document document = null;
 
+    // Ingestion statistics, reported as each chunk is finished.
+    private long chunkDocuments = 0;
+    private long totalDocuments = 0;
+    private GarbageCollectionTimer chunkGcTimer = new GarbageCollectionTimer();
+    private GarbageCollectionTimer totalGcTimer = new GarbageCollectionTimer();
+
+    // Counts documents and chunk file bytes. Terms are not seen here. Closed with the iterator.
+    private IngestionMetrics metrics;
+
+    // When non-null, the chunk files after the current one are read ahead through readAhead.
+    // prefetched holds the streams of the chunk files that follow the one open, in order.
+    private ReadAhead readAhead = null;
+    private int readAheadFiles = 0;
+    private ArrayDeque<InputStream> prefetched = new ArrayDeque<>();
+
+    // The fields read from every chunk file.
+    private FieldSchema schema = FieldSchema.DEFAULT;
+
     public ChunkManifestDocumentIterator(String[] files) throws IOException {
+        this(files, false);
+    }
+
+    public ChunkManifestDocumentIterator(String[] files, boolean mapped) throws IOException {
+        this(files, mapped, new IngestionMetrics());
+    }
+
+    public ChunkManifestDocumentIterator(String[] files, boolean mapped, IngestionMetrics metrics) throws IOException {
         chunkFiles = files;
+        this.mapped = mapped;
+        this.metrics = metrics;
+        metrics.setQueueDepth(() -> chunkFiles.length - current);
+    }
+
+    /**
+     * Reads the next readAheadFiles chunk files ahead of the current one on readAhead's threads.
+     * Memory-mapped chunk files are not read ahead.
+     */
+    public ChunkManifestDocumentIterator(String[] files, boolean mapped, IngestionMetrics metrics, ReadAhead readAhead, int readAheadFiles) throws IOException {
+        this(files, mapped, metrics);
+        if (!mapped && readAheadFiles > 0) {
+            this.readAhead = readAhead;
+            this.readAheadFiles = readAheadFiles;
+            metrics.setIoWait(readAhead::ioWaitNanos);
+        }
+    }
+
+    /**
+     * Reads the fields of schema from every chunk file. readAhead may be null when readAheadFiles is 0.
+     */
+    public ChunkManifestDocumentIterator(String[] files, boolean mapped, IngestionMetrics metrics, ReadAhead readAhead, int readAheadFiles, FieldSchema schema) throws IOException {
+        this(files, mapped, metrics, readAhead, readAheadFiles);
+        this.schema = schema;
     }
 
     @Override
@@ -35,12 +90,16 @@ public class ChunkManifestDocumentIterator implements DocumentIterator {
                 // If it does, return it.
                 if (document != null)
                 {
+                    ++chunkDocuments;
+                    ++totalDocuments;
+                    metrics.addDocuments(1);
                     return document;
                 }
 
                 // Otherwise, this iterator is used up, so close it along with its sequence.
                 iterator.close();
                 sequence.close();
+                reportChunk(chunkFiles[current - 1]);
             }
 
             // If we got here, the iterator was either null because we're on the first call,
@@ -48,8 +107,12 @@ public class ChunkManifestDocumentIterator implements DocumentIterator {
             // go back to the top of the loop.
             if (current < chunkFiles.length) {
                 System.out.println(String.format("======>>>> Opening chunk %s", chunkFiles[current]));
-                sequence = new ChunkDocumentSequence(chunkFiles[current++]);
+                metrics.busy();
+                metrics.addBytes(new File(chunkFiles[current]).length());
+                sequence = openSequence(chunkFiles[current++]);
                 iterator = sequence.iterator();
+                chunkDocuments = 0;
+                chunkGcTimer.reset();
             }
             else {
                 break;
@@ -64,11 +127,53 @@ public class ChunkManifestDocumentIterator implements DocumentIterator {
             sequence.close();
             sequence = null;
         }
+        metrics.idle();
+
+        System.out.println(String.format("======>>>> Read %d documents from %d chunks. GC: %d ms (%.1f ms per million documents)",
+                totalDocuments,
+                chunkFiles.length,
+                totalGcTimer.elapsedTimeMs(),
+                totalGcTimer.msPerMillionDocuments(totalDocuments)));
 
         // Return null to indicate that we've reached the end of the sequence of chunks.
         return null;
     }
 
+    private void reportChunk(String chunkFile) {
+        System.out.println(String.format("======>>>> Closing chunk %s: %d documents. GC: %d ms in %d collections (%.1f ms per million documents)",
+                chunkFile,
+                chunkDocuments,
+                chunkGcTimer.elapsedTimeMs(),
+                chunkGcTimer.collections(),
+                chunkGcTimer.msPerMillionDocuments(chunkDocuments)));
+    }
+
+    private DocumentSequence openSequence(String file) throws IOException {
+        if (readAhead != null) {
+            // Keep file (chunkFiles[current - 1]) and the next readAheadFiles reading.
+            while (prefetched.size() <= readAheadFiles && current - 1 + prefetched.size() < chunkFiles.length) {
+                String next = chunkFiles[current - 1 + prefetched.size()];
+                prefetched.add(readAhead.open(() -> ChunkCompression.open(next)));
+            }
+            InputStream input = prefetched.remove();
+            if (BinaryChunkReader.isBinaryChunk(file)) {
+                return new BinaryChunkDocumentSequence(input, schema);
+            }
+            else {
+                return new ChunkDocumentSequence(input, schema);
+            }
+        }
+        else if (BinaryChunkReader.isBinaryChunk(file)) {
+            return new BinaryChunkDocumentSequence(file, schema);
+        }
+        else if (mapped && !ChunkCompression.isCompressed(file)) {
+            return new MappedChunkDocumentSequence(file, schema);
+        }
+        else {
+            return new ChunkDocumentSequence(file, schema);
+        }
+    }
+
     @Override
     public void close() throws IOException {
         if (document != null) {
@@ -83,5 +188,14 @@ public class ChunkManifestDocumentIterator implements DocumentIterator {
             sequence.close();
             sequence = null;
         }
+        while (!prefetched.isEmpty()) {
+            prefetched.remove().close();
+        }
+        if (readAhead != null) {
+            System.out.println(String.format("======>>>> Waited %f seconds on read-ahead I/O.", readAhead.ioWaitNanos() * 1e-9));
+            readAhead.close();
+            readAhead = null;
+        }
+        metrics.close();
     }
 }
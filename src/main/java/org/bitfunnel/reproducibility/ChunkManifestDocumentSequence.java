@@ -12,19 +12,82 @@ import java.nio.file.Paths;
 public class ChunkManifestDocumentSequence implements DocumentSequence{
     // List of chunk files read from manifest file.
     private String[] files;
+    // When true, chunk files are read through MappedChunkDocumentSequence.
+    private boolean mapped;
+    // When non-null, iterators sample IngestionMetrics into this file.
+    private String metricsFile;
+    // The number of chunk files to read ahead on a separate thread, or 0.
+    private int readAheadFiles;
+    // The fields read from the chunk files.
+    private FieldSchema schema = FieldSchema.DEFAULT;
 
     public ChunkManifestDocumentSequence(String manifest) throws IOException {
+        this(manifest, false, null);
+    }
+
+    /**
+     * Also records ingestion metrics every second into metricsFile. For example, with mg4j's IndexBuilder:
+     * <pre>
+     *   -o 'org.bitfunnel.reproducibility.ChunkManifestDocumentSequence(manifest.txt,index.metrics.csv)'
+     * </pre>
+     */
+    public ChunkManifestDocumentSequence(String manifest, String metricsFile) throws IOException {
+        this(manifest, false, metricsFile);
+    }
+
+    /**
+     * Also reads the next readAheadFiles chunk files on a separate I/O thread while the current one is
+     * parsed. metricsFile may be empty:
+     * <pre>
+     *   -o 'org.bitfunnel.reproducibility.ChunkManifestDocumentSequence(manifest.txt,,2)'
+     * </pre>
+     */
+    public ChunkManifestDocumentSequence(String manifest, String metricsFile, String readAheadFiles) throws IOException {
+        this(manifest, false, metricsFile);
+        this.readAheadFiles = Integer.parseInt(readAheadFiles);
+    }
+
+    /**
+     * Also reads the fields given by schema, a FieldSchema file or inline schema, instead of text and
+     * title. readAheadFiles may be empty:
+     * <pre>
+     *   -o 'org.bitfunnel.reproducibility.ChunkManifestDocumentSequence(manifest.txt,,,fields.txt)'
+     * </pre>
+     */
+    public ChunkManifestDocumentSequence(String manifest, String metricsFile, String readAheadFiles, String schema) throws IOException {
+        this(manifest, false, metricsFile);
+        this.readAheadFiles = readAheadFiles.isEmpty() ? 0 : Integer.parseInt(readAheadFiles);
+        this.schema = FieldSchema.parse(schema);
+    }
+
+    public ChunkManifestDocumentSequence(String manifest, FieldSchema schema) throws IOException {
+        this(manifest, false, null);
+        this.schema = schema;
+    }
+
+    protected ChunkManifestDocumentSequence(String manifest, boolean mapped, String metricsFile) throws IOException {
         files = Files.readAllLines(Paths.get(manifest), Charset.defaultCharset()).toArray(new String[]{});
+        this.mapped = mapped;
+        this.metricsFile = metricsFile == null || metricsFile.isEmpty() ? null : metricsFile;
+        this.readAheadFiles = 0;
+    }
+
+    protected void setSchema(FieldSchema schema) {
+        this.schema = schema;
     }
 
     @Override
     public DocumentIterator iterator() throws IOException {
-        return new ChunkManifestDocumentIterator(files);
+        IngestionMetrics metrics = metricsFile != null ?
+                new IngestionMetrics(metricsFile, 1000) :
+                new IngestionMetrics();
+        ReadAhead readAhead = readAheadFiles > 0 ? new ReadAhead(1) : null;
+        return new ChunkManifestDocumentIterator(files, mapped, metrics, readAhead, readAheadFiles, schema);
     }
 
     @Override
     public DocumentFactory factory() {
-        return new ChunkDocumentFactory();
+        return new ChunkDocumentFactory(schema);
     }
 
     @Override
@@ -0,0 +1,263 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.dsi.lang.MutableString;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * ChunkStreamReader is a Reader over the utf-8 contents of a single document
+ * stream whose backing data lives in a ByteBuffer. The stream is modeled as the
+ * concatenation of one or more segments, each of which covers a sequence of
+ * "(Term End)*" bytes in the buffer. The reader decodes utf-8 to utf-16 on the
+ * fly and yields the concatenation of the segments followed by a single '\0'
+ * end-of-stream marker, which is the form expected by ChunkWordReader.
+ * ChunkWordReader bypasses the Reader interface altogether by calling
+ * nextTerm(), which decodes a whole term straight from the backing bytes.
+ *
+ * No bytes are copied. The reader is only valid as long as the underlying
+ * buffer region is not reused.
+ */
+public class ChunkStreamReader extends Reader implements TermSource {
+    // Unicode replacement character, substituted for malformed utf-8 sequences.
+    static final int REPLACEMENT_CHARACTER = 0xfffd;
+
+    private ByteBuffer buffer;
+
+    // Segment i covers buffer[segments[2 * i]..segments[2 * i + 1] - 1].
+    private int[] segments = new int[8];
+    private int segmentCount = 0;
+
+    // Read position.
+    private int segment = 0;
+    private int position = 0;
+    private int end = 0;
+    private boolean terminated = false;
+
+    // Low surrogate of a supplementary character whose high surrogate
+    // was returned by the previous call to read().
+    private int pendingLowSurrogate = -1;
+
+
+    public ChunkStreamReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+
+    /**
+     * Appends the segment buffer[offset..offset + length - 1] to the stream.
+     * The segment should not include the '\0' that terminates the stream.
+     */
+    public void addSegment(int offset, int length) {
+        if (2 * segmentCount + 2 > segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        segments[2 * segmentCount] = offset;
+        segments[2 * segmentCount + 1] = offset + length;
+        ++segmentCount;
+        rewind();
+    }
+
+
+    /**
+     * Removes all segments.
+     */
+    public void clear() {
+        segmentCount = 0;
+        rewind();
+    }
+
+
+    /**
+     * Returns true if the stream has at least one segment. Note that a
+     * segment may be empty.
+     */
+    public boolean hasSegments() {
+        return segmentCount > 0;
+    }
+
+
+    /**
+     * Replaces the backing buffer. Segment offsets are unchanged, so the new
+     * buffer must hold the same contents at those offsets. Used when the
+     * owner of the data grows its buffer.
+     */
+    public void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+
+    /**
+     * Positions the reader at the beginning of the stream.
+     */
+    public void rewind() {
+        segment = 0;
+        position = segmentCount > 0 ? segments[0] : 0;
+        end = segmentCount > 0 ? segments[1] : 0;
+        terminated = false;
+        pendingLowSurrogate = -1;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        if (pendingLowSurrogate != -1) {
+            int c = pendingLowSurrogate;
+            pendingLowSurrogate = -1;
+            return c;
+        }
+
+        int b = nextByte();
+        if (b == -1) {
+            if (terminated) {
+                return -1;
+            }
+            terminated = true;
+            return 0;
+        }
+        else if (b < 0x80) {
+            return b;
+        }
+        else if ((b & 0xe0) == 0xc0) {
+            return decode(b & 0x1f, 1);
+        }
+        else if ((b & 0xf0) == 0xe0) {
+            return decode(b & 0x0f, 2);
+        }
+        else if ((b & 0xf8) == 0xf0) {
+            int codePoint = decode(b & 0x07, 3);
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                pendingLowSurrogate = Character.lowSurrogate(codePoint);
+                return Character.highSurrogate(codePoint);
+            }
+            return codePoint;
+        }
+        else {
+            // Stray continuation byte or invalid lead byte.
+            return REPLACEMENT_CHARACTER;
+        }
+    }
+
+
+    /**
+     * Decodes the next term from the backing utf-8 bytes directly into
+     * {@code term}, replacing its contents. Performs no allocation once
+     * {@code term} has grown to the length of the longest term.
+     *
+     * @return true if a term was decoded, false if the stream has no more terms.
+     * @throws IOException if the last term of a segment is not terminated by '\0'.
+     */
+    @Override
+    public boolean nextTerm(MutableString term) throws IOException {
+        while (position >= end) {
+            if (segment + 1 >= segmentCount) {
+                terminated = true;
+                return false;
+            }
+            ++segment;
+            position = segments[2 * segment];
+            end = segments[2 * segment + 1];
+        }
+
+        // Find the '\0' that terminates the term.
+        int termEnd = position;
+        while (buffer.get(termEnd) != 0) {
+            if (++termEnd >= end) {
+                throw new IOException("ChunkStreamReader.nextTerm(): unterminated term.");
+            }
+        }
+
+        // A term never decodes to more utf-16 chars than it has utf-8 bytes.
+        term.length(termEnd - position);
+        final char[] chars = term.array();
+        int length = 0;
+        while (position < termEnd) {
+            int b = buffer.get(position++) & 0xff;
+            if (b < 0x80) {
+                chars[length++] = (char)b;
+            }
+            else if ((b & 0xe0) == 0xc0) {
+                chars[length++] = (char)decode(b & 0x1f, 1);
+            }
+            else if ((b & 0xf0) == 0xe0) {
+                chars[length++] = (char)decode(b & 0x0f, 2);
+            }
+            else if ((b & 0xf8) == 0xf0) {
+                int codePoint = decode(b & 0x07, 3);
+                if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    chars[length++] = Character.highSurrogate(codePoint);
+                    chars[length++] = Character.lowSurrogate(codePoint);
+                }
+                else {
+                    chars[length++] = (char)codePoint;
+                }
+            }
+            else {
+                chars[length++] = (char)REPLACEMENT_CHARACTER;
+            }
+        }
+        term.length(length);
+
+        // Move past the '\0'.
+        ++position;
+        return true;
+    }
+
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        while (count < len) {
+            int c = read();
+            if (c == -1) {
+                break;
+            }
+            cbuf[off + count++] = (char)c;
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        // Intentional nop. The reader does not own its buffer.
+    }
+
+
+    /**
+     * Combines {@code high} with {@code count} continuation bytes. Malformed
+     * sequences decode to the unicode replacement character. The offending
+     * byte is not consumed so that it can start the next character.
+     */
+    private int decode(int high, int count) {
+        int codePoint = high;
+        for (int i = 0; i < count; ++i) {
+            if (position >= end || (buffer.get(position) & 0xc0) != 0x80) {
+                return REPLACEMENT_CHARACTER;
+            }
+            codePoint = (codePoint << 6) | (buffer.get(position++) & 0x3f);
+        }
+        return codePoint;
+    }
+
+
+    private int nextByte() {
+        while (position >= end) {
+            if (segment + 1 >= segmentCount) {
+                return -1;
+            }
+            ++segment;
+            position = segments[2 * segment];
+            end = segments[2 * segment + 1];
+        }
+        return buffer.get(position++) & 0xff;
+    }
+}
@@ -9,13 +9,23 @@ import java.io.Reader;
 
 public class ChunkWordReader implements WordReader {
     Reader reader;
+
+    // Set when reader is a TermSource, e.g. a ChunkStreamReader. Terms are then decoded
+    // directly from the stream's backing data instead of one char at a time through reader.
+    TermSource termSource;
+
     boolean atEOF = false;
 
     @Override
     public boolean next(MutableString word, MutableString nonWord) throws IOException {
         word.length(0);
         nonWord.length(0);
-        if (reader == null) {
+        if (termSource != null) {
+            // Fast path. The term source knows where its terms end, so there
+            // is no end-of-stream marker to consume.
+            return termSource.nextTerm(word);
+        }
+        else if (reader == null) {
             throw new IOException("ChunkWordReader.next(): no reader set.");
         }
         else if (atEOF) {
@@ -42,10 +52,8 @@ public class ChunkWordReader implements WordReader {
                 return false;
             }
             else {
-                // TODO: Fix this converstion to UTF-16. Issue #33.
-
-                // We just hit the first letter of a word.
-                // Convert to utf-16 and append to word.
+                // We just hit the first letter of a word. The Reader has already
+                // decoded the stream to utf-16, so chars can be appended as is.
                 word.append((char)c);
 
                 // Scan in the remainder of the word and its trailing '\0'.
@@ -62,7 +70,6 @@ public class ChunkWordReader implements WordReader {
                         break;
                     }
                     else {
-                        // Convert to utf-16 and append to word.
                         word.append((char)c);
                     }
                 }
@@ -76,6 +83,7 @@ public class ChunkWordReader implements WordReader {
     public WordReader setReader(Reader reader)
     {
         this.reader = reader;
+        this.termSource = (reader instanceof TermSource) ? (TermSource)reader : null;
         atEOF = false;
         return this;
     }
@@ -83,8 +91,7 @@ public class ChunkWordReader implements WordReader {
 
     @Override
     public WordReader copy() {
-        // Not implemented.
-        System.out.println("ChunkWordReader.copy(): not implemented - returns null.");
-        return null;
+        // ChunkWordReader has no configuration, so a copy is just a fresh instance.
+        return new ChunkWordReader();
     }
 }
@@ -0,0 +1,228 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Maps the streams of BitFunnel chunk files to named fields.
+ *
+ * <p>Each field has a stream id (0 to 255), a name and whether it is indexed.
+ * The indexed fields, in declaration order, are the fields of the mg4j index,
+ * so the first one is the default field for queries. Readers skip streams of
+ * fields that are not indexed, and streams not declared at all, without
+ * copying them. GenerateBitFunnelChunks writes every declared field.
+ *
+ * <p>A schema is given either as a file or inline. Each field is a line of
+ * the file, or a comma separated entry inline, of the form
+ * <pre>
+ *   streamId name [indexed | ignored]
+ * </pre>
+ * with the parts separated by spaces or colons. '#' starts a comment. For
+ * example, "0:text,1:title" is the default schema.
+ */
+public class FieldSchema {
+    public static final FieldSchema DEFAULT = new FieldSchema(Arrays.asList(
+            new Field(0, "text", true),
+            new Field(1, "title", true)));
+
+    private static final int STREAM_COUNT = 256;
+
+
+    public static class Field {
+        public final int streamId;
+        public final String name;
+        public final boolean indexed;
+
+        public Field(int streamId, String name, boolean indexed) {
+            this.streamId = streamId;
+            this.name = name;
+            this.indexed = indexed;
+        }
+    }
+
+
+    // Every declared field, in declaration order.
+    private final List<Field> fields;
+
+    // The indexed fields, in declaration order.
+    private final List<Field> indexedFields = new ArrayList<>();
+
+    // Stream id -> whether its field is indexed.
+    private final boolean[] indexedStreams = new boolean[STREAM_COUNT];
+
+    // One more than the largest indexed stream id.
+    private int streamSlots = 0;
+
+
+    public FieldSchema(List<Field> fields) {
+        for (int i = 0; i < fields.size(); ++i) {
+            Field field = fields.get(i);
+            if (field.streamId < 0 || field.streamId >= STREAM_COUNT) {
+                throw new IllegalArgumentException(String.format("FieldSchema: stream id %d out of range.", field.streamId));
+            }
+            for (int j = 0; j < i; ++j) {
+                if (fields.get(j).streamId == field.streamId || fields.get(j).name.equals(field.name)) {
+                    throw new IllegalArgumentException(String.format("FieldSchema: field %s declared twice.", field.name));
+                }
+            }
+            if (field.indexed) {
+                indexedFields.add(field);
+                indexedStreams[field.streamId] = true;
+                streamSlots = Math.max(streamSlots, field.streamId + 1);
+            }
+        }
+        if (indexedFields.isEmpty()) {
+            throw new IllegalArgumentException("FieldSchema: no indexed fields.");
+        }
+        this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+    }
+
+
+    /**
+     * Returns the schema in the file named spec if there is one, and otherwise
+     * parses spec as an inline schema. Returns DEFAULT for a null or empty spec.
+     */
+    public static FieldSchema parse(String spec) throws IOException {
+        if (spec == null || spec.isEmpty()) {
+            return DEFAULT;
+        }
+        Path path = Paths.get(spec);
+        List<String> entries = new ArrayList<>();
+        if (Files.isRegularFile(path)) {
+            entries.addAll(Files.readAllLines(path, StandardCharsets.UTF_8));
+        }
+        else {
+            Collections.addAll(entries, spec.split(","));
+        }
+
+        List<Field> fields = new ArrayList<>();
+        for (String entry : entries) {
+            int comment = entry.indexOf('#');
+            if (comment != -1) {
+                entry = entry.substring(0, comment);
+            }
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+
+            String[] parts = entry.split("[:\\s]+");
+            if (parts.length < 2 || parts.length > 3) {
+                throw new IOException(String.format("FieldSchema: expected \"streamId name [indexed | ignored]\", found \"%s\".", entry));
+            }
+            int streamId;
+            try {
+                streamId = Integer.parseInt(parts[0]);
+            }
+            catch (NumberFormatException e) {
+                throw new IOException(String.format("FieldSchema: bad stream id \"%s\".", parts[0]));
+            }
+            boolean indexed = true;
+            if (parts.length == 3) {
+                if (parts[2].equals("ignored")) {
+                    indexed = false;
+                }
+                else if (!parts[2].equals("indexed")) {
+                    throw new IOException(String.format("FieldSchema: expected indexed or ignored, found \"%s\".", parts[2]));
+                }
+            }
+            fields.add(new Field(streamId, parts[1], indexed));
+        }
+
+        try {
+            return new FieldSchema(fields);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+
+    /**
+     * @return every declared field, indexed or not.
+     */
+    public List<Field> fields() {
+        return fields;
+    }
+
+
+    /**
+     * @return the number of indexed fields.
+     */
+    public int fieldCount() {
+        return indexedFields.size();
+    }
+
+
+    /**
+     * @return the name of indexed field i, or null if there is none.
+     */
+    public String fieldName(int i) {
+        return i >= 0 && i < indexedFields.size() ? indexedFields.get(i).name : null;
+    }
+
+
+    /**
+     * @return the number of the indexed field with the given name, or -1.
+     */
+    public int fieldIndex(String name) {
+        for (int i = 0; i < indexedFields.size(); ++i) {
+            if (indexedFields.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * @return the stream id of indexed field i.
+     */
+    public int streamId(int i) {
+        return indexedFields.get(i).streamId;
+    }
+
+
+    /**
+     * @return one more than the largest indexed stream id, so an array of this
+     * length has a slot for every indexed stream.
+     */
+    public int streamSlots() {
+        return streamSlots;
+    }
+
+
+    /**
+     * @return true if streams with this id belong to an indexed field.
+     */
+    public boolean isIndexed(int streamId) {
+        return streamId >= 0 && streamId < STREAM_COUNT && indexedStreams[streamId];
+    }
+
+
+    /**
+     * @return the schema in the inline form accepted by parse().
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (Field field : fields) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(field.streamId).append(':').append(field.name);
+            if (!field.indexed) {
+                result.append(":ignored");
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.Document;
+import it.unimi.di.big.mg4j.document.DocumentFactory;
+import it.unimi.di.big.mg4j.document.DocumentIterator;
+import it.unimi.di.big.mg4j.document.DocumentSequence;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+
+/**
+ * Reads the chunks of a framed chunk stream (see ChunkFrameWriter) from stdin
+ * or a named pipe, so mg4j can index chunks as they are produced. The stream
+ * can only be read once. For example, with mg4j's IndexBuilder:
+ * <pre>
+ *   -o 'org.bitfunnel.reproducibility.FramedChunkDocumentSequence(-)'
+ * </pre>
+ */
+public class FramedChunkDocumentSequence implements DocumentSequence {
+    static final long MAX_FRAME_BYTES = 256L * 1024 * 1024;
+
+    private final InputStream input;
+    private FieldSchema schema = FieldSchema.DEFAULT;
+    private boolean iterated = false;
+
+
+    /**
+     * @param input the name of a named pipe or file, or - for stdin.
+     */
+    public FramedChunkDocumentSequence(String input) throws IOException {
+        this.input = input.equals("-") ? System.in : new FileInputStream(input);
+    }
+
+
+    public FramedChunkDocumentSequence(String input, String schema) throws IOException {
+        this(input);
+        this.schema = FieldSchema.parse(schema);
+    }
+
+
+    @Override
+    public DocumentIterator iterator() throws IOException {
+        if (iterated) {
+            throw new IOException("FramedChunkDocumentSequence: a stream can only be read once.");
+        }
+        iterated = true;
+        return new FrameIterator(new ChunkFrameReader(input, MAX_FRAME_BYTES));
+    }
+
+
+    private class FrameIterator implements DocumentIterator {
+        private final ChunkFrameReader reader;
+        private DocumentIterator iterator = null;
+        private Document document = null;
+
+        FrameIterator(ChunkFrameReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Document nextDocument() throws IOException {
+            if (document != null) {
+                document.close();
+                document = null;
+            }
+            while (true) {
+                if (iterator != null && (document = iterator.nextDocument()) != null) {
+                    return document;
+                }
+                if (iterator != null) {
+                    iterator.close();
+                    iterator = null;
+                }
+
+                byte[] frame = reader.nextFrame();
+                if (frame == null) {
+                    return null;
+                }
+                PushbackInputStream chunk = new PushbackInputStream(
+                        ChunkCompression.open(new ByteArrayInputStream(frame)),
+                        BinaryChunkReader.MAGIC_LENGTH);
+                iterator = BinaryChunkReader.isBinaryChunk(chunk) ?
+                        new BinaryChunkDocumentSequence(chunk, schema).iterator() :
+                        new ChunkDocumentSequence(chunk, schema).iterator();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (document != null) {
+                document.close();
+            }
+            if (iterator != null) {
+                iterator.close();
+            }
+            reader.close();
+        }
+    }
+
+
+    @Override
+    public DocumentFactory factory() {
+        return new ChunkDocumentFactory(schema);
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+
+    @Override
+    public void filename(CharSequence charSequence) throws IOException {
+        // Intentional nop. See javadoc for filename() method of it.unimi.di.big.mg4j.document.DocumentSequence
+        // for more information.
+    }
+}
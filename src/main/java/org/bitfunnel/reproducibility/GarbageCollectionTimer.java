@@ -0,0 +1,62 @@
+package org.bitfunnel.reproducibility;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+
+/**
+ * Measures the time the JVM has spent in garbage collection, summed over all
+ * collectors, since the timer was constructed or last reset.
+ */
+public class GarbageCollectionTimer {
+    private long startTimeMs;
+    private long startCount;
+
+
+    public GarbageCollectionTimer() {
+        reset();
+    }
+
+
+    public void reset() {
+        startTimeMs = totalTimeMs();
+        startCount = totalCount();
+    }
+
+
+    public long elapsedTimeMs() {
+        return totalTimeMs() - startTimeMs;
+    }
+
+
+    public long collections() {
+        return totalCount() - startCount;
+    }
+
+
+    /**
+     * Returns the garbage collection time per million of {@code documents}.
+     */
+    public double msPerMillionDocuments(long documents) {
+        return documents == 0 ? 0.0 : elapsedTimeMs() * 1e6 / documents;
+    }
+
+
+    static long totalTimeMs() {
+        long total = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // getCollectionTime() returns -1 if the collector does not track time.
+            total += Math.max(0, bean.getCollectionTime());
+        }
+        return total;
+    }
+
+
+    static long totalCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, bean.getCollectionCount());
+        }
+        return total;
+    }
+}
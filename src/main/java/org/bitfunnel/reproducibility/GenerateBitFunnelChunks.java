@@ -30,9 +30,20 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.configuration.ConfigurationException;
 import org.slf4j.Logger;
@@ -60,6 +71,335 @@ import com.martiansoftware.jsap.UnflaggedOption;
 public class GenerateBitFunnelChunks {
     final static Logger LOGGER = LoggerFactory.getLogger( GenerateBitFunnelChunks.class );
 
+    private final Path chunkFile;
+    private final boolean binary;
+    // Write block compressed chunk files. See BlockCompressedOutputStream.
+    private boolean compressed = false;
+    // Write a ChunkIndex alongside each text chunk file.
+    private boolean indexed = true;
+    private final long maxShardDocuments;
+    private final long maxShardBytes;
+
+    // When false, all documents go to chunkFile itself. Otherwise chunkFile is
+    // the basename of the shards and a manifest lists them.
+    private final boolean sharded;
+
+    // Shards written so far, by any thread.
+    private final List<Path> shards = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong documentCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+
+    // Counts documents, terms and bytes written. Does not write a time series unless set.
+    private IngestionMetrics metrics = new IngestionMetrics();
+
+    // The fields to write. Each declared field is read from the sequence's field of
+    // the same name and written to its stream id. Set from the schema by run().
+    private FieldSchema schema = FieldSchema.DEFAULT;
+    private int[] sourceFields;
+    private int[] streamIds;
+
+
+    /**
+     * @param chunkFile the chunk file or, when sharding, the basename of the shards.
+     * @param binary write chunks in the binary format.
+     * @param maxShardDocuments documents per shard, or 0 for no limit.
+     * @param maxShardBytes approximate bytes per shard, or 0 for no limit.
+     * @param sharded whether to write shards rather than a single chunk file.
+     */
+    public GenerateBitFunnelChunks(Path chunkFile, boolean binary, long maxShardDocuments, long maxShardBytes, boolean sharded) {
+        this.chunkFile = chunkFile;
+        this.binary = binary;
+        this.maxShardDocuments = maxShardDocuments;
+        this.maxShardBytes = maxShardBytes;
+        this.sharded = sharded;
+    }
+
+
+    /**
+     * Writes chunk files block compressed, so they can be decompressed in parallel as they are read.
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+
+    /**
+     * Writes a ChunkIndex, &lt;chunk file&gt;.idx, alongside each chunk file in the text format.
+     * On by default.
+     */
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+
+    /**
+     * Sets the fields to write. Every declared field is written, indexed or not.
+     */
+    public void setSchema(FieldSchema schema) {
+        this.schema = schema;
+    }
+
+
+    /**
+     * Sets the metrics that record conversion progress. Bytes are bytes written.
+     */
+    public void setMetrics(IngestionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Converts a document sequence to chunks. With more than one thread, the
+     * sequence must be a DocumentCollection. Its documents are split into
+     * ranges of consecutive indices, which threads convert independently.
+     * A document's id is its index in the sequence either way.
+     *
+     * @return the shards written, in document id order.
+     */
+    public List<Path> run(DocumentSequence sequence, int threadCount) throws Exception {
+        long startTime = System.nanoTime();
+
+        List<FieldSchema.Field> fields = schema.fields();
+        sourceFields = new int[fields.size()];
+        streamIds = new int[fields.size()];
+        for (int i = 0; i < fields.size(); ++i) {
+            sourceFields[i] = sequence.factory().fieldIndex(fields.get(i).name);
+            if (sourceFields[i] == -1) {
+                throw new IOException(String.format("GenerateBitFunnelChunks: the document sequence has no field %s.", fields.get(i).name));
+            }
+            if (sequence.factory().fieldType(sourceFields[i]) != DocumentFactory.FieldType.TEXT) {
+                throw new IOException(String.format("GenerateBitFunnelChunks: field %s is not a text field.", fields.get(i).name));
+            }
+            streamIds[i] = fields.get(i).streamId;
+        }
+
+        if (threadCount > 1 && !(sequence instanceof DocumentCollection)) {
+            System.out.println("Document sequence does not support random access. Falling back to one thread.");
+            threadCount = 1;
+        }
+
+        if (threadCount == 1) {
+            runSequential(sequence);
+        }
+        else {
+            runParallel((DocumentCollection)sequence, threadCount);
+        }
+
+        // Shard names end with the zero-padded id of their first document.
+        List<Path> result = new ArrayList<>(shards);
+        Collections.sort(result);
+
+        System.out.println(String.format("Wrote %d documents to %d chunk files (%d bytes) in %f seconds.",
+                documentCount.get(),
+                result.size(),
+                byteCount.get(),
+                (System.nanoTime() - startTime) * 1e-9));
+
+        return result;
+    }
+
+
+    private void runSequential(DocumentSequence sequence) throws Exception {
+        DocumentIterator documentIterator = sequence.iterator();
+        metrics.busy();
+        try (ShardWriter writer = new ShardWriter()) {
+            Document document;
+            int documentId = 0;
+            while ((document = documentIterator.nextDocument()) != null) {
+                // System.out.println(String.format("%s", document.title()));
+                writer.write(document, documentId++);
+                document.close();
+            }
+        }
+        documentIterator.close();
+        metrics.idle();
+    }
+
+
+    private void runParallel(DocumentCollection collection, int threadCount) throws Exception {
+        final long size = collection.size();
+
+        // A range is written by one thread. Ranges start new shards, so with a
+        // document limit each range is exactly one shard.
+        final long rangeSize = maxShardDocuments > 0 ?
+                maxShardDocuments :
+                Math.max(1, (size + threadCount - 1) / threadCount);
+        final long rangeCount = (size + rangeSize - 1) / rangeSize;
+        AtomicLong nextRange = new AtomicLong();
+        metrics.setQueueDepth(() -> Math.max(0, rangeCount - nextRange.get()));
+
+        System.out.println(String.format("Converting %d documents in %d ranges with %d threads.",
+                size,
+                rangeCount,
+                threadCount));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Void>> workers = new ArrayList<>(threadCount);
+            for (int t = 0; t < threadCount; ++t) {
+                workers.add(executor.submit(() -> {
+                    // Each thread needs its own copy for random access.
+                    DocumentCollection copy = collection.copy();
+                    try {
+                        long range;
+                        while ((range = nextRange.getAndIncrement()) < rangeCount) {
+                            long end = Math.min(size, (range + 1) * rangeSize);
+                            metrics.busy();
+                            try (ShardWriter writer = new ShardWriter()) {
+                                for (long i = range * rangeSize; i < end; ++i) {
+                                    Document document = copy.document(i);
+                                    writer.write(document, (int)i);
+                                    document.close();
+                                }
+                            }
+                            metrics.idle();
+                        }
+                    }
+                    finally {
+                        copy.close();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * Writes one document, lower casing its terms.
+     * @return the number of terms written.
+     */
+    private long writeDocument(ChunkFile chunk,
+                               Document document,
+                               int documentId,
+                               MutableString word,
+                               MutableString nonWord) throws Exception {
+        long termCount = 0;
+        try (ChunkFile.DocumentScope documentScope = chunk.new DocumentScope(documentId)) {
+
+            for (int i = 0; i < sourceFields.length; ++i)
+            {
+                int f = sourceFields[i];
+                // System.out.println(String.format("  Field: %d", f));
+
+                try (ChunkFile.StreamScope streamScope = chunk.new StreamScope(streamIds[i])) {
+                    Reader reader = (Reader) document.content(f);
+                    WordReader wordReader = document.wordReader(f);
+                    wordReader.setReader(reader);
+                    while (wordReader.next(word, nonWord)) {
+                        if (word.length() > 0) {
+                            // System.out.println(String.format("    %s", word));
+
+                            chunk.emitLowerCase(word);
+                            ++termCount;
+                        }
+                        else {
+                            // System.out.println("    (Skipped zero-length word.)");
+                        }
+                    }
+                }
+            }
+        }
+        return termCount;
+    }
+
+
+    /**
+     * Writes documents with consecutive ids. When sharding, starts a new chunk
+     * file whenever the current one reaches the shard limits. Shards are named
+     * after the id of their first document.
+     */
+    private class ShardWriter implements AutoCloseable {
+        private final MutableString word = new MutableString();
+        private final MutableString nonWord = new MutableString();
+
+        private Path path = null;
+        private FileChannel channel = null;
+        // Between chunk and channel when compressing.
+        private OutputStream compressedOutput = null;
+        private ChunkFile chunk = null;
+        private ChunkFile.FileScope fileScope = null;
+        private ChunkIndex.Builder index = null;
+        private long shardDocuments = 0;
+
+        void write(Document document, int documentId) throws Exception {
+            if (chunk == null) {
+                openShard(documentId);
+            }
+
+            long bytesBefore = chunk.bytesWritten();
+            long termCount = writeDocument(chunk, document, documentId, word, nonWord);
+            documentCount.incrementAndGet();
+            metrics.addDocuments(1);
+            metrics.addTerms(termCount);
+            metrics.addBytes(chunk.bytesWritten() - bytesBefore);
+
+            if (sharded &&
+                ((maxShardDocuments > 0 && ++shardDocuments >= maxShardDocuments) ||
+                 (maxShardBytes > 0 && chunk.bytesWritten() >= maxShardBytes))) {
+                closeShard();
+            }
+        }
+
+        private void openShard(int firstDocumentId) throws IOException {
+            path = sharded ?
+                    Paths.get(String.format("%s-%010d", chunkFile, firstDocumentId)) :
+                    chunkFile;
+            channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            if (compressed) {
+                compressedOutput = new BlockCompressedOutputStream(Channels.newOutputStream(channel));
+                chunk = binary ? new BinaryChunkFile(compressedOutput) : new ChunkFile(compressedOutput);
+            }
+            else {
+                chunk = binary ? new BinaryChunkFile(channel) : new ChunkFile(channel);
+            }
+            if (indexed && !binary) {
+                index = new ChunkIndex.Builder();
+                chunk.setIndex(index);
+            }
+            fileScope = chunk.new FileScope();
+            shardDocuments = 0;
+            shards.add(path);
+        }
+
+        private void closeShard() throws IOException {
+            fileScope.close();
+            if (compressedOutput != null) {
+                // Also closes channel.
+                compressedOutput.close();
+                compressedOutput = null;
+                byteCount.addAndGet(Files.size(path));
+            }
+            else {
+                channel.close();
+                byteCount.addAndGet(chunk.bytesWritten());
+            }
+            if (index != null) {
+                index.build().write(ChunkIndex.path(path.toString()));
+                index = null;
+            }
+            chunk = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // An empty sequence still yields an (empty) chunk file when not sharding.
+            if (chunk == null && !sharded && shards.isEmpty()) {
+                openShard(0);
+            }
+            if (chunk != null) {
+                closeShard();
+            }
+        }
+    }
+
 
     // TODO: Remove throws java.lang.Exception. This is too general.
     @SuppressWarnings({ "unchecked", "resource" })
@@ -73,7 +413,17 @@ public class GenerateBitFunnelChunks {
                         new FlaggedOption( "property", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, 'p', "property", "A 'key=value' specification, or the name of a property file (when indexing stdin)." ).setAllowMultipleDeclarations( true ),
                         // TODO: Decide whether to implement "downcase" switch. May want to hard-code this behavior.
                         new Switch( "downcase", JSAP.NO_SHORTFLAG, "downcase", "A shortcut for setting the term processor to the downcasing processor." ),
-                        new UnflaggedOption( "chunkFile", JSAP.STRING_PARSER, JSAP.REQUIRED, "The name of the BitFunnel chunk file." )
+                        new Switch( "binary", 'b', "binary", "Write the chunk in the binary format (see BinaryChunkReader)." ),
+                        new Switch( "noIndex", JSAP.NO_SHORTFLAG, "no-index", "Do not write the <chunk file>.idx document offsets and block checksums of text chunk files." ),
+                        new Switch( "compress", 'z', "compress", "Block compress the chunk files (see BlockCompressedOutputStream). Readers detect compressed chunks." ),
+                        new FlaggedOption( "threads", JSAP.INTSIZE_PARSER, "1", JSAP.NOT_REQUIRED, 't', "threads", "The number of threads to use. More than one requires a serialised document collection, and implies sharding." ),
+                        new FlaggedOption( "shardDocuments", JSAP.LONGSIZE_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "shard-documents", "The maximum number of documents per chunk file (0 for no limit). Implies sharding." ),
+                        new FlaggedOption( "shardBytes", JSAP.LONGSIZE_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "shard-bytes", "The approximate maximum size of a chunk file (0 for no limit). Implies sharding." ),
+                        new FlaggedOption( "manifest", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, 'm', "manifest", "The manifest listing the shards (default: <chunkFile>.manifest)." ),
+                        new FlaggedOption( "fields", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "fields", "The fields to write, a file or an inline list of stream ids and document field names such as \"0:text,1:title,2:anchor\". Defaults to text and title." ),
+                        new Switch( "metrics", JSAP.NO_SHORTFLAG, "metrics", "Sample documents, terms and bytes written per second and per-thread busy time into <chunkFile>.metrics.csv and <chunkFile>.metrics.threads.csv." ),
+                        new FlaggedOption( "metricsInterval", JSAP.LONG_PARSER, "1000", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "metrics-interval", "The metrics sampling interval, in milliseconds." ),
+                        new UnflaggedOption( "chunkFile", JSAP.STRING_PARSER, JSAP.REQUIRED, "The name of the BitFunnel chunk file or, when sharding, the basename of the shards." )
         });
 
         JSAPResult jsapResult = jsap.parse( arg );
@@ -81,57 +431,42 @@ public class GenerateBitFunnelChunks {
 
         final DocumentSequence documentSequence = Scan.getSequence( jsapResult.getString( "sequence" ), jsapResult.getClass( "factory" ), jsapResult.getStringArray( "property" ), jsapResult.getInt( "delimiter" ), LOGGER );
 
-        // TODO: put following code in run() method.
+        int threadCount = jsapResult.getInt( "threads" );
+        long shardDocuments = jsapResult.getLong( "shardDocuments" );
+        long shardBytes = jsapResult.getLong( "shardBytes" );
+        boolean sharded = threadCount > 1 || shardDocuments > 0 || shardBytes > 0 || jsapResult.contains( "manifest" );
 
-        Path chunkFile = Paths.get(jsapResult.getString( "chunkFile" ));
+        Path chunkFile = Paths.get(jsapResult.getString( "chunkFile" )).toAbsolutePath();
         Files.createDirectories(chunkFile.getParent());
-        OutputStream outputStream = Files.newOutputStream(chunkFile);
-        ChunkFile chunk = new ChunkFile(outputStream);
 
-        DocumentIterator documentIterator = documentSequence.iterator();
-        Document document;
-        Reader reader;
-        WordReader wordReader;
-        final MutableString word = new MutableString(), nonWord = new MutableString();
+        GenerateBitFunnelChunks generator = new GenerateBitFunnelChunks(
+                chunkFile,
+                jsapResult.getBoolean( "binary" ),
+                shardDocuments,
+                shardBytes,
+                sharded);
+        IngestionMetrics metrics = jsapResult.getBoolean( "metrics" ) ?
+                new IngestionMetrics(chunkFile + ".metrics.csv", jsapResult.getLong( "metricsInterval" )) :
+                new IngestionMetrics();
+        generator.setMetrics(metrics);
+        generator.setCompressed(jsapResult.getBoolean( "compress" ));
+        generator.setIndexed(!jsapResult.getBoolean( "noIndex" ));
+        generator.setSchema(FieldSchema.parse(jsapResult.getString( "fields" )));
+        List<Path> shards = generator.run(documentSequence, threadCount);
+        metrics.close();
+        documentSequence.close();
 
-        // Scaffolding to demonstrate iteration over documents, fields, and terms.
-        try (ChunkFile.FileScope fileScope = chunk.new FileScope()) {
-            int documentId = 0;
-            while ((document = documentIterator.nextDocument()) != null) {
-                // System.out.println(String.format("%s", document.title()));
-
-                try (ChunkFile.DocumentScope documentScope = chunk.new DocumentScope(documentId)) {
-
-                    // TODO: Don't hard-code fields.
-                    for (int f = 0; f < 2; ++f)
-                    {
-                        // System.out.println(String.format("  Field: %d", f));
-
-                        try (ChunkFile.StreamScope streamScope = chunk.new StreamScope(f)) {
-                            Object content = document.content(f);
-                            reader = (Reader) content;
-                            wordReader = document.wordReader(f);
-                            wordReader.setReader(reader);
-                            while (wordReader.next(word, nonWord)) {
-                                String text = word.toString().toLowerCase();
-
-                                if (text.length() > 0) {
-                                    // System.out.println(String.format("    %s", text));
-
-                                    chunk.emit(text);
-                                }
-                                else {
-                                    // System.out.println("    (Skipped zero-length word.)");
-                                }
-                            }
-                        }
-                    }
-                }
-
-                ++documentId;
+        if (sharded) {
+            // One chunk file per line, as read by ChunkManifestDocumentSequence and IndexBuilder.
+            Path manifest = Paths.get(jsapResult.contains( "manifest" ) ?
+                    jsapResult.getString( "manifest" ) :
+                    chunkFile + ".manifest");
+            List<String> lines = new ArrayList<>(shards.size());
+            for (Path shard : shards) {
+                lines.add(shard.toString());
             }
+            Files.write(manifest, lines, StandardCharsets.UTF_8);
+            System.out.println(String.format("Wrote manifest %s.", manifest));
         }
-
-        outputStream.close();
     }
 }
@@ -28,8 +28,8 @@ import java.util.List;
 
 
 public class IndexExporter {
+    // The exported field: the first field of the schema.
     private final Index text;
-    private final Index title;
     private final Object2ReferenceOpenHashMap<String,Index> indexMap;
     private final Object2ReferenceOpenHashMap<String, TermProcessor> termProcessors;
 
@@ -39,20 +39,19 @@ public class IndexExporter {
 
     // TODO: Add javadoc
     public IndexExporter(String basename) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException, IOException, InstantiationException, URISyntaxException, ConfigurationException, ClassNotFoundException {
-        // Load and configure the index.
-        text = Index.getInstance( basename + "-text", true, true );
-        title = Index.getInstance( basename + "-title", true, true );
-//      text = Index.getInstance( basename + "-text?inmemory=1", true, true );
-//      title = Index.getInstance( basename + "-title?inmemory=1", true, true );
+        this(basename, FieldSchema.DEFAULT);
+    }
 
-        indexMap = new Object2ReferenceOpenHashMap<String,Index>(
-            new String[] { "text", "title" }, new Index[] { text, title } );
-        termProcessors = new Object2ReferenceOpenHashMap<String,TermProcessor>(
-            new String[] { "text", "title" },
-            new TermProcessor[] { text.termProcessor, title.termProcessor } );;
+
+    public IndexExporter(String basename, FieldSchema schema) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException, IOException, InstantiationException, URISyntaxException, ConfigurationException, ClassNotFoundException {
+        // Load and configure the index.
+        Mg4jIndex index = new Mg4jIndex(basename, schema);
+        text = index.defaultIndex;
+        indexMap = index.indexMap;
+        termProcessors = index.termProcessors;
 
         engine = new ExperimentalQueryEngine(
-            new SimpleParser( indexMap.keySet(), "text", termProcessors ),
+            new SimpleParser( indexMap.keySet(), index.defaultField, termProcessors ),
             new DocumentIteratorBuilderVisitor( indexMap, text, 1000 ),
             indexMap);
 
@@ -265,12 +264,14 @@ public class IndexExporter {
                         new UnflaggedOption( "outbasename", JSAP.STRING_PARSER, JSAP.REQUIRED, "The output basename." ),
                         new Switch( "index", JSAP.NO_SHORTFLAG, "index", "Export the index for Partitioned Elias-Fano." ),
                         new FlaggedOption( "queries", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "queries", "Query log input file." ),
+                        new FlaggedOption( "fields", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "fields", "The field schema of the index, a file or an inline list such as \"0:text,1:title\". The first field is exported." ),
                 });
 
         JSAPResult jsapResult = jsap.parse( arg );
         if ( !jsap.messagePrinted() ) {
             if (jsapResult.getBoolean("index") || jsapResult.userSpecified("queries")) {
-                IndexExporter exporter = new IndexExporter(jsapResult.getString( "inbasename" ));
+                IndexExporter exporter = new IndexExporter(jsapResult.getString( "inbasename" ),
+                                                           FieldSchema.parse(jsapResult.getString( "fields" )));
 
                 // Export index if requested.
                 if (jsapResult.getBoolean("index")) {
@@ -0,0 +1,167 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.Document;
+import it.unimi.di.big.mg4j.document.DocumentCollection;
+import it.unimi.di.big.mg4j.document.DocumentFactory;
+import it.unimi.di.big.mg4j.document.DocumentIterator;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectArrayMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * A text chunk file with a ChunkIndex, read as a DocumentCollection. Any
+ * document can be read by its position without parsing the ones before it,
+ * and iterator(from, to) maps only the documents of a range, so samplers and
+ * parallel readers can start mid-file. Can be passed to mg4j's tools as an
+ * object sequence:
+ * <pre>
+ *   -o 'org.bitfunnel.reproducibility.IndexedChunkDocumentSequence(chunk.txt)'
+ * </pre>
+ * Binary chunks depend on the term definitions before each document, and
+ * compressed chunks cannot be read at an offset, so neither is supported.
+ */
+public class IndexedChunkDocumentSequence implements DocumentCollection {
+    private final String file;
+    private final ChunkIndex index;
+    private final FieldSchema schema;
+    private final FileChannel channel;
+
+
+    public IndexedChunkDocumentSequence(String file) throws IOException {
+        this(file, FieldSchema.DEFAULT);
+    }
+
+
+    public IndexedChunkDocumentSequence(String file, FieldSchema schema) throws IOException {
+        this(file, ChunkIndex.read(ChunkIndex.path(file)), schema);
+    }
+
+
+    private IndexedChunkDocumentSequence(String file, ChunkIndex index, FieldSchema schema) throws IOException {
+        if (ChunkCompression.isCompressed(file) || BinaryChunkReader.isBinaryChunk(file)) {
+            throw new IOException(String.format("IndexedChunkDocumentSequence: %s is not an uncompressed text chunk.", file));
+        }
+        this.file = file;
+        this.index = index;
+        this.schema = schema;
+        this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        if (channel.size() != index.length()) {
+            channel.close();
+            throw new IOException(String.format("IndexedChunkDocumentSequence: %s does not match its index.", file));
+        }
+    }
+
+
+    public ChunkIndex index() {
+        return index;
+    }
+
+
+    /**
+     * @return the position of the document with the given id, or -1.
+     */
+    public long indexOf(long documentId) {
+        return index.indexOf(documentId);
+    }
+
+
+    @Override
+    public long size() {
+        return index.documentCount();
+    }
+
+
+    @Override
+    public Document document(long i) throws IOException {
+        return new ChunkDocument(new PushbackInputStream(stream(i)), schema);
+    }
+
+
+    /**
+     * @return the bytes of document i, as they are in the chunk.
+     */
+    @Override
+    public InputStream stream(long i) throws IOException {
+        checkRange(i, i + 1);
+        int position = (int)i;
+        long start = index.offset(position);
+        ByteBuffer bytes = ByteBuffer.allocate((int)(index.offset(position + 1) - start));
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, start + bytes.position()) == -1) {
+                throw new IOException("IndexedChunkDocumentSequence.stream(): unexpected EOF.");
+            }
+        }
+        return new ByteArrayInputStream(bytes.array());
+    }
+
+
+    @Override
+    public Reference2ObjectMap<Enum<?>, Object> metadata(long i) throws IOException {
+        checkRange(i, i + 1);
+        return new Reference2ObjectArrayMap<>();
+    }
+
+
+    @Override
+    public DocumentIterator iterator() throws IOException {
+        return iterator(0, size());
+    }
+
+
+    /**
+     * Iterates over the documents at positions from (inclusive) to to (exclusive).
+     */
+    public DocumentIterator iterator(long from, long to) throws IOException {
+        checkRange(from, to);
+        return new MappedChunkDocumentIterator(channel, schema, index.offset((int)from), index.offset((int)to));
+    }
+
+
+    private void checkRange(long from, long to) {
+        if (from < 0 || to > size() || from > to) {
+            throw new IndexOutOfBoundsException(String.format("IndexedChunkDocumentSequence: documents %d to %d of %d.", from, to, size()));
+        }
+    }
+
+
+    @Override
+    public DocumentFactory factory() {
+        return new ChunkDocumentFactory(schema);
+    }
+
+
+    /**
+     * Returns a copy with its own channel, sharing the index.
+     */
+    @Override
+    public DocumentCollection copy() {
+        try {
+            return new IndexedChunkDocumentSequence(file, index, schema);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    @Override
+    public void filename(CharSequence charSequence) throws IOException {
+        // Intentional nop. See javadoc for filename() method of it.unimi.di.big.mg4j.document.DocumentSequence
+        // for more information.
+    }
+}
@@ -0,0 +1,148 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The chunk files already ingested into an index, kept next to the index in
+ * {@code <index>.ledger} so incremental builds only ingest new chunk files.
+ *
+ * <p>Each line holds a chunk file, its size, its number of documents and the
+ * number of documents ingested before it, separated by tabs. In an mg4j index,
+ * the last is the id of the file's first document. Lines are only ever
+ * appended, after the index holding their documents has been committed, so
+ * documents of later builds always come after those of earlier ones.
+ */
+public class IngestionLedger {
+    public static final String EXTENSION = ".ledger";
+
+    public static class Entry {
+        public final String file;
+        public final long bytes;
+        public final long documents;
+        public final long firstDocument;
+
+        Entry(String file, long bytes, long documents, long firstDocument) {
+            this.file = file;
+            this.bytes = bytes;
+            this.documents = documents;
+            this.firstDocument = firstDocument;
+        }
+    }
+
+
+    private final Path path;
+    private final List<Entry> entries = new ArrayList<>();
+    // Normalized absolute chunk file name -> entry.
+    private final Map<String, Entry> byFile = new HashMap<>();
+    private long documentCount = 0;
+
+
+    /**
+     * Loads the ledger at path, if there is one.
+     */
+    public IngestionLedger(String path) throws IOException {
+        this.path = Paths.get(path);
+        if (Files.exists(this.path)) {
+            for (String line : Files.readAllLines(this.path, StandardCharsets.UTF_8)) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\t");
+                if (parts.length != 4) {
+                    throw new IOException(String.format("IngestionLedger: bad line \"%s\" in %s.", line, path));
+                }
+                try {
+                    add(new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3])));
+                }
+                catch (NumberFormatException e) {
+                    throw new IOException(String.format("IngestionLedger: bad line \"%s\" in %s.", line, path));
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return the ledger of the index with the given directory or basename.
+     */
+    public static String path(String index) {
+        return index + EXTENSION;
+    }
+
+
+    /**
+     * Returns the files that are not in the ledger, in order.
+     * @throws IOException if a file in the ledger has changed size since it was ingested.
+     */
+    public String[] newFiles(String[] files) throws IOException {
+        List<String> result = new ArrayList<>();
+        for (String file : files) {
+            Entry entry = byFile.get(key(file));
+            if (entry == null) {
+                result.add(file);
+            }
+            else if (entry.bytes != Files.size(Paths.get(file))) {
+                throw new IOException(String.format("IngestionLedger: %s has changed since it was ingested.", file));
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
+
+    /**
+     * Records that file has been ingested, with the given number of documents
+     * numbered after those already in the ledger.
+     */
+    public void append(String file, long documents) throws IOException {
+        Entry entry = new Entry(key(file), Files.size(Paths.get(file)), documents, documentCount);
+        StringBuilder line = new StringBuilder();
+        if (!Files.exists(path)) {
+            line.append("# chunk file\tbytes\tdocuments\tfirst document\n");
+        }
+        line.append(String.format("%s\t%d\t%d\t%d\n", entry.file, entry.bytes, entry.documents, entry.firstDocument));
+        Files.write(path, line.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        add(entry);
+    }
+
+
+    public List<Entry> entries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+
+    /**
+     * @return the number of documents ingested so far, which is the number of the next one.
+     */
+    public long documentCount() {
+        return documentCount;
+    }
+
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+
+    private void add(Entry entry) {
+        entries.add(entry);
+        byFile.put(entry.file, entry);
+        documentCount += entry.documents;
+    }
+
+
+    private static String key(String file) {
+        return Paths.get(file).toAbsolutePath().normalize().toString();
+    }
+}
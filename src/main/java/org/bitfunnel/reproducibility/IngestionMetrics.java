@@ -0,0 +1,277 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Collects ingestion counters from any number of threads and samples them on
+ * an interval into two CSV time series:
+ *
+ * <ul>
+ *   <li>{@code <file>}: documents, terms and bytes, as totals and rates over the
+ *       last interval, plus queue depth, garbage collection time and the
+ *       time parsers waited on read-ahead I/O.</li>
+ *   <li>{@code <file minus .csv>.threads.csv}: busy and idle seconds of each
+ *       thread over the last interval.</li>
+ * </ul>
+ *
+ * Bytes are bytes read by index builders and bytes written by chunk
+ * conversion. Threads report their state with busy() and idle(). Counters are LongAdders,
+ * so callers should add counts per document or per block rather than per term.
+ *
+ * <p>An instance built with the no-argument constructor counts but never writes,
+ * so callers need not check whether metrics are enabled.
+ */
+public class IngestionMetrics implements AutoCloseable {
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder terms = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private volatile LongSupplier queueDepth = () -> 0;
+    private volatile LongSupplier ioWaitNanos = () -> 0;
+
+    private final List<Worker> workers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Worker> worker = ThreadLocal.withInitial(this::register);
+
+    private final long startTime = System.nanoTime();
+    private final GarbageCollectionTimer gcTimer = new GarbageCollectionTimer();
+
+    // Null when not writing.
+    private final PrintWriter totalsWriter;
+    private final PrintWriter threadsWriter;
+    private final ScheduledExecutorService sampler;
+
+    // Values at the previous sample.
+    private long lastTime;
+    private long lastDocuments;
+    private long lastTerms;
+    private long lastBytes;
+
+
+    /**
+     * Constructs an instance that counts but does not write anything.
+     */
+    public IngestionMetrics() {
+        totalsWriter = null;
+        threadsWriter = null;
+        sampler = null;
+    }
+
+
+    /**
+     * Constructs an instance that samples every {@code intervalMs} milliseconds
+     * into {@code file} and its companion thread file.
+     */
+    public IngestionMetrics(String file, long intervalMs) throws IOException {
+        String threadsFile = (file.endsWith(".csv") ? file.substring(0, file.length() - 4) : file) + ".threads.csv";
+        totalsWriter = new PrintWriter(Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8));
+        threadsWriter = new PrintWriter(Files.newBufferedWriter(Paths.get(threadsFile), StandardCharsets.UTF_8));
+        totalsWriter.println("seconds,documents,terms,bytes,documentsPerSecond,termsPerSecond,bytesPerSecond,queueDepth,gcMs,ioWaitMs");
+        threadsWriter.println("seconds,thread,busySeconds,idleSeconds");
+        lastTime = startTime;
+
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "IngestionMetrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+
+    public void addDocuments(long count) {
+        documents.add(count);
+    }
+
+
+    public void addTerms(long count) {
+        terms.add(count);
+    }
+
+
+    public void addBytes(long count) {
+        bytes.add(count);
+    }
+
+
+    public long documents() {
+        return documents.sum();
+    }
+
+
+    /**
+     * Sets the source of the queue depth, e.g. the number of chunk files not yet started.
+     */
+    public void setQueueDepth(LongSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+
+    /**
+     * Sets the source of the total time parsers have waited on I/O, e.g. ReadAhead.ioWaitNanos().
+     */
+    public void setIoWait(LongSupplier ioWaitNanos) {
+        this.ioWaitNanos = ioWaitNanos;
+    }
+
+
+    /**
+     * Marks the calling thread as busy until its next call to idle().
+     */
+    public void busy() {
+        worker.get().busy();
+    }
+
+
+    /**
+     * Marks the calling thread as idle.
+     */
+    public void idle() {
+        worker.get().idle();
+    }
+
+
+    /**
+     * Returns a stream that adds the bytes read from {@code input} to the byte counter.
+     */
+    public InputStream meter(InputStream input) {
+        return new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    bytes.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    bytes.add(n);
+                }
+                return n;
+            }
+        };
+    }
+
+
+    /**
+     * Writes a final sample and stops sampling.
+     */
+    @Override
+    public void close() {
+        if (sampler != null && !sampler.isShutdown()) {
+            sampler.shutdown();
+            try {
+                sampler.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sample();
+            totalsWriter.close();
+            threadsWriter.close();
+        }
+    }
+
+
+    private Worker register() {
+        Worker w = new Worker(Thread.currentThread().getName());
+        workers.add(w);
+        return w;
+    }
+
+
+    private synchronized void sample() {
+        long now = System.nanoTime();
+        double seconds = (now - startTime) * 1e-9;
+        double interval = Math.max(1e-9, (now - lastTime) * 1e-9);
+
+        long documentCount = documents.sum();
+        long termCount = terms.sum();
+        long byteCount = bytes.sum();
+
+        totalsWriter.println(String.format("%.3f,%d,%d,%d,%.1f,%.1f,%.1f,%d,%d,%d",
+                seconds,
+                documentCount,
+                termCount,
+                byteCount,
+                (documentCount - lastDocuments) / interval,
+                (termCount - lastTerms) / interval,
+                (byteCount - lastBytes) / interval,
+                queueDepth.getAsLong(),
+                gcTimer.elapsedTimeMs(),
+                ioWaitNanos.getAsLong() / 1000000));
+        totalsWriter.flush();
+
+        for (Worker w : workers) {
+            double busy = w.sampleBusyNanos(now) * 1e-9;
+            threadsWriter.println(String.format("%.3f,%s,%.3f,%.3f",
+                    seconds,
+                    w.name,
+                    busy,
+                    Math.max(0.0, interval - busy)));
+        }
+        threadsWriter.flush();
+
+        lastTime = now;
+        lastDocuments = documentCount;
+        lastTerms = termCount;
+        lastBytes = byteCount;
+    }
+
+
+    // Busy time of one thread. Written by its thread, read by the sampler.
+    private static class Worker {
+        final String name;
+
+        // Busy time accumulated since the last sample, not counting the current busy period.
+        private long busyNanos = 0;
+        // Start of the current busy period, or -1 when idle.
+        private long busySince = -1;
+
+        Worker(String name) {
+            this.name = name;
+        }
+
+        synchronized void busy() {
+            if (busySince == -1) {
+                busySince = System.nanoTime();
+            }
+        }
+
+        synchronized void idle() {
+            if (busySince != -1) {
+                busyNanos += System.nanoTime() - busySince;
+                busySince = -1;
+            }
+        }
+
+        /**
+         * Returns the busy time since the previous sample and starts a new interval at {@code now}.
+         */
+        synchronized long sampleBusyNanos(long now) {
+            long result = busyNanos;
+            if (busySince != -1) {
+                result += now - busySince;
+                busySince = now;
+            }
+            busyNanos = 0;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+
+/**
+ * A histogram of latencies in nanoseconds, with the layout of HdrHistogram:
+ * values are counted in buckets whose width grows with the value, so every
+ * value up to the highest trackable one is kept to the given number of
+ * significant decimal digits in constant space. Recording is a few shifts and
+ * an increment, cheap enough to do for every query.
+ *
+ * <p>A histogram is not thread safe. Each thread records into its own, and
+ * histograms are merged with add() when the threads are done.
+ */
+public class LatencyHistogram {
+    // One hour.
+    public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 3600L * 1000 * 1000 * 1000;
+    public static final int DEFAULT_SIGNIFICANT_DIGITS = 3;
+
+    private final long highestTrackableValue;
+    private final int significantDigits;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+    private final long[] counts;
+
+    private long totalCount = 0;
+    private long totalValue = 0;
+    private long minValue = Long.MAX_VALUE;
+    private long maxValue = 0;
+    // Values above highestTrackableValue, which are counted as that value.
+    private long clampedCount = 0;
+
+
+    public LatencyHistogram() {
+        this(DEFAULT_HIGHEST_TRACKABLE_VALUE, DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+
+    /**
+     * @param significantDigits between 1 and 5.
+     */
+    public LatencyHistogram(long highestTrackableValue, int significantDigits) {
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("LatencyHistogram: significantDigits must be between 1 and 5.");
+        }
+        if (highestTrackableValue < 2) {
+            throw new IllegalArgumentException("LatencyHistogram: highestTrackableValue must be at least 2.");
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.significantDigits = significantDigits;
+
+        // The smallest power of two sub-buckets that tell apart values one
+        // unit in the last significant digit.
+        long largestValueWithSingleUnitResolution = 2 * (long)Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+        this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        int subBucketCount = 1 << subBucketCountMagnitude;
+        this.subBucketHalfCount = subBucketCount / 2;
+        this.subBucketMask = subBucketCount - 1;
+        this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+        long smallestUntrackableValue = subBucketCount;
+        int bucketCount = 1;
+        while (smallestUntrackableValue <= highestTrackableValue) {
+            if (smallestUntrackableValue > Long.MAX_VALUE / 2) {
+                ++bucketCount;
+                break;
+            }
+            smallestUntrackableValue <<= 1;
+            ++bucketCount;
+        }
+        this.counts = new long[(bucketCount + 1) * subBucketHalfCount];
+    }
+
+
+    /**
+     * Records a latency. Negative values are counted as zero and values above
+     * the highest trackable value as that value.
+     */
+    public void recordValue(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        if (value > highestTrackableValue) {
+            value = highestTrackableValue;
+            ++clampedCount;
+        }
+        ++counts[countsIndex(value)];
+        ++totalCount;
+        totalValue += value;
+        minValue = Math.min(minValue, value);
+        maxValue = Math.max(maxValue, value);
+    }
+
+
+    /**
+     * Adds the counts of other, which must have the same layout.
+     */
+    public void add(LatencyHistogram other) {
+        if (other.counts.length != counts.length || other.subBucketHalfCount != subBucketHalfCount) {
+            throw new IllegalArgumentException("LatencyHistogram: cannot add histograms with different layouts.");
+        }
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        totalValue += other.totalValue;
+        minValue = Math.min(minValue, other.minValue);
+        maxValue = Math.max(maxValue, other.maxValue);
+        clampedCount += other.clampedCount;
+    }
+
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalValue = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+        clampedCount = 0;
+    }
+
+
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram(highestTrackableValue, significantDigits);
+        copy.add(this);
+        return copy;
+    }
+
+
+    public long totalCount() {
+        return totalCount;
+    }
+
+
+    /**
+     * @return the number of values that were above the highest trackable value.
+     */
+    public long clampedCount() {
+        return clampedCount;
+    }
+
+
+    public long minValue() {
+        return totalCount > 0 ? minValue : 0;
+    }
+
+
+    public long maxValue() {
+        return maxValue;
+    }
+
+
+    /**
+     * @return the exact mean of the recorded values.
+     */
+    public double mean() {
+        return totalCount > 0 ? (double)totalValue / totalCount : 0.0;
+    }
+
+
+    public double standardDeviation() {
+        if (totalCount == 0) {
+            return 0.0;
+        }
+        double mean = mean();
+        double sum = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            if (counts[i] != 0) {
+                double deviation = medianEquivalentValue(valueFromIndex(i)) - mean;
+                sum += deviation * deviation * counts[i];
+            }
+        }
+        return Math.sqrt(sum / totalCount);
+    }
+
+
+    /**
+     * @return the largest value that percent percent of the recorded values
+     * are at or below, to the histogram's precision, and never above the
+     * largest recorded value.
+     */
+    public long valueAtPercentile(double percent) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long countAtPercentile = Math.max(1, (long)(Math.min(percent, 100.0) / 100.0 * totalCount + 0.5));
+        long total = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            total += counts[i];
+            if (total >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(valueFromIndex(i)), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+
+    /**
+     * Writes the percentile distribution in the .hgrm text format of
+     * HdrHistogram, which its plotting tools read. Values are divided by
+     * scale, for example 1e6 for milliseconds.
+     *
+     * @param ticksPerHalfDistance the number of lines between each halving of the distance to 100%.
+     */
+    public void outputPercentileDistribution(PrintStream out, int ticksPerHalfDistance, double scale) {
+        out.println(String.format("%12s %14s %10s %14s", "Value", "Percentile", "TotalCount", "1/(1-Percentile)"));
+        out.println();
+
+        if (totalCount > 0) {
+            double percentile = 0.0;
+            int index = 0;
+            long countToIndex = 0;
+            long countPrinted = 0;
+            while (true) {
+                long countAtPercentile = Math.max(1, (long)Math.ceil(percentile / 100.0 * totalCount));
+                while (countToIndex < countAtPercentile) {
+                    countToIndex += counts[index++];
+                }
+                long value = Math.min(highestEquivalentValue(valueFromIndex(index - 1)), maxValue);
+                double fraction = (double)countToIndex / totalCount;
+                if (countToIndex == totalCount) {
+                    out.println(String.format("%12.3f %2.12f %10d", value / scale, 1.0, countToIndex));
+                    break;
+                }
+                if (countToIndex > countPrinted) {
+                    // Levels that fall on the same recorded value are printed once.
+                    out.println(String.format("%12.3f %2.12f %10d %14.2f", value / scale, fraction, countToIndex, 1 / (1 - fraction)));
+                    countPrinted = countToIndex;
+                }
+
+                // Halve the distance to 100% every ticksPerHalfDistance lines, as
+                // HdrHistogram's percentile iterator does.
+                long halfDistance = (long)Math.pow(2, (long)(Math.log(100.0 / (100.0 - percentile)) / Math.log(2)) + 1);
+                percentile += 100.0 / (ticksPerHalfDistance * halfDistance);
+            }
+        }
+
+        out.println(String.format("#[Mean    = %12.3f, StdDeviation   = %12.3f]", mean() / scale, standardDeviation() / scale));
+        out.println(String.format("#[Max     = %12.3f, Total count    = %12d]", maxValue / scale, totalCount));
+        out.println(String.format("#[Buckets = %12d, SubBuckets     = %12d]", counts.length / subBucketHalfCount - 1, 2 * subBucketHalfCount));
+    }
+
+
+    private int countsIndex(long value) {
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int)(value >>> bucketIndex);
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+    }
+
+
+    private long valueFromIndex(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return (long)subBucketIndex << bucketIndex;
+    }
+
+
+    private long equivalentRange(long value) {
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int)(value >>> bucketIndex);
+        if (subBucketIndex >= 2 * subBucketHalfCount) {
+            ++bucketIndex;
+        }
+        return 1L << bucketIndex;
+    }
+
+
+    private long highestEquivalentValue(long value) {
+        return value + equivalentRange(value) - 1;
+    }
+
+
+    private double medianEquivalentValue(long value) {
+        return value + equivalentRange(value) / 2.0;
+    }
+}
@@ -1,12 +1,28 @@
 package org.bitfunnel.reproducibility;
 
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MMapDirectory;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class LuceneIndex implements Closeable {
+    // Written next to the shards, so readers open exactly the shards of the
+    // last build and never leftovers of an earlier one.
+    static final String SHARD_COUNT_FILE = "shard-count";
 
-public class LuceneIndex {
     // Lucene setup.
     // We use MMapDirectory instead of RAMDirectory because Lucene documentation recommends MMapDirectory for better
     // performance with "large" (> 100MB) indicies.
@@ -17,7 +33,126 @@ public class LuceneIndex {
     // large and noticeable.
     Directory dir;
 
+    // Per-thread shards written by org.bitfunnel.runner.IndexBuilder --shards, if they were not merged.
+    List<Directory> shards = new ArrayList<>();
+
+    // Shared by the query threads, opened by the first of them.
+    private IndexReader reader = null;
+
     public LuceneIndex(String basename) throws IOException {
-        dir = new MMapDirectory(Paths.get(basename));
+        Path path = Paths.get(basename);
+        dir = new MMapDirectory(path);
+        int shardCount = readShardCount(path);
+        for (int i = 0; i < shardCount; ++i) {
+            if (!Files.isDirectory(shardPath(path, i))) {
+                throw new IOException(String.format("LuceneIndex: shard %d of %d is missing from %s.", i, shardCount, path));
+            }
+            shards.add(new MMapDirectory(shardPath(path, i)));
+        }
+    }
+
+
+    /**
+     * Opens the index, or a MultiReader over its shards if it was last built
+     * as unmerged shards. The shard count is only written by such a build,
+     * so it wins over any index left in the directory by an earlier one.
+     */
+    public IndexReader openReader() throws IOException {
+        if (shards.isEmpty()) {
+            return DirectoryReader.open(dir);
+        }
+
+        IndexReader[] readers = new IndexReader[shards.size()];
+        for (int i = 0; i < readers.length; ++i) {
+            readers[i] = DirectoryReader.open(shards.get(i));
+        }
+        return new MultiReader(readers);
+    }
+
+
+    /**
+     * @return a reader shared by every caller, opened on the first call and
+     * closed by close(). IndexReaders are thread safe, so query threads share
+     * one loaded index instead of each opening their own.
+     */
+    public synchronized IndexReader reader() throws IOException {
+        if (reader == null) {
+            reader = openReader();
+        }
+        return reader;
+    }
+
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (reader != null) {
+            // Also closes the shard readers of a MultiReader.
+            reader.close();
+            reader = null;
+        }
+        for (Directory shard : shards) {
+            shard.close();
+        }
+        dir.close();
+    }
+
+
+    /**
+     * The directory of shard {@code shard} of the index at {@code path}.
+     */
+    public static Path shardPath(Path path, int shard) {
+        return path.resolve(String.format("shard-%03d", shard));
+    }
+
+
+    /**
+     * Records that the index at {@code path} is {@code shardCount} unmerged shards.
+     */
+    public static void writeShardCount(Path path, int shardCount) throws IOException {
+        Files.write(path.resolve(SHARD_COUNT_FILE),
+                    Collections.singletonList(Integer.toString(shardCount)),
+                    StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * @return the number of unmerged shards of the index at {@code path}, or
+     * zero if it has none.
+     */
+    public static int readShardCount(Path path) throws IOException {
+        Path file = path.resolve(SHARD_COUNT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+        }
+        catch (NumberFormatException e) {
+            throw new IOException(String.format("LuceneIndex: bad shard count in %s.", file));
+        }
+    }
+
+
+    /**
+     * Deletes the shard directories and shard count of the index at {@code path},
+     * so that a new build does not append to them or leave any behind.
+     */
+    public static void deleteShards(Path path) throws IOException {
+        Files.deleteIfExists(path.resolve(SHARD_COUNT_FILE));
+        if (!Files.isDirectory(path)) {
+            return;
+        }
+        List<Path> shardDirectories = new ArrayList<>();
+        try (Stream<Path> files = Files.list(path)) {
+            files.filter(file -> Files.isDirectory(file) && file.getFileName().toString().startsWith("shard-"))
+                 .forEach(shardDirectories::add);
+        }
+        for (Path shard : shardDirectories) {
+            try (Stream<Path> files = Files.walk(shard)) {
+                for (Path file : (Iterable<Path>)files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
     }
 }
@@ -1,6 +1,6 @@
 package org.bitfunnel.reproducibility;
 
-import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
 
@@ -11,7 +11,7 @@ public class LuceneQueryProcessor extends QueryProcessorBase
 {
     LuceneIndex index;
     LuceneCollector collector = new LuceneCollector();
-    DirectoryReader reader;
+    IndexReader reader;
     IndexSearcher searcher;
 
 
@@ -20,7 +20,7 @@ public class LuceneQueryProcessor extends QueryProcessorBase
 
         this.index = index;
 
-        reader = DirectoryReader.open(index.dir);
+        reader = index.reader();
 
         System.out.println(String.format("Document count: %d", reader.numDocs()));
 
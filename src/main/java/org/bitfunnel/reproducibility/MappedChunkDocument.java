@@ -0,0 +1,194 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.Document;
+import it.unimi.dsi.io.WordReader;
+import it.unimi.dsi.lang.MutableString;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * A ChunkDocument counterpart whose streams are views into a memory-mapped
+ * chunk file. Parsing records the (offset, length) of each stream segment in
+ * the mapped region. No stream bytes are copied.
+ */
+public class MappedChunkDocument implements Document {
+    private final ByteBuffer buffer;
+
+    // Segments are only recorded for streams of indexed fields. Field i is the stream schema.streamId(i).
+    private final FieldSchema schema;
+
+    private MutableString id = new MutableString();
+    private MutableString title = new MutableString();
+    private MutableString uri = new MutableString();
+
+    // Segment i is the triple (streamId, offset, length) stored at
+    // segments[3 * i], segments[3 * i + 1] and segments[3 * i + 2].
+    // A stream may be split across several segments.
+    private int[] segments = new int[3 * 4];
+    private int segmentCount = 0;
+
+    // Reused for every stream of the document.
+    private ChunkWordReader wordReader = new ChunkWordReader();
+
+
+    MappedChunkDocument(ByteBuffer buffer, FieldSchema schema) {
+        this.buffer = buffer;
+        this.schema = schema;
+    }
+
+
+    /**
+     * Parses the document starting at buffer[start]. Uses the same grammar as
+     * ChunkDocument.
+     *
+     * @return the buffer index just past the document's terminating '\0', or
+     *         -1 if the document extends past the end of the buffer.
+     * @throws IOException if the document is malformed.
+     */
+    int parse(int start) throws IOException {
+        final int limit = buffer.limit();
+        int cursor = start;
+
+        // Document id: 16 hex digits followed by '\0'.
+        if (cursor + 17 > limit) {
+            return -1;
+        }
+        for (int i = 0; i < 16; ++i) {
+            int c = buffer.get(cursor++);
+            if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f')) {
+                id.append((char)c);
+            }
+            else {
+                throw new IOException("MappedChunkDocument.parse(): expected hex digit.");
+            }
+        }
+        if (buffer.get(cursor++) != 0) {
+            throw new IOException("MappedChunkDocument.parse(): expected zero after document id.");
+        }
+
+        // For now just use the hex document id as the basis for the title and the uri.
+        title.append(id);
+        uri.append("localhost://");
+        uri.append(id);
+
+        while (true) {
+            if (cursor >= limit) {
+                return -1;
+            }
+            if (buffer.get(cursor) == 0) {
+                // We've hit the end of the document.
+                return cursor + 1;
+            }
+
+            // Stream id: 2 hex digits followed by '\0'.
+            if (cursor + 3 > limit) {
+                return -1;
+            }
+            int streamId = (hexValue(buffer.get(cursor)) << 4) | hexValue(buffer.get(cursor + 1));
+            if (buffer.get(cursor + 2) != 0) {
+                throw new IOException("MappedChunkDocument.parse(): expected zero after stream id.");
+            }
+            cursor += 3;
+
+            // Scan past "(Term End)*" to the End that terminates the stream.
+            int offset = cursor;
+            while (true) {
+                if (cursor >= limit) {
+                    return -1;
+                }
+                if (buffer.get(cursor) == 0) {
+                    break;
+                }
+                // Skip to the end of the term.
+                do {
+                    if (++cursor >= limit) {
+                        return -1;
+                    }
+                } while (buffer.get(cursor) != 0);
+                ++cursor;
+            }
+
+            if (schema.isIndexed(streamId)) {
+                addSegment(streamId, offset, cursor - offset);
+            }
+
+            // Move past the End that terminates the stream.
+            ++cursor;
+        }
+    }
+
+
+    private void addSegment(int streamId, int offset, int length) {
+        if (3 * segmentCount + 3 > segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        segments[3 * segmentCount] = streamId;
+        segments[3 * segmentCount + 1] = offset;
+        segments[3 * segmentCount + 2] = length;
+        ++segmentCount;
+    }
+
+
+    private static int hexValue(int c) throws IOException {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        else {
+            throw new IOException("MappedChunkDocument.hexValue(): expected hex digit.");
+        }
+    }
+
+
+    @Override
+    public CharSequence title() {
+        return title;
+    }
+
+
+    @Override
+    public CharSequence uri() {
+        return uri;
+    }
+
+
+    @Override
+    public Object content(int i) throws IOException {
+        if (i < 0 || i >= schema.fieldCount()) {
+            throw new IOException(String.format("MappedChunkDocument.content: no field %d.", i));
+        }
+        int streamId = schema.streamId(i);
+        ChunkStreamReader reader = null;
+        for (int s = 0; s < segmentCount; ++s) {
+            if (segments[3 * s] == streamId) {
+                if (reader == null) {
+                    reader = new ChunkStreamReader(buffer);
+                }
+                reader.addSegment(segments[3 * s + 1], segments[3 * s + 2]);
+            }
+        }
+
+        if (reader == null) {
+            throw new IOException(String.format("MappedChunkDocument.content: %d stream does not exist.", i));
+        }
+
+        return reader;
+    }
+
+
+    @Override
+    public WordReader wordReader(int i) {
+        return wordReader;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        // Intentional nop. The mapped region is owned by the iterator.
+    }
+}
@@ -0,0 +1,113 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.Document;
+import it.unimi.di.big.mg4j.document.DocumentIterator;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Iterates over the documents in a memory-mapped BitFunnel chunk file.
+ *
+ * Since a single MappedByteBuffer cannot exceed 2GB, the file is mapped through
+ * a sliding window. When a document straddles the end of the window, the window
+ * is remapped to start at the beginning of that document.
+ */
+public class MappedChunkDocumentIterator implements DocumentIterator {
+    // Size of each mapped window. Documents larger than this cannot be parsed.
+    static final long WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final FieldSchema schema;
+
+    // File offset corresponding to window[0].
+    private long windowStart = 0;
+    private MappedByteBuffer window;
+
+    // Index into window of the next document.
+    private int cursor = 0;
+
+    // When not -1, the offset just past the last document to return.
+    private final long end;
+
+
+    public MappedChunkDocumentIterator(FileChannel channel) throws IOException {
+        this(channel, FieldSchema.DEFAULT);
+    }
+
+
+    public MappedChunkDocumentIterator(FileChannel channel, FieldSchema schema) throws IOException {
+        this(channel, schema, 0, -1);
+    }
+
+
+    /**
+     * Iterates over the documents in [start, end) only. start and end must be
+     * document offsets, such as those of a ChunkIndex.
+     */
+    public MappedChunkDocumentIterator(FileChannel channel, FieldSchema schema, long start, long end) throws IOException {
+        this.channel = channel;
+        this.schema = schema;
+        this.end = end;
+        fileSize = channel.size();
+        map(start);
+    }
+
+
+    @Override
+    public Document nextDocument() throws IOException {
+        while (true) {
+            if (end != -1 && windowStart + cursor >= end) {
+                return null;
+            }
+            if (cursor >= window.limit()) {
+                if (windowStart + cursor >= fileSize) {
+                    throw new IOException("MappedChunkDocumentIterator.nextDocument(): unexpected EOF.");
+                }
+                map(windowStart + cursor);
+            }
+
+            if (window.get(cursor) == 0) {
+                // No more documents left.
+                if (windowStart + cursor + 1 != fileSize) {
+                    throw new IOException("MappedChunkDocumentIterator.nextDocument(): expected EOF, but found trailing content.");
+                }
+                return null;
+            }
+
+            MappedChunkDocument document = new MappedChunkDocument(window, schema);
+            int next = document.parse(cursor);
+            if (next != -1) {
+                cursor = next;
+                return document;
+            }
+
+            // The document runs past the end of the window.
+            if (windowStart + window.limit() >= fileSize) {
+                throw new IOException("MappedChunkDocumentIterator.nextDocument(): unexpected EOF.");
+            }
+            if (cursor == 0) {
+                throw new IOException("MappedChunkDocumentIterator.nextDocument(): document exceeds window size.");
+            }
+            map(windowStart + cursor);
+        }
+    }
+
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY,
+                             start,
+                             Math.min(WINDOW_SIZE, fileSize - start));
+        cursor = 0;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        // Intentional nop. The channel is owned by the MappedChunkDocumentSequence.
+    }
+}
@@ -0,0 +1,53 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.DocumentFactory;
+import it.unimi.di.big.mg4j.document.DocumentIterator;
+import it.unimi.di.big.mg4j.document.DocumentSequence;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class MappedChunkDocumentSequence implements DocumentSequence {
+    FileChannel channel;
+    FieldSchema schema = FieldSchema.DEFAULT;
+
+    /**
+     * Constructs a MappedChunkDocumentSequence corresponding to a BitFunnel chunk file.
+     * Unlike ChunkDocumentSequence, the file is memory-mapped and documents are
+     * handed out as views into the mapped region.
+     * See <a href="http://bitfunnel.org/corpus-file-format/">Corpus File Format.</a>
+     * @param file
+     * @throws IOException
+     */
+    public MappedChunkDocumentSequence(String file) throws IOException {
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+    }
+
+    public MappedChunkDocumentSequence(String file, FieldSchema schema) throws IOException {
+        this(file);
+        this.schema = schema;
+    }
+
+    @Override
+    public DocumentIterator iterator() throws IOException {
+        return new MappedChunkDocumentIterator(channel, schema);
+    }
+
+    @Override
+    public DocumentFactory factory() {
+        return new ChunkDocumentFactory(schema);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public void filename(CharSequence charSequence) throws IOException {
+        // Intentional nop. See javadoc for filename() method of it.unimi.di.big.mg4j.document.DocumentSequence
+        // for more information.
+    }
+}
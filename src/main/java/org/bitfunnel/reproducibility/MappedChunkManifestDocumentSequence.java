@@ -0,0 +1,25 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.IOException;
+
+/**
+ * Drop-in replacement for ChunkManifestDocumentSequence that memory-maps each chunk
+ * file listed in the manifest. Can be passed to mg4j's IndexBuilder as an object sequence:
+ * <pre>
+ *   -o 'org.bitfunnel.reproducibility.MappedChunkManifestDocumentSequence(manifest.txt)'
+ * </pre>
+ */
+public class MappedChunkManifestDocumentSequence extends ChunkManifestDocumentSequence {
+    public MappedChunkManifestDocumentSequence(String manifest) throws IOException {
+        super(manifest, true, null);
+    }
+
+    public MappedChunkManifestDocumentSequence(String manifest, String metricsFile) throws IOException {
+        super(manifest, true, metricsFile);
+    }
+
+    public MappedChunkManifestDocumentSequence(String manifest, String metricsFile, String schema) throws IOException {
+        super(manifest, true, metricsFile);
+        setSchema(FieldSchema.parse(schema));
+    }
+}
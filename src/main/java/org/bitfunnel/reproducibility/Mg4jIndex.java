@@ -11,23 +11,34 @@ import java.net.URISyntaxException;
 
 
 public class Mg4jIndex {
-    final Index text;
-    final Index title;
+    // The first field of the schema, searched by queries that don't name a field.
+    final String defaultField;
+    final Index defaultIndex;
     final Object2ReferenceOpenHashMap<String,Index> indexMap;
     final Object2ReferenceOpenHashMap<String, TermProcessor> termProcessors;
 
 
     public Mg4jIndex(String basename) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException, IOException, InstantiationException, URISyntaxException, ConfigurationException, ClassNotFoundException {
+        this(basename, FieldSchema.DEFAULT);
+    }
+
+
+    /**
+     * Loads the index of each indexed field of schema, basename-&lt;field&gt;.
+     */
+    public Mg4jIndex(String basename, FieldSchema schema) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException, IOException, InstantiationException, URISyntaxException, ConfigurationException, ClassNotFoundException {
         // Load and configure the index.
-        text = Index.getInstance( basename + "-text", true, true );
-        title = Index.getInstance( basename + "-title", true, true );
-//        text = Index.getInstance( basename + "-text?inmemory=1", true, true );
-//        title = Index.getInstance( basename + "-title?inmemory=1", true, true );
-
-        indexMap = new Object2ReferenceOpenHashMap<String,Index>(
-                new String[] { "text", "title" }, new Index[] { text, title } );
-        termProcessors = new Object2ReferenceOpenHashMap<String,TermProcessor>(
-                new String[] { "text", "title" },
-                new TermProcessor[] { text.termProcessor, title.termProcessor } );;
+        indexMap = new Object2ReferenceOpenHashMap<String,Index>();
+        termProcessors = new Object2ReferenceOpenHashMap<String,TermProcessor>();
+        for (int i = 0; i < schema.fieldCount(); ++i) {
+            String field = schema.fieldName(i);
+            Index index = Index.getInstance( basename + "-" + field, true, true );
+//            Index index = Index.getInstance( basename + "-" + field + "?inmemory=1", true, true );
+            indexMap.put(field, index);
+            termProcessors.put(field, index.termProcessor);
+        }
+
+        defaultField = schema.fieldName(0);
+        defaultIndex = indexMap.get(defaultField);
     }
 }
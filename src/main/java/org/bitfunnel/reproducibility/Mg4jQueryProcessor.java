@@ -24,10 +24,10 @@ class Mg4jQueryProcessor extends QueryProcessorBase
         super(runner);
 
         engine = new ExperimentalQueryEngine(
-            new SimpleParser( index.indexMap.keySet(), "text", index.termProcessors ),
+            new SimpleParser( index.indexMap.keySet(), index.defaultField, index.termProcessors ),
             new DocumentIteratorBuilderVisitor(
                     index.indexMap,
-                    index.text, 1000 ),
+                    index.defaultIndex, 1000 ),
             index.indexMap);
 
         results =
@@ -0,0 +1,376 @@
+package org.bitfunnel.reproducibility;
+
+import com.martiansoftware.jsap.*;
+import it.unimi.di.big.mg4j.document.DocumentFactory;
+import it.unimi.di.big.mg4j.document.DocumentSequence;
+import it.unimi.di.big.mg4j.index.CompressionFlags;
+import it.unimi.di.big.mg4j.index.DiskBasedIndex;
+import it.unimi.di.big.mg4j.index.DowncaseTermProcessor;
+import it.unimi.di.big.mg4j.index.Index;
+import it.unimi.di.big.mg4j.index.NullTermProcessor;
+import it.unimi.di.big.mg4j.index.TermProcessor;
+import it.unimi.di.big.mg4j.io.IOFactories;
+import it.unimi.di.big.mg4j.io.IOFactory;
+import it.unimi.di.big.mg4j.tool.Combine;
+import it.unimi.di.big.mg4j.tool.Concatenate;
+import it.unimi.di.big.mg4j.tool.IndexBuilder;
+import it.unimi.dsi.big.util.ImmutableExternalPrefixMap;
+import it.unimi.dsi.big.util.StringMaps;
+import it.unimi.dsi.util.Properties;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Builds an mg4j index from a manifest of BitFunnel chunk files using multiple threads.
+ *
+ * <p>Each chunk file is indexed on its own by mg4j's IndexBuilder, which produces a
+ * part index (with its own batches) named {@code <basename>@<chunk number>}. The parts
+ * are then concatenated, field by field, in manifest order. Because concatenation
+ * renumbers documents by appending each part after the previous ones, document ids
+ * match those of a single-threaded build over ChunkManifestDocumentSequence,
+ * regardless of the order in which threads finish their chunks.
+ *
+ * <p>An incremental build only indexes the chunk files missing from the ledger,
+ * {@code <basename>.ledger} (see IngestionLedger), and concatenates their parts
+ * after the existing index, so existing documents keep their ids and new ones
+ * are numbered after them.
+ */
+public class ParallelIndexBuilder {
+    // Settings matching the defaults of it.unimi.di.big.mg4j.tool.IndexBuilder.
+    static final int COMBINE_BUFFER_SIZE = 1024 * 1024;
+    static final int SKIP_BUFFER_SIZE = 32 * 1024 * 1024;
+    static final int QUANTUM = -1;
+    static final int HEIGHT = 16;
+    static final long LOG_INTERVAL = 10000;
+
+    private String[] chunkFiles;
+    private final String basename;
+    private final TermProcessor termProcessor;
+    private final boolean mapped;
+    private IngestionMetrics metrics = new IngestionMetrics();
+    private FieldSchema schema = FieldSchema.DEFAULT;
+    private boolean incremental = false;
+
+
+    public ParallelIndexBuilder(String manifest, String basename, boolean downcase, boolean mapped) throws IOException {
+        this.chunkFiles = Files.readAllLines(Paths.get(manifest), Charset.defaultCharset()).toArray(new String[]{});
+        this.basename = basename;
+        this.termProcessor = downcase ? DowncaseTermProcessor.getInstance() : NullTermProcessor.getInstance();
+        this.mapped = mapped;
+    }
+
+
+    /**
+     * Sets the fields read from the chunk files. Each indexed field gets its own index, basename-&lt;field&gt;.
+     */
+    public void setSchema(FieldSchema schema) {
+        this.schema = schema;
+    }
+
+
+    /**
+     * When incremental, only the chunk files missing from the ledger are indexed
+     * and appended to the existing index.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+
+    /**
+     * Sets the metrics that record indexing progress. Documents and bytes are
+     * counted as each part finishes.
+     */
+    public void setMetrics(IngestionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    public void run(int threadCount, boolean keepParts) throws Exception {
+        DocumentFactory factory = new ChunkDocumentFactory(schema);
+        IngestionLedger ledger = null;
+        if (incremental) {
+            ledger = new IngestionLedger(IngestionLedger.path(basename));
+            String[] newFiles = ledger.newFiles(chunkFiles);
+            System.out.println(String.format("%d of %d chunk files are new. The index holds %d documents from %d chunk files.",
+                    newFiles.length,
+                    chunkFiles.length,
+                    ledger.documentCount(),
+                    ledger.entries().size()));
+            chunkFiles = newFiles;
+            if (chunkFiles.length == 0) {
+                return;
+            }
+            boolean indexExists = new File(basename + "-" + factory.fieldName(0) + DiskBasedIndex.PROPERTIES_EXTENSION).exists();
+            if (!ledger.isEmpty() && !indexExists) {
+                throw new IOException(String.format("ParallelIndexBuilder: %s lists chunk files, but there is no index %s.",
+                        IngestionLedger.path(basename),
+                        basename));
+            }
+            if (ledger.isEmpty() && indexExists) {
+                // Without a ledger, every chunk file would be indexed again.
+                throw new IOException(String.format("ParallelIndexBuilder: there is an index %s, but no ledger %s. Rebuild it without --incremental.",
+                        basename,
+                        IngestionLedger.path(basename)));
+            }
+        }
+
+        System.out.println(String.format("Indexing %d chunk files with %d threads.", chunkFiles.length, threadCount));
+        long startTime = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            // Build one part index per chunk file.
+            List<Future<Long>> parts = new ArrayList<>(chunkFiles.length);
+            AtomicInteger partsStarted = new AtomicInteger();
+            metrics.setQueueDepth(() -> chunkFiles.length - partsStarted.get());
+            for (int i = 0; i < chunkFiles.length; ++i) {
+                final int chunk = i;
+                parts.add(executor.submit(() -> {
+                    partsStarted.incrementAndGet();
+                    metrics.busy();
+                    try {
+                        long count = buildPart(chunk);
+                        metrics.addDocuments(count);
+                        metrics.addBytes(new File(chunkFiles[chunk]).length());
+                        return count;
+                    }
+                    finally {
+                        metrics.idle();
+                    }
+                }));
+            }
+
+            // Collect the parts in manifest order. Parts without documents
+            // are left out of the concatenation.
+            List<String> partBasenames = new ArrayList<>(chunkFiles.length);
+            long[] partDocuments = new long[chunkFiles.length];
+            long documentCount = 0;
+            for (int i = 0; i < chunkFiles.length; ++i) {
+                long count = parts.get(i).get();
+                partDocuments[i] = count;
+                if (count > 0) {
+                    partBasenames.add(partBasename(i));
+                    documentCount += count;
+                }
+            }
+
+            long scanTime = System.nanoTime();
+            System.out.println(String.format("Built %d part indexes (%d documents) in %f seconds.",
+                    partBasenames.size(),
+                    documentCount,
+                    (scanTime - startTime) * 1e-9));
+
+            // Concatenate each field's parts. Fields are independent, so they are
+            // combined concurrently. An existing index goes first, into a new
+            // index that then replaces it.
+            boolean append = ledger != null && !ledger.isEmpty();
+            if (append) {
+                partBasenames.add(0, basename);
+            }
+            String outputBasename = append ? basename + "@next" : basename;
+            if (!append || documentCount > 0) {
+                List<Future<Void>> fields = new ArrayList<>(factory.numberOfFields());
+                for (int f = 0; f < factory.numberOfFields(); ++f) {
+                    final String field = factory.fieldName(f);
+                    fields.add(executor.submit(() -> {
+                        concatenate(field, partBasenames, outputBasename);
+                        return null;
+                    }));
+                }
+                for (Future<Void> field : fields) {
+                    field.get();
+                }
+                if (append) {
+                    replace(outputBasename, basename);
+                }
+
+                System.out.println(String.format("Concatenated parts in %f seconds.",
+                        (System.nanoTime() - scanTime) * 1e-9));
+            }
+
+            // Only record the chunk files once the index holding them is in place.
+            if (ledger != null) {
+                for (int i = 0; i < chunkFiles.length; ++i) {
+                    ledger.append(chunkFiles[i], partDocuments[i]);
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        if (!keepParts) {
+            for (int i = 0; i < chunkFiles.length; ++i) {
+                deletePart(partBasename(i));
+            }
+        }
+
+        System.out.println(String.format("Total time: %f seconds.", (System.nanoTime() - startTime) * 1e-9));
+    }
+
+
+    /**
+     * Builds the part index for one chunk file.
+     * @return the number of documents in the chunk.
+     */
+    private long buildPart(int chunk) throws Exception {
+        System.out.println(String.format("  %s", chunkFiles[chunk]));
+
+        String partBasename = partBasename(chunk);
+        DocumentSequence sequence = openChunk(chunkFiles[chunk], schema, mapped);
+        try {
+            new IndexBuilder(partBasename, sequence)
+                    .termProcessor(termProcessor)
+                    .logInterval(LOG_INTERVAL)
+                    .run();
+        }
+        finally {
+            sequence.close();
+        }
+
+        // All fields of a part hold the same number of documents.
+        DocumentFactory factory = new ChunkDocumentFactory(schema);
+        Properties properties = IOFactories.loadProperties(
+                IOFactory.FILESYSTEM_FACTORY,
+                partBasename + "-" + factory.fieldName(0) + DiskBasedIndex.PROPERTIES_EXTENSION);
+        return properties.getLong(Index.PropertyKeys.DOCUMENTS);
+    }
+
+
+    /**
+     * Opens a chunk file in whichever format it is in. Uncompressed text chunks
+     * are memory-mapped if mapped is true.
+     */
+    static DocumentSequence openChunk(String file, FieldSchema schema, boolean mapped) throws IOException {
+        if (BinaryChunkReader.isBinaryChunk(file)) {
+            return new BinaryChunkDocumentSequence(file, schema);
+        }
+        else if (mapped && !ChunkCompression.isCompressed(file)) {
+            return new MappedChunkDocumentSequence(file, schema);
+        }
+        else {
+            return new ChunkDocumentSequence(file, schema);
+        }
+    }
+
+
+    private void concatenate(String field, List<String> partBasenames, String outputBasename) throws Exception {
+        String fieldBasename = outputBasename + "-" + field;
+        String[] inputs = new String[partBasenames.size()];
+        for (int i = 0; i < inputs.length; ++i) {
+            inputs[i] = partBasenames.get(i) + "-" + field;
+        }
+
+        new Concatenate(IOFactory.FILESYSTEM_FACTORY,
+                        fieldBasename,
+                        inputs,
+                        false,
+                        COMBINE_BUFFER_SIZE,
+                        CompressionFlags.DEFAULT_QUASI_SUCCINCT_INDEX,
+                        Combine.IndexType.QUASI_SUCCINCT,
+                        true,
+                        QUANTUM,
+                        HEIGHT,
+                        SKIP_BUFFER_SIZE,
+                        LOG_INTERVAL).run();
+
+        // Concatenate does not build a term map, so build one the same way
+        // mg4j's IndexBuilder does.
+        IOFactories.storeObject(
+                IOFactory.FILESYSTEM_FACTORY,
+                StringMaps.synchronize(new ImmutableExternalPrefixMap(
+                        IOFactories.fileLinesCollection(IOFactory.FILESYSTEM_FACTORY,
+                                                        fieldBasename + DiskBasedIndex.TERMS_EXTENSION,
+                                                        "UTF-8"))),
+                fieldBasename + DiskBasedIndex.TERMMAP_EXTENSION);
+    }
+
+
+    /**
+     * Renames the files of the index with basename from over those of the index
+     * with basename to.
+     */
+    private static void replace(String from, String to) throws IOException {
+        File base = new File(from);
+        File directory = base.getAbsoluteFile().getParentFile();
+        String prefix = base.getName() + "-";
+        String target = new File(to).getName() + "-";
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix));
+        if (files != null) {
+            for (File file : files) {
+                Files.move(file.toPath(),
+                           file.toPath().resolveSibling(target + file.getName().substring(prefix.length())),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+
+    private String partBasename(int chunk) {
+        return String.format("%s@%05d", basename, chunk);
+    }
+
+
+    /**
+     * Deletes every file belonging to the part index with the given basename.
+     */
+    private static void deletePart(String partBasename) throws IOException {
+        File base = new File(partBasename);
+        File directory = base.getAbsoluteFile().getParentFile();
+        String prefix = base.getName();
+        File[] files = directory.listFiles((dir, name) ->
+                name.startsWith(prefix + "-") || name.startsWith(prefix + "."));
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+
+    public static void main( String arg[] ) throws Exception {
+        SimpleJSAP jsap = new SimpleJSAP( ParallelIndexBuilder.class.getName(),
+                "Builds an mg4j index from a manifest of BitFunnel chunk files, indexing chunks in parallel.",
+                new Parameter[] {
+                        new FlaggedOption( "threads", JSAP.INTSIZE_PARSER, Integer.toString(Runtime.getRuntime().availableProcessors()), JSAP.NOT_REQUIRED, 't', "threads", "The number of threads to use." ),
+                        new Switch( "downcase", JSAP.NO_SHORTFLAG, "downcase", "A shortcut for setting the term processor to the downcasing processor." ),
+                        new Switch( "mapped", 'm', "mapped", "Memory-map chunk files." ),
+                        new Switch( "keepParts", JSAP.NO_SHORTFLAG, "keep-parts", "Keep the per-chunk part indexes." ),
+                        new Switch( "incremental", 'i', "incremental", "Append the chunk files not yet in <basename>.ledger to the existing index, and add them to the ledger." ),
+                        new FlaggedOption( "fields", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "fields", "The field schema, a file or an inline list such as \"0:text,1:title,2:anchors:ignored\". Defaults to text and title." ),
+                        new Switch( "metrics", JSAP.NO_SHORTFLAG, "metrics", "Sample indexing throughput, queue depth and per-thread busy time into <basename>.metrics.csv and <basename>.metrics.threads.csv." ),
+                        new UnflaggedOption( "manifest", JSAP.STRING_PARSER, JSAP.REQUIRED, "The manifest file. One chunk file per line." ),
+                        new UnflaggedOption( "basename", JSAP.STRING_PARSER, JSAP.REQUIRED, "The index basename." ),
+                });
+
+        JSAPResult jsapResult = jsap.parse( arg );
+        if ( !jsap.messagePrinted() ) {
+            ParallelIndexBuilder builder = new ParallelIndexBuilder(
+                    jsapResult.getString( "manifest" ),
+                    jsapResult.getString( "basename" ),
+                    jsapResult.getBoolean( "downcase" ),
+                    jsapResult.getBoolean( "mapped" ));
+            IngestionMetrics metrics = jsapResult.getBoolean( "metrics" ) ?
+                    new IngestionMetrics(jsapResult.getString( "basename" ) + ".metrics.csv", 1000) :
+                    new IngestionMetrics();
+            builder.setMetrics(metrics);
+            builder.setSchema(FieldSchema.parse(jsapResult.getString( "fields" )));
+            builder.setIncremental(jsapResult.getBoolean( "incremental" ));
+            builder.run(jsapResult.getInt( "threads" ), jsapResult.getBoolean( "keepParts" ));
+            metrics.close();
+        }
+    }
+}
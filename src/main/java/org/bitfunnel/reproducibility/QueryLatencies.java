@@ -0,0 +1,106 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+
+/**
+ * Latency histograms of the phases of query processing, and of whole queries:
+ * query is the sum of the phases, wait is the time from a query's scheduled
+ * arrival until a thread started it (zero in a closed loop) and response is
+ * the time from its arrival until it finished. Each query processor thread
+ * records into its own QueryLatencies, which are added together once the
+ * thread is done with a pass over the query log.
+ */
+public class QueryLatencies {
+    public static final String[] PHASES = { "parse", "plan", "match", "query", "wait", "response" };
+    public static final int PARSE = 0;
+    public static final int PLAN = 1;
+    public static final int MATCH = 2;
+    public static final int QUERY = 3;
+    public static final int WAIT = 4;
+    public static final int RESPONSE = 5;
+
+    // The percentiles reported by print().
+    static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+
+
+    public QueryLatencies() {
+        for (int i = 0; i < histograms.length; ++i) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+
+    public void record(long parsingTimeInNS, long planningTimeInNS, long matchTimeInNS, long waitTimeInNS, long responseTimeInNS) {
+        histograms[PARSE].recordValue(parsingTimeInNS);
+        histograms[PLAN].recordValue(planningTimeInNS);
+        histograms[MATCH].recordValue(matchTimeInNS);
+        histograms[QUERY].recordValue(parsingTimeInNS + planningTimeInNS + matchTimeInNS);
+        histograms[WAIT].recordValue(waitTimeInNS);
+        histograms[RESPONSE].recordValue(responseTimeInNS);
+    }
+
+
+    public void add(QueryLatencies other) {
+        for (int i = 0; i < histograms.length; ++i) {
+            histograms[i].add(other.histograms[i]);
+        }
+    }
+
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+
+    public LatencyHistogram histogram(int phase) {
+        return histograms[phase];
+    }
+
+
+    /**
+     * Prints the percentiles, maximum and mean of each phase, in seconds.
+     */
+    public void print(PrintStream out) {
+        StringBuilder header = new StringBuilder(String.format("%-16s", "Latency"));
+        for (double percentile : PERCENTILES) {
+            header.append(String.format(" %12s", "p" + formatPercentile(percentile)));
+        }
+        header.append(String.format(" %12s %12s", "max", "mean"));
+        out.println(header);
+
+        for (int i = 0; i < histograms.length; ++i) {
+            LatencyHistogram histogram = histograms[i];
+            StringBuilder line = new StringBuilder(String.format("%-16s", PHASES[i]));
+            for (double percentile : PERCENTILES) {
+                line.append(String.format(" %12f", histogram.valueAtPercentile(percentile) * 1e-9));
+            }
+            line.append(String.format(" %12f %12f", histogram.maxValue() * 1e-9, histogram.mean() * 1e-9));
+            out.println(line);
+        }
+    }
+
+
+    /**
+     * Writes the percentile distribution of each phase, in milliseconds, to
+     * {@code <prefix>.<phase>.hgrm}.
+     */
+    public void write(String prefix) throws IOException {
+        for (int i = 0; i < histograms.length; ++i) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(prefix + "." + PHASES[i] + ".hgrm"), false, "UTF-8")) {
+                histograms[i].outputPercentileDistribution(out, 5, 1e6);
+            }
+        }
+    }
+
+
+    static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long)percentile) : Double.toString(percentile);
+    }
+}
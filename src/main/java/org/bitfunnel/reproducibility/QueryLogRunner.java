@@ -8,10 +8,15 @@ import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -26,13 +31,43 @@ public class QueryLogRunner
 
     QueryProcessorFactory factory;
 
-    ThreadSynchronizer warmupSynchronizer;
-    AtomicInteger warmupQueriesRemaining = new AtomicInteger();
+    int warmupPasses = 1;
+    int measuredPasses = 1;
 
-    ThreadSynchronizer performanceSynchronizer;
-    AtomicInteger performanceQueriesRemaining = new AtomicInteger();
+    // Steady-state detection: warmup goes on past warmupPasses, up to
+    // maxWarmupPasses, until the QPS of the last steadyStateWindow warmup
+    // passes varies by no more than steadyStateVariation. Off when zero.
+    int maxWarmupPasses = 1;
+    double steadyStateVariation = 0;
+    int steadyStateWindow = 3;
 
-    ThreadSynchronizer finishSynchronizer;
+    // Collect garbage between passes, so one pass's garbage is not charged
+    // to the next.
+    boolean gcBetweenPasses = false;
+
+    // See QueryProcessorBase.
+    ThreadSynchronizer[] passSynchronizers;
+    AtomicInteger[] passQueriesRemaining;
+    CountDownLatch[] passFinished;
+    AtomicInteger firstMeasuredPass;
+    QueryLatencies[] passLatencies;
+
+    // When each pass ended, and the garbage collections during it.
+    long[] passEndTimesNs;
+    long[] passGcTimesMs;
+    long[] passGcCounts;
+
+    // Open-loop mode: measured passes issue queries on this schedule, through
+    // arrivals, instead of as fast as threads can take them.
+    ArrivalSchedule schedule = null;
+    BlockingQueue<ArrivalSchedule.ScheduledQuery> arrivals = null;
+
+    // Appends a summary line per run when non-null.
+    Path csvPath = null;
+
+    // When non-null, query threads pin themselves to these CPUs, in turn.
+    int[] cpus = null;
+    AtomicInteger nextCpu;
 
     ArrayList<Thread> threads = new ArrayList<>(16);
 
@@ -49,7 +84,155 @@ public class QueryLogRunner
     }
 
 
-    void go(int threadCount, Path outfilePath) throws InterruptedException, IOException, IllegalAccessException, InvocationTargetException, InstantiationException, ConfigurationException, URISyntaxException, NoSuchMethodException, ClassNotFoundException {
+    /**
+     * Sets the number of passes over the query log that warm up the system,
+     * and the number of passes that follow them and are measured.
+     */
+    void setPasses(int warmupPasses, int measuredPasses) {
+        this.warmupPasses = warmupPasses;
+        this.maxWarmupPasses = warmupPasses;
+        this.measuredPasses = measuredPasses;
+    }
+
+
+    /**
+     * Extends warmup, up to maxWarmupPasses in all, until the coefficient of
+     * variation of the QPS of the last window warmup passes is at most
+     * variation, as a sign that JIT compilation and heap sizing have settled.
+     */
+    void setSteadyState(double variation, int window, int maxWarmupPasses) {
+        this.steadyStateVariation = variation;
+        this.steadyStateWindow = window;
+        this.maxWarmupPasses = Math.max(maxWarmupPasses, warmupPasses);
+    }
+
+
+    void setGcBetweenPasses(boolean gcBetweenPasses) {
+        this.gcBetweenPasses = gcBetweenPasses;
+    }
+
+
+    /**
+     * Makes measured passes open-loop: queries arrive on schedule, and wait
+     * for a free thread when all are busy, so the latencies include queueing.
+     */
+    void setArrivalSchedule(ArrivalSchedule schedule) {
+        this.schedule = schedule;
+    }
+
+
+    void setCsvPath(Path csvPath) {
+        this.csvPath = csvPath;
+    }
+
+
+    /**
+     * Pins the query threads of each run to cpus, one CPU per thread, reusing
+     * CPUs once they run out.
+     */
+    void setCpus(int[] cpus) {
+        this.cpus = cpus;
+    }
+
+
+    /**
+     * The throughput and latencies of one run.
+     */
+    static class RunSummary {
+        final int threadCount;
+        final double qps;
+        final double mps;
+        final long gcTimeMs;
+        final QueryLatencies latencies;
+
+        RunSummary(int threadCount, double qps, double mps, long gcTimeMs, QueryLatencies latencies) {
+            this.threadCount = threadCount;
+            this.qps = qps;
+            this.mps = mps;
+            this.gcTimeMs = gcTimeMs;
+            this.latencies = latencies;
+        }
+    }
+
+
+    /**
+     * Runs the query log once for each thread count, against the same loaded
+     * index, and reports how throughput scales. Parallel efficiency is the
+     * speedup over the smallest thread count, divided by the increase in
+     * threads: 1.0 is linear scaling, and a drop shows where contention for
+     * locks, caches or memory bandwidth sets in.
+     */
+    List<RunSummary> sweep(int[] threadCounts, Path outfilePath) throws InterruptedException, IOException, IllegalAccessException, InvocationTargetException, InstantiationException, ConfigurationException, URISyntaxException, NoSuchMethodException, ClassNotFoundException {
+        List<RunSummary> summaries = new ArrayList<>(threadCounts.length);
+        for (int threadCount : threadCounts) {
+            Path path = threadCounts.length == 1 ? outfilePath : Paths.get(outfilePath + "." + threadCount + "threads");
+            summaries.add(go(threadCount, path));
+        }
+
+        RunSummary baseline = summaries.get(0);
+        for (RunSummary summary : summaries) {
+            if (summary.threadCount < baseline.threadCount) {
+                baseline = summary;
+            }
+        }
+
+        if (summaries.size() > 1) {
+            System.out.println();
+            System.out.println("====================================================");
+            System.out.println();
+            System.out.println(String.format("%8s %14s %10s %10s %12s %12s %12s %10s",
+                    "Threads", "QPS", "Speedup", "Efficiency", "p50", "p99", "p99.9", "GC"));
+        }
+        for (RunSummary summary : summaries) {
+            double speedup = summary.qps / baseline.qps;
+            double efficiency = speedup * baseline.threadCount / summary.threadCount;
+            if (summaries.size() > 1) {
+                LatencyHistogram response = summary.latencies.histogram(QueryLatencies.RESPONSE);
+                System.out.println(String.format("%8d %14f %10f %10f %12f %12f %12f %10f",
+                        summary.threadCount,
+                        summary.qps,
+                        speedup,
+                        efficiency,
+                        response.valueAtPercentile(50.0) * 1e-9,
+                        response.valueAtPercentile(99.0) * 1e-9,
+                        response.valueAtPercentile(99.9) * 1e-9,
+                        summary.gcTimeMs * 1e-3));
+            }
+            if (csvPath != null) {
+                appendCsv(summary, efficiency);
+            }
+        }
+        return summaries;
+    }
+
+
+    void appendCsv(RunSummary summary, double efficiency) throws IOException {
+        LatencyHistogram response = summary.latencies.histogram(QueryLatencies.RESPONSE);
+        StringBuilder line = new StringBuilder();
+        if (!Files.exists(csvPath)) {
+            line.append("index,threads,arrivals,offeredQps,qps,mps,efficiency,p50,p90,p99,p999,max,mean,gc\n");
+        }
+        line.append(String.format("%s,%d,%s,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f\n",
+                factory.indexType(),
+                summary.threadCount,
+                schedule != null ? schedule.arrivals().toString().toLowerCase() : "closed",
+                schedule != null ? schedule.queriesPerSecond() : 0.0,
+                summary.qps,
+                summary.mps,
+                efficiency,
+                response.valueAtPercentile(50.0) * 1e-9,
+                response.valueAtPercentile(90.0) * 1e-9,
+                response.valueAtPercentile(99.0) * 1e-9,
+                response.valueAtPercentile(99.9) * 1e-9,
+                response.maxValue() * 1e-9,
+                response.mean() * 1e-9,
+                summary.gcTimeMs * 1e-3));
+        Files.write(csvPath, line.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+
+    RunSummary go(int threadCount, Path outfilePath) throws InterruptedException, IOException, IllegalAccessException, InvocationTargetException, InstantiationException, ConfigurationException, URISyntaxException, NoSuchMethodException, ClassNotFoundException {
         // Clear out any values from an earlier run.
         for (int i = 0; i < queries.size(); ++i) {
             matchCounts[i] = 0;
@@ -59,19 +242,35 @@ public class QueryLogRunner
             succeeded[i] = false;
         }
 
-        // Set the number of queries for warmup and the test.
+        // Set the number of queries for each warmup and measured pass.
         // WARNING: never use a value greater than queries.size().
         // For rationale, see DESIGN NOTE in Mg4jQueryProcessor.processLog()
         // and LuceneQueryProcessor.processLog().
-        warmupQueriesRemaining.set(queries.size());
-        performanceQueriesRemaining.set(queries.size());
-
-        warmupSynchronizer = new ThreadSynchronizer(threadCount);
-        performanceSynchronizer = new ThreadSynchronizer(threadCount);
-
-        finishSynchronizer = new ThreadSynchronizer(threadCount);
+        // This thread times each pass, decides when warmup is over and, in
+        // open-loop mode, dispatches the queries of measured passes, so it
+        // waits for the start of each pass with the others.
+        int maxPassCount = maxWarmupPasses + measuredPasses;
+        arrivals = schedule != null ? new LinkedBlockingQueue<>() : null;
+        firstMeasuredPass = new AtomicInteger(maxWarmupPasses);
+        passQueriesRemaining = new AtomicInteger[maxPassCount];
+        passSynchronizers = new ThreadSynchronizer[maxPassCount + 1];
+        passFinished = new CountDownLatch[maxPassCount];
+        passLatencies = new QueryLatencies[maxPassCount];
+        for (int pass = 0; pass < maxPassCount; ++pass) {
+            passQueriesRemaining[pass] = new AtomicInteger(queries.size());
+            passSynchronizers[pass] = new ThreadSynchronizer(threadCount + 1);
+            passFinished[pass] = new CountDownLatch(threadCount);
+            passLatencies[pass] = new QueryLatencies();
+        }
+        passSynchronizers[maxPassCount] = new ThreadSynchronizer(threadCount + 1);
+        nextCpu = new AtomicInteger(0);
+        passEndTimesNs = new long[maxPassCount];
+        passGcTimesMs = new long[maxPassCount];
+        passGcCounts = new long[maxPassCount];
+        double[] passQps = new double[maxPassCount];
 
         System.out.println(String.format("Starting %d threads . . .", threadCount));
+        threads.clear();
         for (int i = 0; i < threadCount; ++i) {
             System.out.println(String.format("  thread-%d", i));
             Thread thread = new Thread(
@@ -81,6 +280,40 @@ public class QueryLogRunner
             thread.start();
         }
 
+        if (schedule != null) {
+            System.out.println(String.format("Issuing queries at %f QPS (%s arrivals) . . .",
+                    schedule.queriesPerSecond(),
+                    schedule.arrivals()));
+        }
+        GarbageCollectionTimer gcTimer = new GarbageCollectionTimer();
+        int pass = 0;
+        for (; pass < firstMeasuredPass.get() + measuredPasses; ++pass) {
+            if (gcBetweenPasses) {
+                System.gc();
+            }
+            passSynchronizers[pass].waitForAllThreadsReady();
+            gcTimer.reset();
+            if (schedule != null && pass >= firstMeasuredPass.get()) {
+                schedule.dispatch(queries.size(), arrivals, threadCount);
+            }
+            passFinished[pass].await();
+            passEndTimesNs[pass] = System.nanoTime();
+            passGcTimesMs[pass] = gcTimer.elapsedTimeMs();
+            passGcCounts[pass] = gcTimer.collections();
+            passQps[pass] = passLatencies[pass].histogram(QueryLatencies.QUERY).totalCount() / passTime(pass);
+
+            // Settle the first measured pass before the threads start the next one.
+            if (pass < firstMeasuredPass.get() && pass + 1 >= warmupPasses) {
+                boolean steady = steadyStateVariation > 0 && isSteady(passQps, pass + 1);
+                if (steady || pass + 1 == maxWarmupPasses) {
+                    firstMeasuredPass.set(pass + 1);
+                }
+            }
+        }
+        passSynchronizers[pass].waitForAllThreadsReady();
+        int passCount = pass;
+        int firstMeasured = firstMeasuredPass.get();
+
         // Wait for last thread to exit.
         System.out.println("Waiting for threads to exit . . .");
         for(int i = 0; i < threads.size(); i++)
@@ -137,7 +370,15 @@ public class QueryLogRunner
         double overheadLatency = planningLatency + parsingLatency;
         double totalLatency = overheadLatency + matchingLatency;
 
-        double elapsedTime = (finishSynchronizer.startTimeNs - performanceSynchronizer.startTimeNs) * 1e-9;
+        QueryLatencies latencies = new QueryLatencies();
+        double elapsedTime = 0;
+        long gcTimeMs = 0;
+        for (int i = firstMeasured; i < passCount; ++i) {
+            latencies.add(passLatencies[i]);
+            elapsedTime += passTime(i);
+            gcTimeMs += passGcTimesMs[i];
+        }
+        long measuredCount = latencies.histogram(QueryLatencies.QUERY).totalCount();
         System.out.println();
         System.out.println("====================================================");
         System.out.println();
@@ -147,8 +388,16 @@ public class QueryLogRunner
         }
         System.out.println(String.format("Index type: %s", factory.indexType()));
         System.out.println(String.format("Thread count: %d", threadCount));
+        if (schedule != null) {
+            System.out.println(String.format("Offered load: %f QPS (%s arrivals)", schedule.queriesPerSecond(), schedule.arrivals()));
+        }
         System.out.println(String.format("Unique queries: %d", queries.size()));
         System.out.println(String.format("Queries processed: %d", processedCount));
+        System.out.println(String.format("Warmup passes: %d%s",
+                firstMeasured,
+                steadyStateVariation == 0 ? "" :
+                    firstMeasured < maxWarmupPasses || isSteady(passQps, firstMeasured) ? " (steady state)" : " (no steady state)"));
+        System.out.println(String.format("Measured passes: %d", measuredPasses));
         System.out.println(String.format("MatchCount: %d", matchCount));
         System.out.println(String.format("Elapsed time: %f", elapsedTime));
         System.out.println(String.format("Total parsing latency: %f", parsingLatency));
@@ -156,20 +405,110 @@ public class QueryLogRunner
         System.out.println(String.format("Total matching latency: %f", matchingLatency));
         System.out.println(String.format("Mean query latency: %f", totalLatency / processedCount));
         System.out.println(String.format("Planning overhead: %f", overheadLatency / totalLatency));
-        System.out.println(String.format("QPS: %f", processedCount / elapsedTime));
-        System.out.println(String.format("MPS: %f", matchCount / elapsedTime));
+        System.out.println(String.format("QPS: %f", measuredCount / elapsedTime));
+        System.out.println(String.format("MPS: %f", matchCount * measuredPasses / elapsedTime));
         System.out.println(String.format("MPQ: %f", (double)matchCount / processedCount));
+        System.out.println(String.format("GC time: %f", gcTimeMs * 1e-3));
+
+        System.out.println();
+        for (int i = 0; i < passCount; ++i) {
+            LatencyHistogram response = passLatencies[i].histogram(QueryLatencies.RESPONSE);
+            System.out.println(String.format("%s pass %d: elapsed time %f, QPS %f, p50 %f, p99 %f, p99.9 %f, max %f, GC %d ms in %d collections",
+                    i < firstMeasured ? "Warmup" : "Measured",
+                    i < firstMeasured ? i : i - firstMeasured,
+                    passTime(i),
+                    passQps[i],
+                    response.valueAtPercentile(50.0) * 1e-9,
+                    response.valueAtPercentile(99.0) * 1e-9,
+                    response.valueAtPercentile(99.9) * 1e-9,
+                    response.maxValue() * 1e-9,
+                    passGcTimesMs[i],
+                    passGcCounts[i]));
+        }
+        System.out.println();
+        if (measuredPasses > 1) {
+            // How much the measured passes vary, with 95% confidence intervals
+            // of their means.
+            double[][] samples = new double[1 + QueryLatencies.PERCENTILES.length][measuredPasses];
+            for (int i = 0; i < measuredPasses; ++i) {
+                LatencyHistogram response = passLatencies[firstMeasured + i].histogram(QueryLatencies.RESPONSE);
+                samples[0][i] = passQps[firstMeasured + i];
+                for (int j = 0; j < QueryLatencies.PERCENTILES.length; ++j) {
+                    samples[j + 1][i] = response.valueAtPercentile(QueryLatencies.PERCENTILES[j]) * 1e-9;
+                }
+            }
+            System.out.println(String.format("%-16s %12s %12s %12s %12s", "Per pass", "mean", "stddev", "ci95", "cv"));
+            for (int j = 0; j < samples.length; ++j) {
+                SampleStatistics statistics = new SampleStatistics(samples[j]);
+                System.out.println(String.format("%-16s %12f %12f %12f %12f",
+                        j == 0 ? "QPS" : "response p" + QueryLatencies.formatPercentile(QueryLatencies.PERCENTILES[j - 1]),
+                        statistics.mean(),
+                        statistics.standardDeviation(),
+                        statistics.confidenceInterval95(),
+                        statistics.coefficientOfVariation()));
+            }
+            System.out.println();
+        }
+        latencies.print(System.out);
+        if (latencies.histogram(QueryLatencies.QUERY).clampedCount() > 0) {
+            System.out.println(String.format("WARNING: %d query latencies exceeded the largest trackable latency.",
+                    latencies.histogram(QueryLatencies.QUERY).clampedCount()));
+        }
+
+        System.out.println(String.format("Writing latency histograms to \"%s.<phase>.hgrm\".", outfilePath));
+        latencies.write(outfilePath.toString());
+
+        return new RunSummary(threadCount,
+                              measuredCount / elapsedTime,
+                              matchCount * measuredPasses / elapsedTime,
+                              gcTimeMs,
+                              latencies);
+    }
+
+
+    /**
+     * @return the time between the start and the end of a pass, in seconds.
+     */
+    double passTime(int pass) {
+        return (passEndTimesNs[pass] - passSynchronizers[pass].startTimeNs) * 1e-9;
+    }
+
+
+    /**
+     * @return whether the QPS of the steadyStateWindow passes before pass
+     * varies by no more than steadyStateVariation.
+     */
+    boolean isSteady(double[] passQps, int pass) {
+        return pass >= steadyStateWindow &&
+                new SampleStatistics(passQps, pass - steadyStateWindow, pass).coefficientOfVariation() <= steadyStateVariation;
     }
 
 
     public static void main( String arg[] ) throws Exception {
+        // A list of thread counts runs one after another against the same index.
+        UnflaggedOption threads = new UnflaggedOption( "threads", JSAP.INTSIZE_PARSER, JSAP.REQUIRED, "The number of threads to use, or a comma separated list of thread counts to sweep, e.g. 1,2,4,8." );
+        threads.setList(true);
+        threads.setListSeparator(',');
+
         SimpleJSAP jsap = new SimpleJSAP( GenerateBitFunnelChunks.class.getName(), "Builds an index (creates batches, combines them, and builds a term map).",
                 new Parameter[] {
                         new UnflaggedOption( "indexType", JSAP.STRING_PARSER, JSAP.REQUIRED, "The index type (lucene or mg4j)." ),
                         new UnflaggedOption( "basename", JSAP.STRING_PARSER, JSAP.REQUIRED, "The index basename." ),
                         new UnflaggedOption( "queries", JSAP.STRING_PARSER, JSAP.REQUIRED, "The query log file. One query per line." ),
                         new UnflaggedOption( "outfile", JSAP.STRING_PARSER, JSAP.REQUIRED, "The output file with match counts and timings for each query." ),
-                        new UnflaggedOption( "threads", JSAP.INTSIZE_PARSER, JSAP.REQUIRED, "The maximum number of threads to use." ),
+                        threads,
+                        new FlaggedOption( "fields", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "fields", "The field schema of an mg4j index, a file or an inline list such as \"0:text,1:title\"." ),
+                        new FlaggedOption( "warmupPasses", JSAP.INTSIZE_PARSER, "1", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "warmup-passes", "The number of unmeasured passes over the query log." ),
+                        new FlaggedOption( "passes", JSAP.INTSIZE_PARSER, "1", JSAP.NOT_REQUIRED, 'n', "passes", "The number of measured passes over the query log, after the warmup passes." ),
+                        new FlaggedOption( "steadyState", JSAP.DOUBLE_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "steady-state", "Continue warming up until the coefficient of variation of QPS over the last --steady-state-window warmup passes is at most this, e.g. 0.02. Zero turns steady-state detection off." ),
+                        new FlaggedOption( "steadyStateWindow", JSAP.INTSIZE_PARSER, "3", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "steady-state-window", "The number of consecutive warmup passes whose QPS must agree." ),
+                        new FlaggedOption( "maxWarmupPasses", JSAP.INTSIZE_PARSER, "20", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "max-warmup-passes", "The most warmup passes to run while waiting for a steady state." ),
+                        new FlaggedOption( "cpus", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "cpus", "Pin query threads to these CPUs, one each, e.g. \"0-7\" or \"0,2,4,6\". Linux only, needs taskset." ),
+                        new Switch( "gc", JSAP.NO_SHORTFLAG, "gc-between-passes", "Collect garbage between passes, outside the timed part." ),
+                        new FlaggedOption( "rate", JSAP.DOUBLE_PARSER, "0", JSAP.NOT_REQUIRED, 'r', "rate", "Issue the queries of measured passes at this many queries per second, open-loop, instead of as fast as the threads can take them." ),
+                        new FlaggedOption( "arrivals", JSAP.STRING_PARSER, "poisson", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "arrivals", "The arrival process at --rate: poisson or constant." ),
+                        new FlaggedOption( "seed", JSAP.LONG_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "seed", "The random seed of poisson arrivals." ),
+                        new FlaggedOption( "csv", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "csv", "Append the offered load, throughput, parallel efficiency and response time percentiles of each run to this file." ),
                 });
 
         JSAPResult jsapResult = jsap.parse( arg );
@@ -177,7 +516,8 @@ public class QueryLogRunner
             QueryProcessorFactory factory = null;
             String indexType = jsapResult.getString("indexType");
             if (indexType.equals("mg4j")) {
-                Mg4jIndex index = new Mg4jIndex(jsapResult.getString( "basename" ));
+                Mg4jIndex index = new Mg4jIndex(jsapResult.getString( "basename" ),
+                                               FieldSchema.parse(jsapResult.getString( "fields" )));
                 factory = new QueryProcessorFactory(index);
             }
             else if (indexType.equals("lucene")) {
@@ -191,7 +531,36 @@ public class QueryLogRunner
             }
             else {
                 QueryLogRunner runner = new QueryLogRunner(factory, jsapResult.getString( "queries" ));
-                runner.go(jsapResult.getInt( "threads" ), Paths.get(jsapResult.getString( "outfile" )));
+                runner.setPasses(jsapResult.getInt( "warmupPasses" ), Math.max(1, jsapResult.getInt( "passes" )));
+                if (jsapResult.getDouble( "steadyState" ) > 0) {
+                    runner.setSteadyState(jsapResult.getDouble( "steadyState" ),
+                                          Math.max(2, jsapResult.getInt( "steadyStateWindow" )),
+                                          jsapResult.getInt( "maxWarmupPasses" ));
+                }
+                runner.setGcBetweenPasses(jsapResult.getBoolean( "gc" ));
+                if (jsapResult.getDouble( "rate" ) > 0) {
+                    ArrivalSchedule.Arrivals arrivals;
+                    try {
+                        arrivals = ArrivalSchedule.Arrivals.valueOf(jsapResult.getString( "arrivals" ).toUpperCase());
+                    }
+                    catch (IllegalArgumentException e) {
+                        System.out.println(String.format("Unknown arrival process %s. Valid processes are poisson and constant.", jsapResult.getString( "arrivals" )));
+                        return;
+                    }
+                    runner.setArrivalSchedule(new ArrivalSchedule(jsapResult.getDouble( "rate" ), arrivals, jsapResult.getLong( "seed" )));
+                }
+                if (jsapResult.contains( "csv" )) {
+                    runner.setCsvPath(Paths.get(jsapResult.getString( "csv" )));
+                }
+                if (jsapResult.contains( "cpus" )) {
+                    runner.setCpus(ThreadAffinity.parseCpuList(jsapResult.getString( "cpus" )));
+                }
+                try {
+                    runner.sweep(jsapResult.getIntArray( "threads" ), Paths.get(jsapResult.getString( "outfile" )));
+                }
+                finally {
+                    factory.close();
+                }
             }
         }
     }
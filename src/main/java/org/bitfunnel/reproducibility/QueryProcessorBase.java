@@ -1,6 +1,8 @@
 package org.bitfunnel.reproducibility;
 
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -13,11 +15,30 @@ public abstract class QueryProcessorBase implements Runnable
     long[] matchTimesInNS;
     boolean[] succeeded;
 
-    ThreadSynchronizer warmupSynchronizer;
-    AtomicInteger warmupQueriesRemaining;
-    ThreadSynchronizer performanceSynchronizer;
-    AtomicInteger performanceQueriesRemaining;
-    ThreadSynchronizer finishSynchronizer;
+    // One synchronizer, counter and latch per pass over the query log, warmup
+    // passes first. A thread counts down passFinished when it has done its
+    // share of a pass. The synchronizer after the last pass marks the end.
+    ThreadSynchronizer[] passSynchronizers;
+    AtomicInteger[] passQueriesRemaining;
+    CountDownLatch[] passFinished;
+
+    // The first measured pass. QueryLogRunner settles it before the pass
+    // starts, once warmup has reached a steady state.
+    AtomicInteger firstMeasuredPass;
+    int measuredPasses;
+
+    // When non-null, measured passes take queries from this queue as they
+    // arrive instead of as fast as they can.
+    BlockingQueue<ArrivalSchedule.ScheduledQuery> arrivals;
+
+    // When non-null, the thread pins itself to the next of these CPUs.
+    int[] cpus;
+    AtomicInteger nextCpu;
+
+    // The latencies of each pass, from all threads.
+    QueryLatencies[] passLatencies;
+    // This thread's latencies in the current pass.
+    QueryLatencies latencies = new QueryLatencies();
 
 
     public QueryProcessorBase(QueryLogRunner runner)
@@ -29,26 +50,49 @@ public abstract class QueryProcessorBase implements Runnable
         this.planningTimesInNS = runner.planningTimesInNS;
         this.matchTimesInNS = runner.matchTimesInNS;
         this.succeeded = runner.succeeded;
-        this.warmupSynchronizer = runner.warmupSynchronizer;
-        this.warmupQueriesRemaining = runner.warmupQueriesRemaining;
-        this.performanceSynchronizer = runner.performanceSynchronizer;
-        this.performanceQueriesRemaining = runner.performanceQueriesRemaining;
-        this.finishSynchronizer = runner.finishSynchronizer;
+        this.passSynchronizers = runner.passSynchronizers;
+        this.passQueriesRemaining = runner.passQueriesRemaining;
+        this.passFinished = runner.passFinished;
+        this.firstMeasuredPass = runner.firstMeasuredPass;
+        this.measuredPasses = runner.measuredPasses;
+        this.passLatencies = runner.passLatencies;
+        this.arrivals = runner.arrivals;
+        this.cpus = runner.cpus;
+        this.nextCpu = runner.nextCpu;
     }
 
 
     @Override
     public void run() {
         try {
-            // Process all queries once to "warm up the system".
-            warmupSynchronizer.waitForAllThreadsReady();
-            processLog(warmupQueriesRemaining);
+            if (cpus != null) {
+                int cpu = cpus[nextCpu.getAndIncrement() % cpus.length];
+                if (!ThreadAffinity.pinCurrentThread(cpu)) {
+                    System.out.println(String.format("WARNING: could not pin %s to CPU %d.", Thread.currentThread().getName(), cpu));
+                }
+            }
 
-            // Record performance measurements on final run.
-            performanceSynchronizer.waitForAllThreadsReady();
-            processLog(performanceQueriesRemaining);
+            // Process all queries in the warmup passes to "warm up the system",
+            // and in the measured passes that follow. Until the first measured
+            // pass is settled, it is past the current one.
+            int pass = 0;
+            for (; pass < firstMeasuredPass.get() + measuredPasses; ++pass) {
+                passSynchronizers[pass].waitForAllThreadsReady();
+                if (arrivals != null && pass >= firstMeasuredPass.get()) {
+                    processArrivals(arrivals, latencies);
+                }
+                else {
+                    processLog(passQueriesRemaining[pass], latencies);
+                }
+                QueryLatencies total = passLatencies[pass];
+                synchronized (total) {
+                    total.add(latencies);
+                }
+                latencies.reset();
+                passFinished[pass].countDown();
+            }
 
-            finishSynchronizer.waitForAllThreadsReady();
+            passSynchronizers[pass].waitForAllThreadsReady();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -56,6 +100,15 @@ public abstract class QueryProcessorBase implements Runnable
 
 
     public void processLog(AtomicInteger queriesRemaining) {
+        processLog(queriesRemaining, null);
+    }
+
+
+    /**
+     * Processes queries until queriesRemaining runs out, recording the
+     * latencies of those that succeed in latencies, unless it is null.
+     */
+    public void processLog(AtomicInteger queriesRemaining, QueryLatencies latencies) {
         while (true) {
             int query = queriesRemaining.decrementAndGet();
             if (query < 0) {
@@ -64,7 +117,41 @@ public abstract class QueryProcessorBase implements Runnable
 
             int queryIndex = queries.size() - (query % queries.size()) - 1;
 
+            long start = System.nanoTime();
+            processOneQuery(queryIndex, queries.get(queryIndex));
+            if (latencies != null && succeeded[queryIndex]) {
+                latencies.record(parsingTimesInNS[queryIndex],
+                                 planningTimesInNS[queryIndex],
+                                 matchTimesInNS[queryIndex],
+                                 0,
+                                 System.nanoTime() - start);
+            }
+        }
+    }
+
+
+    /**
+     * Processes queries from arrivals until it hands out ArrivalSchedule.END,
+     * recording the latencies of those that succeed in latencies. Wait and
+     * response times count from each query's scheduled arrival.
+     */
+    public void processArrivals(BlockingQueue<ArrivalSchedule.ScheduledQuery> arrivals, QueryLatencies latencies) throws InterruptedException {
+        while (true) {
+            ArrivalSchedule.ScheduledQuery query = arrivals.take();
+            if (query == ArrivalSchedule.END) {
+                break;
+            }
+
+            int queryIndex = query.queryIndex;
+            long start = System.nanoTime();
             processOneQuery(queryIndex, queries.get(queryIndex));
+            if (succeeded[queryIndex]) {
+                latencies.record(parsingTimesInNS[queryIndex],
+                                 planningTimesInNS[queryIndex],
+                                 matchTimesInNS[queryIndex],
+                                 start - query.scheduledNanos,
+                                 System.nanoTime() - query.scheduledNanos);
+            }
         }
     }
 
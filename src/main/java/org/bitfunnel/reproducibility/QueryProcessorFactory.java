@@ -30,7 +30,16 @@ public class QueryProcessorFactory {
         }
     }
 
-    String indexType() {
+    /**
+     * Closes the Lucene index and the reader its query processors shared.
+     */
+    void close() throws IOException {
+        if (luceneIndex != null) {
+            luceneIndex.close();
+        }
+    }
+
+        String indexType() {
         if (mg4jIndex != null) {
             return "MG4j";
         }
@@ -0,0 +1,324 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Reads input on dedicated I/O threads ahead of the threads that parse it.
+ *
+ * <p>open() returns at once with a stream whose source is read, in blocks, by
+ * the I/O threads. They read one block at a time, so a stream whose parser has
+ * fallen behind holds no thread, and a few threads serve any number of open
+ * streams. Each stream holds at most blocksPerStream blocks that the
+ * parser has not yet consumed, so memory is bounded by the number of streams
+ * open at once. Blocks are recycled between streams. A parser that finds no
+ * block ready waits, and the time it waits is added to ioWaitNanos().
+ *
+ * <p>Streams are read in the order they are opened, so callers that read ahead
+ * several files should open them in the order they will parse them.
+ */
+public class ReadAhead implements AutoCloseable {
+    public static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_BLOCKS_PER_STREAM = 4;
+
+    private static final Block END = new Block(new byte[0], 0);
+
+    private final int blockSize;
+    private final int blocksPerStream;
+    private final ExecutorService ioThreads;
+    private final ConcurrentLinkedQueue<byte[]> freeBlocks = new ConcurrentLinkedQueue<>();
+    private final LongAdder ioWaitNanos = new LongAdder();
+
+
+    public ReadAhead(int ioThreadCount) {
+        this(ioThreadCount, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS_PER_STREAM);
+    }
+
+
+    public ReadAhead(int ioThreadCount, int blockSize, int blocksPerStream) {
+        this.blockSize = blockSize;
+        this.blocksPerStream = blocksPerStream;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.ioThreads = Executors.newFixedThreadPool(ioThreadCount, runnable -> {
+            Thread thread = new Thread(runnable, "ReadAhead-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Starts reading source on an I/O thread.
+     * @return a stream of source's bytes. Closing it closes source.
+     */
+    public InputStream open(Callable<InputStream> source) {
+        Stream stream = new Stream(source);
+        stream.start();
+        return stream;
+    }
+
+
+    /**
+     * @return the total time parsers have waited for blocks.
+     */
+    public long ioWaitNanos() {
+        return ioWaitNanos.sum();
+    }
+
+
+    @Override
+    public void close() {
+        ioThreads.shutdownNow();
+    }
+
+
+    private byte[] allocateBlock() {
+        byte[] block = freeBlocks.poll();
+        return block != null ? block : new byte[blockSize];
+    }
+
+
+    // A block of bytes read from a source. An empty block ends the stream.
+    private static class Block {
+        final byte[] data;
+        final int length;
+
+        Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+
+    private class Stream extends InputStream {
+        private final Callable<InputStream> source;
+        // Room for every block the I/O threads may read, plus the end marker.
+        private final BlockingQueue<Block> blocks = new ArrayBlockingQueue<>(blocksPerStream + 2);
+
+        // The blocks that may be read before the parser consumes one, whether
+        // a fill() is queued or running, and whether the source is finished
+        // with. Guarded by this.
+        private int credits = blocksPerStream;
+        private boolean filling = false;
+        private boolean finished = false;
+        // Only used by fill(), which runs one at a time, or once finished.
+        private InputStream input = null;
+
+        // The block being consumed and the read position within it.
+        private Block block = null;
+        private int position = 0;
+        private boolean atEnd = false;
+
+        private volatile boolean closed = false;
+        private volatile IOException error = null;
+
+        Stream(Callable<InputStream> source) {
+            this.source = source;
+        }
+
+        void start() {
+            synchronized (this) {
+                filling = true;
+            }
+            schedule();
+        }
+
+        /**
+         * Queues a fill(). Each reads one block, so a stream whose parser has
+         * fallen behind holds no I/O thread, and any number of streams can be
+         * read ahead by a few threads.
+         */
+        private void schedule() {
+            try {
+                ioThreads.execute(this::fill);
+            }
+            catch (RejectedExecutionException e) {
+                error = new IOException("ReadAhead: closed.");
+                finish();
+            }
+        }
+
+        /**
+         * Runs on an I/O thread. Reads the next block of source, then queues
+         * another fill() if there is credit for it.
+         */
+        private void fill() {
+            boolean more = false;
+            try {
+                if (!closed) {
+                    if (input == null) {
+                        input = source.call();
+                    }
+                    byte[] data = allocateBlock();
+                    int n = 0;
+                    while (n < data.length) {
+                        int r = input.read(data, n, data.length - n);
+                        if (r == -1) {
+                            break;
+                        }
+                        n += r;
+                    }
+                    if (n > 0) {
+                        blocks.add(new Block(data, n));
+                    }
+                    else {
+                        freeBlocks.add(data);
+                    }
+                    more = n == data.length;
+                }
+            }
+            catch (Exception e) {
+                error = e instanceof IOException ? (IOException)e : new IOException(e);
+            }
+
+            synchronized (this) {
+                if (more && !closed) {
+                    if (--credits > 0) {
+                        // Still filling.
+                        schedule();
+                    }
+                    else {
+                        filling = false;
+                    }
+                    return;
+                }
+                filling = false;
+            }
+            finish();
+        }
+
+        /**
+         * Closes source and ends the stream, once.
+         */
+        private void finish() {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+            }
+            if (input != null) {
+                try {
+                    input.close();
+                }
+                catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+            blocks.add(END);
+        }
+
+        /**
+         * Returns the credit of a consumed block, and restarts filling if it
+         * had stopped for want of credit.
+         */
+        private void returnCredit() {
+            synchronized (this) {
+                ++credits;
+                if (filling || finished || closed) {
+                    return;
+                }
+                filling = true;
+            }
+            schedule();
+        }
+
+        /**
+         * Makes the next block current.
+         * @return false at the end of the stream.
+         */
+        private boolean nextBlock() throws IOException {
+            if (atEnd) {
+                return false;
+            }
+            if (block != null) {
+                freeBlocks.add(block.data);
+                block = null;
+                returnCredit();
+            }
+
+            Block next = blocks.poll();
+            if (next == null) {
+                long start = System.nanoTime();
+                try {
+                    next = blocks.take();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("ReadAhead: interrupted.");
+                }
+                ioWaitNanos.add(System.nanoTime() - start);
+            }
+
+            if (next == END) {
+                atEnd = true;
+                if (error != null) {
+                    throw error;
+                }
+                return false;
+            }
+            block = next;
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if ((block == null || position == block.length) && !nextBlock()) {
+                return -1;
+            }
+            return block.data[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if ((block == null || position == block.length) && !nextBlock()) {
+                return -1;
+            }
+            int n = Math.min(count, block.length - position);
+            System.arraycopy(block.data, position, bytes, offset, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return block == null ? 0 : block.length - position;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (block != null) {
+                    freeBlocks.add(block.data);
+                    block = null;
+                }
+                // A fill() in progress finishes the stream itself. Blocks
+                // still queued are left to the garbage collector.
+                boolean idle;
+                synchronized (this) {
+                    idle = !filling;
+                }
+                if (idle) {
+                    finish();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.bitfunnel.reproducibility;
+
+
+/**
+ * Summary statistics of a small sample, such as the QPS of each measured pass
+ * over a query log, for telling run-to-run noise from real differences.
+ */
+public class SampleStatistics {
+    // Two-sided 95% quantiles of Student's t distribution, for 1 to 30
+    // degrees of freedom.
+    private static final double[] T_95 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    private final double mean;
+    private final double standardDeviation;
+    private final int count;
+
+
+    public SampleStatistics(double[] values) {
+        this(values, 0, values.length);
+    }
+
+
+    /**
+     * Summarizes values[from] up to, but not including, values[to].
+     */
+    public SampleStatistics(double[] values, int from, int to) {
+        count = to - from;
+        double sum = 0;
+        for (int i = from; i < to; ++i) {
+            sum += values[i];
+        }
+        mean = count > 0 ? sum / count : 0.0;
+
+        double squares = 0;
+        for (int i = from; i < to; ++i) {
+            squares += (values[i] - mean) * (values[i] - mean);
+        }
+        standardDeviation = count > 1 ? Math.sqrt(squares / (count - 1)) : 0.0;
+    }
+
+
+    public int count() {
+        return count;
+    }
+
+
+    public double mean() {
+        return mean;
+    }
+
+
+    /**
+     * @return the sample standard deviation, or zero for fewer than two values.
+     */
+    public double standardDeviation() {
+        return standardDeviation;
+    }
+
+
+    /**
+     * @return the standard deviation relative to the mean.
+     */
+    public double coefficientOfVariation() {
+        return mean != 0 ? standardDeviation / Math.abs(mean) : 0.0;
+    }
+
+
+    /**
+     * @return the half width of the 95% confidence interval of the mean, from
+     * Student's t distribution, or zero for fewer than two values. Beyond 30
+     * degrees of freedom the normal quantile is close enough.
+     */
+    public double confidenceInterval95() {
+        if (count < 2) {
+            return 0.0;
+        }
+        int degreesOfFreedom = count - 1;
+        double t = degreesOfFreedom <= T_95.length ? T_95[degreesOfFreedom - 1] : 1.960;
+        return t * standardDeviation / Math.sqrt(count);
+    }
+}
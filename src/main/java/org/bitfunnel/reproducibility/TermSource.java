@@ -0,0 +1,19 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.dsi.lang.MutableString;
+
+import java.io.IOException;
+
+
+/**
+ * A source of terms that can be decoded directly into a MutableString.
+ * When the Reader handed to ChunkWordReader implements TermSource, the word
+ * reader bypasses the Reader interface and pulls whole terms instead of chars.
+ */
+public interface TermSource {
+    /**
+     * Replaces the contents of {@code term} with the next term.
+     * @return true if a term was decoded, false if there are no more terms.
+     */
+    boolean nextTerm(MutableString term) throws IOException;
+}
@@ -0,0 +1,350 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Corpus statistics written by TermStatisticsCollector: for each field, the
+ * document and collection frequency of every term, and histograms of document
+ * lengths and term lengths. Planners and exporters can read them without
+ * opening an index.
+ *
+ * <pre>
+ * Grammar:
+ *      Statistics: Magic Version Int64(DocumentCount) VarInt(FieldCount) Field{FieldCount}
+ *      Magic: 'B' 'F' 'T' 'S'
+ *      Version: 1
+ *      Field: VarInt(ByteCount) Utf8{ByteCount}
+ *             Histogram(DocumentLengths) Histogram(TermLengths) Histogram(OccurrenceLengths)
+ *             VarLong(TermCount) Term{TermCount}
+ *      Histogram: VarInt(EntryCount) (VarInt(Value) VarLong(Count)){EntryCount}
+ *      Term: Int64(Key) VarLong(DocumentFrequency) VarLong(CollectionFrequency)
+ * </pre>
+ *
+ * Varints are encoded as in BinaryChunkReader. Histogram values and term keys
+ * are in increasing order. Terms are not stored: a term's key (see key()) has
+ * its length, capped at 255, in the top eight bits and a 56-bit hash of its
+ * characters below, so lookups hash the term and binary search the keys. Two
+ * terms of the same length share a key with probability about n^2 / 2^57 for
+ * n terms, so counts can be off for a few terms of very large vocabularies.
+ * TermLengths counts distinct terms by length and OccurrenceLengths counts
+ * their occurrences.
+ */
+public class TermStatistics {
+    static final byte[] MAGIC = { 'B', 'F', 'T', 'S' };
+    static final int VERSION = 1;
+    static final int MAX_TERM_LENGTH = 255;
+
+    /**
+     * Counts by value, in increasing order of value.
+     */
+    public static class Histogram {
+        public final int[] values;
+        public final long[] counts;
+
+        Histogram(int[] values, long[] counts) {
+            this.values = values;
+            this.counts = counts;
+        }
+
+        public long count(int value) {
+            int i = Arrays.binarySearch(values, value);
+            return i >= 0 ? counts[i] : 0;
+        }
+
+        public long total() {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * @return the sum of value times count.
+         */
+        public long weightedTotal() {
+            long total = 0;
+            for (int i = 0; i < values.length; ++i) {
+                total += values[i] * counts[i];
+            }
+            return total;
+        }
+
+        void write(DataOutput output) throws IOException {
+            writeVarLong(output, values.length);
+            for (int i = 0; i < values.length; ++i) {
+                writeVarLong(output, values[i]);
+                writeVarLong(output, counts[i]);
+            }
+        }
+
+        static Histogram read(DataInput input) throws IOException {
+            int size = (int)readVarLong(input);
+            int[] values = new int[size];
+            long[] counts = new long[size];
+            for (int i = 0; i < size; ++i) {
+                values[i] = (int)readVarLong(input);
+                counts[i] = readVarLong(input);
+            }
+            return new Histogram(values, counts);
+        }
+    }
+
+
+    private static class Field {
+        final String name;
+        final Histogram documentLengths;
+        final Histogram termLengths;
+        final Histogram occurrenceLengths;
+        final long[] keys;
+        final long[] documentFrequencies;
+        final long[] collectionFrequencies;
+
+        Field(String name, Histogram documentLengths, Histogram termLengths, Histogram occurrenceLengths,
+              long[] keys, long[] documentFrequencies, long[] collectionFrequencies) {
+            this.name = name;
+            this.documentLengths = documentLengths;
+            this.termLengths = termLengths;
+            this.occurrenceLengths = occurrenceLengths;
+            this.keys = keys;
+            this.documentFrequencies = documentFrequencies;
+            this.collectionFrequencies = collectionFrequencies;
+        }
+    }
+
+
+    private final long documentCount;
+    private final Field[] fields;
+
+
+    private TermStatistics(long documentCount, Field[] fields) {
+        this.documentCount = documentCount;
+        this.fields = fields;
+    }
+
+
+    public static TermStatistics read(String file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            byte[] magic = new byte[MAGIC.length];
+            input.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(String.format("TermStatistics: %s is not a term statistics file.", file));
+            }
+            if (input.read() != VERSION) {
+                throw new IOException(String.format("TermStatistics: %s has an unsupported version.", file));
+            }
+
+            long documentCount = input.readLong();
+            Field[] fields = new Field[(int)readVarLong(input)];
+            for (int f = 0; f < fields.length; ++f) {
+                byte[] name = new byte[(int)readVarLong(input)];
+                input.readFully(name);
+                Histogram documentLengths = Histogram.read(input);
+                Histogram termLengths = Histogram.read(input);
+                Histogram occurrenceLengths = Histogram.read(input);
+                long termCount = readVarLong(input);
+                if (termCount > Integer.MAX_VALUE - 8) {
+                    throw new IOException(String.format("TermStatistics: %d terms are too many to load.", termCount));
+                }
+                long[] keys = new long[(int)termCount];
+                long[] documentFrequencies = new long[keys.length];
+                long[] collectionFrequencies = new long[keys.length];
+                for (int i = 0; i < keys.length; ++i) {
+                    keys[i] = input.readLong();
+                    documentFrequencies[i] = readVarLong(input);
+                    collectionFrequencies[i] = readVarLong(input);
+                }
+                fields[f] = new Field(new String(name, StandardCharsets.UTF_8),
+                                      documentLengths, termLengths, occurrenceLengths,
+                                      keys, documentFrequencies, collectionFrequencies);
+            }
+            return new TermStatistics(documentCount, fields);
+        }
+    }
+
+
+    /**
+     * @return the key of term in the statistics.
+     */
+    public static long key(CharSequence term) {
+        // FNV-1a over the characters, then the MurmurHash3 finalizer.
+        long hash = 0xcbf29ce484222325L;
+        int length = term.length();
+        for (int i = 0; i < length; ++i) {
+            hash ^= term.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return ((long)Math.min(length, MAX_TERM_LENGTH) << 56) | (hash >>> 8);
+    }
+
+
+    /**
+     * @return the length of the terms with the given key, capped at 255.
+     */
+    public static int termLength(long key) {
+        return (int)(key >>> 56);
+    }
+
+
+    public long documentCount() {
+        return documentCount;
+    }
+
+
+    public int fieldCount() {
+        return fields.length;
+    }
+
+
+    public String fieldName(int field) {
+        return fields[field].name;
+    }
+
+
+    /**
+     * @return the index of the field with the given name, or -1 if there is none.
+     */
+    public int fieldIndex(String name) {
+        for (int f = 0; f < fields.length; ++f) {
+            if (fields[f].name.equals(name)) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * @return the number of distinct terms in field.
+     */
+    public long termCount(int field) {
+        return fields[field].keys.length;
+    }
+
+
+    /**
+     * @return the number of documents of field that contain term.
+     */
+    public long documentFrequency(int field, CharSequence term) {
+        int i = Arrays.binarySearch(fields[field].keys, key(term));
+        return i >= 0 ? fields[field].documentFrequencies[i] : 0;
+    }
+
+
+    /**
+     * @return the number of occurrences of term in field.
+     */
+    public long collectionFrequency(int field, CharSequence term) {
+        int i = Arrays.binarySearch(fields[field].keys, key(term));
+        return i >= 0 ? fields[field].collectionFrequencies[i] : 0;
+    }
+
+
+    /**
+     * @return the sum of the document frequencies of the terms of field, as Lucene's getSumDocFreq().
+     */
+    public long sumDocumentFrequency(int field) {
+        long sum = 0;
+        for (long frequency : fields[field].documentFrequencies) {
+            sum += frequency;
+        }
+        return sum;
+    }
+
+
+    /**
+     * @return the number of term occurrences in field, as Lucene's getSumTotalTermFreq().
+     */
+    public long sumCollectionFrequency(int field) {
+        return fields[field].documentLengths.weightedTotal();
+    }
+
+
+    public double averageDocumentLength(int field) {
+        return documentCount > 0 ? (double)sumCollectionFrequency(field) / documentCount : 0.0;
+    }
+
+
+    /**
+     * @return the number of documents by number of terms in field.
+     */
+    public Histogram documentLengths(int field) {
+        return fields[field].documentLengths;
+    }
+
+
+    /**
+     * @return the number of distinct terms of field by length.
+     */
+    public Histogram termLengths(int field) {
+        return fields[field].termLengths;
+    }
+
+
+    /**
+     * @return the number of term occurrences in field by term length.
+     */
+    public Histogram occurrenceLengths(int field) {
+        return fields[field].occurrenceLengths;
+    }
+
+
+    static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            output.write((int)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int)value);
+    }
+
+
+    static long readVarLong(DataInput input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (long)(b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("TermStatistics: malformed varint.");
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: TermStatistics <statistics file> [term ...]");
+            return;
+        }
+
+        TermStatistics statistics = read(args[0]);
+        System.out.println(String.format("Documents: %d", statistics.documentCount()));
+        for (int f = 0; f < statistics.fieldCount(); ++f) {
+            System.out.println(String.format("Field %s: %d terms, getSumDocFreq() %d, getSumTotalTermFreq() %d, average document length %f.",
+                    statistics.fieldName(f),
+                    statistics.termCount(f),
+                    statistics.sumDocumentFrequency(f),
+                    statistics.sumCollectionFrequency(f),
+                    statistics.averageDocumentLength(f)));
+            for (int i = 1; i < args.length; ++i) {
+                System.out.println(String.format("  %s: document frequency %d, collection frequency %d",
+                        args[i],
+                        statistics.documentFrequency(f, args[i]),
+                        statistics.collectionFrequency(f, args[i])));
+            }
+        }
+    }
+}
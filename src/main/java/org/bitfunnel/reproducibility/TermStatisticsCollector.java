@@ -0,0 +1,490 @@
+package org.bitfunnel.reproducibility;
+
+import com.martiansoftware.jsap.*;
+import it.unimi.di.big.mg4j.document.Document;
+import it.unimi.di.big.mg4j.document.DocumentIterator;
+import it.unimi.di.big.mg4j.document.DocumentSequence;
+import it.unimi.di.big.mg4j.index.DowncaseTermProcessor;
+import it.unimi.di.big.mg4j.index.NullTermProcessor;
+import it.unimi.di.big.mg4j.index.TermProcessor;
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.io.WordReader;
+import it.unimi.dsi.lang.MutableString;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Computes the TermStatistics of the chunk files of a manifest without building
+ * an index.
+ *
+ * <p>Threads take chunk files from the manifest and count, for each field, the
+ * document and collection frequency of every term key in primitive hash maps.
+ * When a thread's maps hold more than maxTerms keys, they are written to disk as
+ * a sorted run and cleared, so the vocabulary need not fit in the heap. At the
+ * end, each field's runs are merged, summing the counts of equal keys, and the
+ * fields are written to the statistics file.
+ */
+public class TermStatisticsCollector {
+    // Heap used per term key by the two maps of a field, at fastutil's default load factor.
+    static final long BYTES_PER_TERM = 64;
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final String[] chunkFiles;
+    private final String output;
+    private final TermProcessor termProcessor;
+    private final boolean mapped;
+    private FieldSchema schema = FieldSchema.DEFAULT;
+    private File spillDirectory;
+    private long maxTerms = 0;
+
+    // The sorted runs of each field, from all threads.
+    private List<List<File>> runs;
+
+
+    public TermStatisticsCollector(String manifest, String output, boolean downcase, boolean mapped) throws IOException {
+        this.chunkFiles = Files.readAllLines(Paths.get(manifest), Charset.defaultCharset()).toArray(new String[]{});
+        this.output = output;
+        this.termProcessor = downcase ? DowncaseTermProcessor.getInstance() : NullTermProcessor.getInstance();
+        this.mapped = mapped;
+        this.spillDirectory = new File(output).getAbsoluteFile().getParentFile();
+    }
+
+
+    public void setSchema(FieldSchema schema) {
+        this.schema = schema;
+    }
+
+
+    /**
+     * Sets the directory for sorted runs. Defaults to the directory of the output.
+     */
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = new File(spillDirectory);
+    }
+
+
+    /**
+     * Sets the number of term keys each thread holds before writing them to a
+     * sorted run. Defaults to half the heap, divided among the threads.
+     */
+    public void setMaxTerms(long maxTerms) {
+        this.maxTerms = maxTerms;
+    }
+
+
+    public void run(int threadCount) throws Exception {
+        System.out.println(String.format("Collecting term statistics of %d chunk files with %d threads.", chunkFiles.length, threadCount));
+        long startTime = System.nanoTime();
+        long threadMaxTerms = maxTerms > 0 ?
+                maxTerms :
+                Math.max(1024, Runtime.getRuntime().maxMemory() / 2 / threadCount / BYTES_PER_TERM);
+
+        int fieldCount = schema.fieldCount();
+        runs = new ArrayList<>(fieldCount);
+        for (int f = 0; f < fieldCount; ++f) {
+            runs.add(new ArrayList<>());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            // Each thread counts into its own accumulator.
+            AtomicInteger nextChunk = new AtomicInteger();
+            List<Future<Accumulator>> threads = new ArrayList<>(threadCount);
+            for (int t = 0; t < threadCount; ++t) {
+                threads.add(executor.submit(() -> {
+                    Accumulator accumulator = new Accumulator(fieldCount, threadMaxTerms);
+                    int chunk;
+                    while ((chunk = nextChunk.getAndIncrement()) < chunkFiles.length) {
+                        System.out.println(String.format("  %s", chunkFiles[chunk]));
+                        accumulator.add(ParallelIndexBuilder.openChunk(chunkFiles[chunk], schema, mapped));
+                    }
+                    accumulator.spill();
+                    return accumulator;
+                }));
+            }
+            List<Accumulator> accumulators = new ArrayList<>(threadCount);
+            for (Future<Accumulator> thread : threads) {
+                accumulators.add(thread.get());
+            }
+
+            long scanTime = System.nanoTime();
+            int runCount = 0;
+            for (List<File> fieldRuns : runs) {
+                runCount += fieldRuns.size();
+            }
+            System.out.println(String.format("Scanned chunk files in %f seconds and wrote %d sorted runs.",
+                    (scanTime - startTime) * 1e-9,
+                    runCount));
+
+            // Merge the fields' runs concurrently, then write the fields in order.
+            List<Future<MergedField>> merged = new ArrayList<>(fieldCount);
+            for (int f = 0; f < fieldCount; ++f) {
+                final int field = f;
+                merged.add(executor.submit(() -> merge(field, accumulators)));
+            }
+
+            long documentCount = 0;
+            for (Accumulator accumulator : accumulators) {
+                documentCount += accumulator.documentCount;
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output), BUFFER_SIZE))) {
+                out.write(TermStatistics.MAGIC);
+                out.write(TermStatistics.VERSION);
+                out.writeLong(documentCount);
+                TermStatistics.writeVarLong(out, fieldCount);
+                for (int f = 0; f < fieldCount; ++f) {
+                    MergedField field = merged.get(f).get();
+                    byte[] name = schema.fieldName(f).getBytes(StandardCharsets.UTF_8);
+                    TermStatistics.writeVarLong(out, name.length);
+                    out.write(name);
+                    field.documentLengths.write(out);
+                    field.termLengths.write(out);
+                    field.occurrenceLengths.write(out);
+                    TermStatistics.writeVarLong(out, field.termCount);
+                    try (InputStream terms = new FileInputStream(field.terms)) {
+                        copy(terms, out);
+                    }
+                    Files.delete(field.terms.toPath());
+                    System.out.println(String.format("Field %s: %d terms.", schema.fieldName(f), field.termCount));
+                }
+            }
+
+            System.out.println(String.format("Wrote statistics of %d documents to %s in %f seconds.",
+                    documentCount,
+                    output,
+                    (System.nanoTime() - scanTime) * 1e-9));
+        }
+        finally {
+            executor.shutdown();
+            for (List<File> fieldRuns : runs) {
+                for (File run : fieldRuns) {
+                    run.delete();
+                }
+            }
+        }
+
+        System.out.println(String.format("Total time: %f seconds.", (System.nanoTime() - startTime) * 1e-9));
+    }
+
+
+    /**
+     * One thread's counts.
+     */
+    private class Accumulator {
+        final int fieldCount;
+        final long maxTerms;
+        final Long2LongOpenHashMap[] documentFrequencies;
+        final Long2LongOpenHashMap[] collectionFrequencies;
+        final Int2LongOpenHashMap[] documentLengths;
+        final Int2LongOpenHashMap[] occurrenceLengths;
+        long documentCount = 0;
+
+        // Term key -> occurrences in the current document.
+        final Long2IntOpenHashMap documentTerms = new Long2IntOpenHashMap();
+        final MutableString word = new MutableString();
+        final MutableString nonWord = new MutableString();
+
+        Accumulator(int fieldCount, long maxTerms) {
+            this.fieldCount = fieldCount;
+            this.maxTerms = maxTerms;
+            documentFrequencies = new Long2LongOpenHashMap[fieldCount];
+            collectionFrequencies = new Long2LongOpenHashMap[fieldCount];
+            documentLengths = new Int2LongOpenHashMap[fieldCount];
+            occurrenceLengths = new Int2LongOpenHashMap[fieldCount];
+            for (int f = 0; f < fieldCount; ++f) {
+                documentFrequencies[f] = new Long2LongOpenHashMap();
+                collectionFrequencies[f] = new Long2LongOpenHashMap();
+                documentLengths[f] = new Int2LongOpenHashMap();
+                occurrenceLengths[f] = new Int2LongOpenHashMap();
+            }
+        }
+
+        void add(DocumentSequence sequence) throws IOException {
+            try {
+                DocumentIterator iterator = sequence.iterator();
+                Document document;
+                while ((document = iterator.nextDocument()) != null) {
+                    for (int f = 0; f < fieldCount; ++f) {
+                        addField(f, document);
+                    }
+                    document.close();
+                    ++documentCount;
+
+                    long terms = 0;
+                    for (int f = 0; f < fieldCount; ++f) {
+                        terms += documentFrequencies[f].size();
+                    }
+                    if (terms > maxTerms) {
+                        spill();
+                    }
+                }
+                iterator.close();
+            }
+            finally {
+                sequence.close();
+            }
+        }
+
+        private void addField(int field, Document document) throws IOException {
+            WordReader wordReader = document.wordReader(field);
+            wordReader.setReader((Reader)document.content(field));
+            int length = 0;
+            documentTerms.clear();
+            while (wordReader.next(word, nonWord)) {
+                if (word.length() == 0 || !termProcessor.processTerm(word)) {
+                    continue;
+                }
+                documentTerms.addTo(TermStatistics.key(word), 1);
+                occurrenceLengths[field].addTo(Math.min(word.length(), TermStatistics.MAX_TERM_LENGTH), 1);
+                ++length;
+            }
+            documentLengths[field].addTo(length, 1);
+
+            Long2LongOpenHashMap df = documentFrequencies[field];
+            Long2LongOpenHashMap cf = collectionFrequencies[field];
+            for (Long2IntMap.Entry entry : documentTerms.long2IntEntrySet()) {
+                df.addTo(entry.getLongKey(), 1);
+                cf.addTo(entry.getLongKey(), entry.getIntValue());
+            }
+        }
+
+        /**
+         * Writes the term counts of each field to a sorted run and clears them.
+         */
+        void spill() throws IOException {
+            for (int f = 0; f < fieldCount; ++f) {
+                Long2LongOpenHashMap df = documentFrequencies[f];
+                if (df.isEmpty()) {
+                    continue;
+                }
+                long[] keys = df.keySet().toLongArray();
+                Arrays.sort(keys);
+
+                File run = File.createTempFile("terms", ".run", spillDirectory);
+                run.deleteOnExit();
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+                    for (long key : keys) {
+                        out.writeLong(key);
+                        out.writeLong(df.get(key));
+                        out.writeLong(collectionFrequencies[f].get(key));
+                    }
+                }
+                synchronized (runs) {
+                    runs.get(f).add(run);
+                }
+
+                // Replace rather than clear(), which keeps the grown tables.
+                documentFrequencies[f] = new Long2LongOpenHashMap();
+                collectionFrequencies[f] = new Long2LongOpenHashMap();
+            }
+        }
+    }
+
+
+    /**
+     * The statistics of one field. Its terms are in a temporary file, in the
+     * format of the statistics file.
+     */
+    private static class MergedField {
+        final TermStatistics.Histogram documentLengths;
+        final TermStatistics.Histogram termLengths;
+        final TermStatistics.Histogram occurrenceLengths;
+        final long termCount;
+        final File terms;
+
+        MergedField(TermStatistics.Histogram documentLengths,
+                    TermStatistics.Histogram termLengths,
+                    TermStatistics.Histogram occurrenceLengths,
+                    long termCount,
+                    File terms) {
+            this.documentLengths = documentLengths;
+            this.termLengths = termLengths;
+            this.occurrenceLengths = occurrenceLengths;
+            this.termCount = termCount;
+            this.terms = terms;
+        }
+    }
+
+
+    /**
+     * The next record of a sorted run.
+     */
+    private static class RunReader implements AutoCloseable {
+        final DataInputStream input;
+        long key;
+        long documentFrequency;
+        long collectionFrequency;
+
+        RunReader(File run) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+        }
+
+        /**
+         * @return false at the end of the run.
+         */
+        boolean next() throws IOException {
+            try {
+                key = input.readLong();
+            }
+            catch (EOFException e) {
+                return false;
+            }
+            documentFrequency = input.readLong();
+            collectionFrequency = input.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+
+    /**
+     * Merges the runs of field, summing the counts of equal keys.
+     */
+    private MergedField merge(int field, List<Accumulator> accumulators) throws IOException {
+        Int2LongOpenHashMap documentLengths = new Int2LongOpenHashMap();
+        Int2LongOpenHashMap occurrenceLengths = new Int2LongOpenHashMap();
+        for (Accumulator accumulator : accumulators) {
+            add(documentLengths, accumulator.documentLengths[field]);
+            add(occurrenceLengths, accumulator.occurrenceLengths[field]);
+        }
+        Int2LongOpenHashMap termLengths = new Int2LongOpenHashMap();
+
+        File terms = File.createTempFile("terms", ".merged", spillDirectory);
+        terms.deleteOnExit();
+        long termCount = 0;
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> Long.compare(a.key, b.key));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(terms), BUFFER_SIZE))) {
+            for (File run : runs.get(field)) {
+                RunReader reader = new RunReader(run);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+                else {
+                    reader.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                long key = queue.peek().key;
+                long documentFrequency = 0;
+                long collectionFrequency = 0;
+                while (!queue.isEmpty() && queue.peek().key == key) {
+                    RunReader reader = queue.poll();
+                    documentFrequency += reader.documentFrequency;
+                    collectionFrequency += reader.collectionFrequency;
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                    else {
+                        reader.close();
+                    }
+                }
+                out.writeLong(key);
+                TermStatistics.writeVarLong(out, documentFrequency);
+                TermStatistics.writeVarLong(out, collectionFrequency);
+                termLengths.addTo(TermStatistics.termLength(key), 1);
+                ++termCount;
+            }
+        }
+        finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+        }
+
+        return new MergedField(histogram(documentLengths),
+                               histogram(termLengths),
+                               histogram(occurrenceLengths),
+                               termCount,
+                               terms);
+    }
+
+
+    private static void add(Int2LongOpenHashMap total, Int2LongOpenHashMap counts) {
+        for (Int2LongMap.Entry entry : counts.int2LongEntrySet()) {
+            total.addTo(entry.getIntKey(), entry.getLongValue());
+        }
+    }
+
+
+    private static TermStatistics.Histogram histogram(Int2LongOpenHashMap counts) {
+        int[] values = counts.keySet().toIntArray();
+        Arrays.sort(values);
+        long[] result = new long[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            result[i] = counts.get(values[i]);
+        }
+        return new TermStatistics.Histogram(values, result);
+    }
+
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            output.write(buffer, 0, n);
+        }
+    }
+
+
+    public static void main( String arg[] ) throws Exception {
+        SimpleJSAP jsap = new SimpleJSAP( TermStatisticsCollector.class.getName(),
+                "Computes the term statistics of a manifest of BitFunnel chunk files: document and collection frequencies, document lengths and term lengths.",
+                new Parameter[] {
+                        new FlaggedOption( "threads", JSAP.INTSIZE_PARSER, Integer.toString(Runtime.getRuntime().availableProcessors()), JSAP.NOT_REQUIRED, 't', "threads", "The number of threads to use." ),
+                        new Switch( "downcase", JSAP.NO_SHORTFLAG, "downcase", "Downcase terms, as the downcasing term processor of mg4j." ),
+                        new Switch( "mapped", 'm', "mapped", "Memory-map chunk files." ),
+                        new FlaggedOption( "fields", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "fields", "The field schema, a file or an inline list such as \"0:text,1:title,2:anchors:ignored\". Defaults to text and title." ),
+                        new FlaggedOption( "maxTerms", JSAP.LONGSIZE_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "max-terms", "The number of term keys each thread holds before writing a sorted run (0 for half the heap, divided among the threads)." ),
+                        new FlaggedOption( "spillDirectory", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "spill-directory", "The directory for sorted runs. Defaults to the directory of the output." ),
+                        new UnflaggedOption( "manifest", JSAP.STRING_PARSER, JSAP.REQUIRED, "The manifest file. One chunk file per line." ),
+                        new UnflaggedOption( "output", JSAP.STRING_PARSER, JSAP.REQUIRED, "The statistics file." ),
+                });
+
+        JSAPResult jsapResult = jsap.parse( arg );
+        if ( !jsap.messagePrinted() ) {
+            TermStatisticsCollector collector = new TermStatisticsCollector(
+                    jsapResult.getString( "manifest" ),
+                    jsapResult.getString( "output" ),
+                    jsapResult.getBoolean( "downcase" ),
+                    jsapResult.getBoolean( "mapped" ));
+            collector.setSchema(FieldSchema.parse(jsapResult.getString( "fields" )));
+            collector.setMaxTerms(jsapResult.getLong( "maxTerms" ));
+            if (jsapResult.contains( "spillDirectory" )) {
+                collector.setSpillDirectory(jsapResult.getString( "spillDirectory" ));
+            }
+            collector.run(jsapResult.getInt( "threads" ));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.bitfunnel.reproducibility;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Pins threads to CPUs. Java has no affinity API, so this works on Linux only,
+ * by handing the thread's kernel id from /proc/thread-self to taskset.
+ */
+public class ThreadAffinity {
+    /**
+     * Pins the calling thread to cpu.
+     *
+     * @return false if the thread could not be pinned, e.g. off Linux or
+     * without taskset.
+     */
+    public static boolean pinCurrentThread(int cpu) {
+        try {
+            // A link to "<pid>/task/<tid>".
+            Path self = Files.readSymbolicLink(Paths.get("/proc/thread-self"));
+            String tid = self.getFileName().toString();
+            Process taskset = new ProcessBuilder("taskset", "-p", "-c", Integer.toString(cpu), tid)
+                    .redirectErrorStream(true)
+                    .start();
+            // Drain taskset's report of the old and new affinity.
+            while (taskset.getInputStream().read() != -1) {
+            }
+            return taskset.waitFor() == 0;
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+
+    /**
+     * Parses a CPU list such as "0-3,8,10-11" into CPU numbers, in order.
+     */
+    public static int[] parseCpuList(String cpuList) {
+        List<Integer> cpus = new ArrayList<>();
+        for (String range : cpuList.split(",")) {
+            range = range.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            try {
+                int first = Integer.parseInt(dash < 0 ? range : range.substring(0, dash).trim());
+                int last = dash < 0 ? first : Integer.parseInt(range.substring(dash + 1).trim());
+                if (first < 0 || last < first) {
+                    throw new IllegalArgumentException(String.format("ThreadAffinity: bad CPU range \"%s\".", range));
+                }
+                for (int cpu = first; cpu <= last; ++cpu) {
+                    cpus.add(cpu);
+                }
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("ThreadAffinity: bad CPU range \"%s\".", range));
+            }
+        }
+        int[] result = new int[cpus.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = cpus.get(i);
+        }
+        return result;
+    }
+}
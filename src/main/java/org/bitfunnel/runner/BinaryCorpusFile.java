@@ -0,0 +1,100 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2016 Microsoft
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package org.bitfunnel.runner;
+
+import org.bitfunnel.reproducibility.BinaryChunkReader;
+import org.bitfunnel.reproducibility.BinaryTermDictionary;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Counterpart of CorpusFile for chunks in the binary format. Terms are looked
+ * up in the chunk's term dictionary, so each distinct term is decoded once per
+ * chunk instead of once per occurrence.
+ */
+public class BinaryCorpusFile {
+  BinaryChunkReader reader;
+
+
+  BinaryCorpusFile(InputStream inputStream) throws IOException
+  {
+    reader = new BinaryChunkReader(inputStream);
+  }
+
+
+  void process(IRawDocumentProcessor processor) throws IOException {
+    BinaryTermDictionary dictionary = reader.dictionary();
+
+    processor.openDocumentSet();
+    while (reader.nextDocument()) {
+      processor.openDocument(reader.documentId());
+      int streamId;
+      while ((streamId = reader.nextStream()) != -1) {
+        processor.openStream(streamName(streamId));
+        int termId;
+        while ((termId = reader.nextTerm()) != -1) {
+          int start = dictionary.byteStart(termId);
+          processor.term(dictionary.bytes(), start, dictionary.byteEnd(termId) - start);
+        }
+        processor.closeStream();
+      }
+      processor.closeDocument();
+    }
+    processor.closeDocumentSet();
+  }
+
+
+  // String processors get the dictionary's Strings, which are shared by
+  // every occurrence of a term.
+  void process(IDocumentProcessor processor) throws IOException {
+    BinaryTermDictionary dictionary = reader.dictionary();
+
+    processor.openDocumentSet();
+    while (reader.nextDocument()) {
+      processor.openDocument(reader.documentId());
+      int streamId;
+      while ((streamId = reader.nextStream()) != -1) {
+        processor.openStream(streamName(streamId));
+        int termId;
+        while ((termId = reader.nextTerm()) != -1) {
+          processor.term(dictionary.get(termId));
+        }
+        processor.closeStream();
+      }
+      processor.closeDocument();
+    }
+    processor.closeDocumentSet();
+  }
+
+
+  private static String streamName(int streamId) throws IOException {
+    if (streamId >= CorpusFile.STREAM_NAMES.length) {
+      throw new IOException(String.format("BinaryCorpusFile: stream id %d out of range.", streamId));
+    }
+    return CorpusFile.STREAM_NAMES[streamId];
+  }
+}
@@ -0,0 +1,330 @@
+package org.bitfunnel.runner;
+
+import org.bitfunnel.reproducibility.BinaryChunkReader;
+import org.bitfunnel.reproducibility.ChunkCompression;
+import org.bitfunnel.reproducibility.ChunkIndex;
+import org.bitfunnel.reproducibility.ReadAhead;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * Hands out the chunk files of a manifest to ingestion threads.
+ *
+ * <p>By default, files are dispatched largest first, so that the last files to
+ * start are the quickest to finish. Text chunk files larger than the split size
+ * are cut at document boundaries into ranges of about the split size, which are
+ * queued with the whole files. A thread that runs out of work takes the largest
+ * range left, so no thread is stuck with a long file while the others are idle.
+ * Binary chunks have no recognizable document boundaries and compressed chunks
+ * cannot be read from an offset, so neither is ever split.
+ *
+ * <p>In manifest order, files are dispatched whole and in order, as before.
+ *
+ * <p>With read-ahead, the next few tasks are opened through a ReadAhead as
+ * each task is handed out, so their I/O overlaps with parsing.
+ */
+class ChunkScheduler {
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A whole chunk file, or a range of its documents.
+     */
+    static class Task {
+        final String file;
+        // The document bytes [start, end) of the file, or -1 for the whole file.
+        final long start;
+        final long end;
+        final long size;
+        // Whether the file is a binary chunk, sniffed once when scheduling.
+        final boolean binary;
+        // The stream being read ahead, if any.
+        private InputStream prefetched = null;
+
+        Task(String file, long start, long end, long size, boolean binary) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.size = size;
+            this.binary = binary;
+        }
+
+        boolean isWholeFile() {
+            return start == -1;
+        }
+
+        /**
+         * Opens the task as a stream in the chunk format. A range is followed
+         * by the '\0' that ends a chunk, so it parses as a chunk of its own.
+         */
+        InputStream open() throws IOException {
+            if (prefetched != null) {
+                InputStream result = prefetched;
+                prefetched = null;
+                return result;
+            }
+            return openSource();
+        }
+
+        private InputStream openSource() throws IOException {
+            if (isWholeFile()) {
+                return ChunkCompression.open(file);
+            }
+            return new SequenceInputStream(new RangeInputStream(file, start, end),
+                                           new ByteArrayInputStream(new byte[] { 0 }));
+        }
+
+        @Override
+        public String toString() {
+            return isWholeFile() ? file : String.format("%s [%d, %d)", file, start, end);
+        }
+    }
+
+
+    private final ConcurrentLinkedQueue<Task> tasks;
+    private final int taskCount;
+
+    // Tasks opened through readAhead, in dispatch order.
+    private ReadAhead readAhead = null;
+    private int readAheadTasks = 0;
+    private final ArrayDeque<Task> opened = new ArrayDeque<>();
+
+
+    /**
+     * @param files the chunk files, in manifest order.
+     * @param splitBytes the size above which text chunks are split, or 0 to
+     *                   split at a quarter of an even share of the total size.
+     * @param manifestOrder dispatch whole files in manifest order instead.
+     */
+    ChunkScheduler(String[] files, int threadCount, long splitBytes, boolean manifestOrder) throws IOException {
+        List<Task> list = new ArrayList<>();
+        if (manifestOrder) {
+            for (String file : files) {
+                list.add(new Task(file, -1, -1, 0, BinaryChunkReader.isBinaryChunk(file)));
+            }
+        }
+        else {
+            long[] sizes = new long[files.length];
+            long totalBytes = 0;
+            for (int i = 0; i < files.length; ++i) {
+                sizes[i] = Paths.get(files[i]).toFile().length();
+                totalBytes += sizes[i];
+            }
+            if (splitBytes <= 0) {
+                splitBytes = Math.max(1, totalBytes / (4L * threadCount));
+            }
+
+            for (int i = 0; i < files.length; ++i) {
+                boolean binary = BinaryChunkReader.isBinaryChunk(files[i]);
+                if (sizes[i] > splitBytes &&
+                    !binary &&
+                    !ChunkCompression.isCompressed(files[i])) {
+                    split(files[i], sizes[i], splitBytes, list);
+                }
+                else {
+                    list.add(new Task(files[i], -1, -1, sizes[i], binary));
+                }
+            }
+
+            // Stable, so equal sizes stay in manifest order.
+            list.sort(Comparator.comparingLong((Task task) -> task.size).reversed());
+        }
+        tasks = new ConcurrentLinkedQueue<>(list);
+        taskCount = list.size();
+    }
+
+
+    /**
+     * Reads the next readAheadTasks tasks ahead of the threads that parse them.
+     * Set before the first call to next().
+     */
+    void setReadAhead(ReadAhead readAhead, int readAheadTasks) {
+        this.readAhead = readAhead;
+        this.readAheadTasks = readAheadTasks;
+    }
+
+
+    /**
+     * @return the next task, or null when there are none left.
+     */
+    Task next() {
+        if (readAhead == null) {
+            return tasks.poll();
+        }
+        synchronized (opened) {
+            // The task returned plus the ones read ahead.
+            while (opened.size() <= readAheadTasks) {
+                Task task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                task.prefetched = readAhead.open(task::openSource);
+                opened.add(task);
+            }
+            return opened.poll();
+        }
+    }
+
+
+    /**
+     * Hands out no more tasks, e.g. after a thread failed, and closes the
+     * streams read ahead for tasks not yet handed out.
+     */
+    void cancel() {
+        tasks.clear();
+        synchronized (opened) {
+            for (Task task : opened) {
+                if (task.prefetched != null) {
+                    try {
+                        task.prefetched.close();
+                    }
+                    catch (IOException e) {
+                        // Abandoned anyway.
+                    }
+                }
+            }
+            opened.clear();
+        }
+    }
+
+
+    int taskCount() {
+        return taskCount;
+    }
+
+
+    int remaining() {
+        synchronized (opened) {
+            return tasks.size() + opened.size();
+        }
+    }
+
+
+    /**
+     * Adds ranges of about splitBytes covering the documents of a text chunk file.
+     * Ranges end at the document offsets of the file's ChunkIndex, if it has one
+     * that matches, and otherwise where a scan finds a document boundary.
+     */
+    private static void split(String file, long fileSize, long splitBytes, List<Task> list) throws IOException {
+        // The last byte is the '\0' that ends the chunk.
+        long documentsEnd = fileSize - 1;
+        ChunkIndex index = ChunkIndex.forChunk(file);
+        if (index != null && index.length() == fileSize) {
+            long start = 0;
+            while (start < documentsEnd) {
+                long end = index.nextDocumentOffset(start + splitBytes);
+                list.add(new Task(file, start, end, end - start, false));
+                start = end;
+            }
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long start = 0;
+            while (start < documentsEnd) {
+                long end = start + splitBytes < documentsEnd ?
+                        nextDocumentBoundary(channel, start + splitBytes, documentsEnd) :
+                        documentsEnd;
+                list.add(new Task(file, start, end, end - start, false));
+                start = end;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the offset of the first document that starts at or after from,
+     * or end if there is none before end.
+     *
+     * <p>In the text format, a document ends with the '\0' of its last term or
+     * stream id, then the '\0' closing the stream, then the '\0' closing the
+     * document. Terms and ids are never empty, so three '\0' after a non-zero
+     * byte only occur at the end of a document.
+     */
+    static long nextDocumentBoundary(FileChannel channel, long from, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        // Start one byte early, so a run of zeros starting at from is seen
+        // together with the byte before it.
+        long position = Math.max(0, from - 1);
+        boolean afterNonZero = false;
+        int zeros = 0;
+        while (position < end) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; ++i) {
+                if (buffer.get(i) != 0) {
+                    afterNonZero = true;
+                    zeros = 0;
+                }
+                else if (afterNonZero && ++zeros == 3) {
+                    return Math.min(end, position + i + 1);
+                }
+            }
+            position += n;
+        }
+        return end;
+    }
+
+
+    /**
+     * Reads the bytes [start, end) of a file.
+     */
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+        // Reused by every call to read().
+        private final ByteBuffer single = ByteBuffer.allocate(1);
+
+        RangeInputStream(String file, long start, long end) throws IOException {
+            this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            single.clear();
+            if (channel.read(single, position) <= 0) {
+                return -1;
+            }
+            ++position;
+            return single.get(0) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            length = (int)Math.min(length, end - position);
+            int n = channel.read(ByteBuffer.wrap(bytes, offset, length), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
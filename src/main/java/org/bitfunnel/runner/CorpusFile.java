@@ -24,24 +24,56 @@ SOFTWARE.
 
 package org.bitfunnel.runner;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Parses a BitFunnel chunk in the text format and reports its contents to an
+ * IRawDocumentProcessor, or through an adapter, to an IDocumentProcessor.
+ *
+ * Input is read into a large buffer that is reused for the whole chunk. Each
+ * token is found by scanning for its terminating '\0' eight bytes at a time,
+ * and terms are handed to the processor as slices of the buffer.
+ */
+public class CorpusFile {
+  static final int BUFFER_SIZE = 1024 * 1024;
 
+  // Stream ids as reported to IDocumentProcessor.openStream().
+  static final String[] STREAM_NAMES = new String[256];
+  static {
+    for (int i = 0; i < STREAM_NAMES.length; ++i) {
+      STREAM_NAMES[i] = String.format("%02x", i);
+    }
+  }
+
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGH_BITS = 0x8080808080808080L;
 
-public class CorpusFile {
   InputStream inputStream;
-  int currentByte;
+
+  // Unread input is buffer[position] to buffer[limit]. The buffer only grows
+  // if a single token does not fit.
+  private byte[] buffer = new byte[BUFFER_SIZE];
+  private ByteBuffer words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+  private int position = 0;
+  private int limit = 0;
 
 
   CorpusFile(InputStream inputStream)
   {
     this.inputStream = inputStream;
-    currentByte = -1;
   }
 
 
-  void process(IDocumentProcessor processor) {
+  void process(IDocumentProcessor processor) throws IOException {
+    process(new StringDocumentProcessorAdapter(processor));
+  }
+
+
+  void process(IRawDocumentProcessor processor) throws IOException {
     processor.openDocumentSet();
     while (peek() != 0)
     {
@@ -52,22 +84,18 @@ public class CorpusFile {
   }
 
 
-  void processDocument(IDocumentProcessor processor) {
+  void processDocument(IRawDocumentProcessor processor) throws IOException {
     // Read document Id.
-    Long docId = 0L;
-    for (int i = 0; i < 16; ++i) {
-      docId = docId << 4;
-
-      int byteValue = get();
-      if (byteValue >= '0' && byteValue <= '9') {
-        docId |= (byteValue - '0');
-      } else if (byteValue >= 'a' && byteValue <= 'f') {
-        docId |= 10 + (byteValue - 'a');
-      } else {
-        // TODO: throw error.
-      }
+    int end = findEnd();
+    if (end - position != 16) {
+      throw new IOException("CorpusFile: expected 16 hex digit document id.");
     }
-    consume(0);
+    long docId = 0L;
+    for (int i = position; i < end; ++i) {
+      docId = (docId << 4) | hexValue(buffer[i]);
+    }
+    position = end + 1;
+
     processor.openDocument(docId);
     while (peek() != 0)
     {
@@ -78,65 +106,114 @@ public class CorpusFile {
   }
 
 
-  void processStream(IDocumentProcessor processor) {
-    processor.openStream(parseTerm());
+  void processStream(IRawDocumentProcessor processor) throws IOException {
+    int end = findEnd();
+    if (end - position != 2) {
+      throw new IOException("CorpusFile: expected 2 hex digit stream id.");
+    }
+    processor.openStream(STREAM_NAMES[(hexValue(buffer[position]) << 4) | hexValue(buffer[position + 1])]);
+    position = end + 1;
+
     while (peek() != 0)
     {
-      processor.term(parseTerm());
+      end = findEnd();
+      processor.term(buffer, position, end - position);
+      position = end + 1;
     }
     consume(0);
     processor.closeStream();
   }
 
 
-  String parseTerm()
-  {
-    ByteArrayOutputStream builder = new ByteArrayOutputStream();
-    while (peek() != 0) {
-      if (peek() == -1) {
-        throw new RuntimeException("Attempted read past end of stream.");
+  /**
+   * Returns the index in buffer of the first '\0' at or after position,
+   * reading more input as needed.
+   */
+  private int findEnd() throws IOException {
+    int i = position;
+    while (true) {
+      // Test eight bytes at a time. The expression below sets the high bit
+      // of every zero byte. Bytes above a zero byte may also get their high
+      // bit set, so only the lowest one is meaningful.
+      while (i + 8 <= limit) {
+        long word = words.getLong(i);
+        long zeros = (word - ONES) & ~word & HIGH_BITS;
+        if (zeros != 0) {
+          return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+        }
+        i += 8;
+      }
+      while (i < limit) {
+        if (buffer[i] == 0) {
+          return i;
+        }
+        ++i;
       }
 
-      builder.write((byte)get());
+      int scanned = i - position;
+      if (!fill()) {
+        throw new IOException("CorpusFile: unexpected end of file.");
+      }
+      i = position + scanned;
     }
-    // consume zero at end of term.
-    consume(0);
+  }
+
+
+  /**
+   * Moves unread input to the start of buffer, growing it if it is full,
+   * and reads more input after it.
+   * @return false if the input has no more bytes.
+   */
+  private boolean fill() throws IOException {
+    int unread = limit - position;
+    if (unread == buffer.length) {
+      byte[] larger = new byte[buffer.length * 2];
+      System.arraycopy(buffer, position, larger, 0, unread);
+      buffer = larger;
+      words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    else {
+      System.arraycopy(buffer, position, buffer, 0, unread);
+    }
+    position = 0;
+    limit = unread;
 
-    return builder.toString();
+    int n = inputStream.read(buffer, limit, buffer.length - limit);
+    if (n == -1) {
+      return false;
+    }
+    limit += n;
+    return true;
   }
 
 
-  private void consume(int expected)
-  {
-    if (expected != (int) get()) {
-      throw new RuntimeException("Expected " + (int)expected);
+  private static int hexValue(byte c) throws IOException {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    } else if (c >= 'a' && c <= 'f') {
+      return 10 + (c - 'a');
+    } else {
+      throw new IOException("CorpusFile: expected hex digit.");
     }
   }
 
 
-  private int peek()
+  private void consume(int expected) throws IOException
   {
-    try {
-      if (currentByte == -1) {
-        currentByte = inputStream.read();
-      }
+    if (peek() != expected) {
+      throw new IOException("CorpusFile: expected " + expected);
     }
-    catch (IOException e)
-    {
-      currentByte = -1;
-    }
-    return currentByte;
+    ++position;
   }
 
 
-  private int get()
+  private int peek() throws IOException
   {
-    int result = peek();
-    if (result == -1) {
-      throw new RuntimeException("Attempted read past end of stream.");
+    while (position == limit) {
+      if (!fill()) {
+        return -1;
+      }
     }
-    currentByte = -1;
-
-    return (byte)result;
+    return buffer[position] & 0xff;
   }
 }
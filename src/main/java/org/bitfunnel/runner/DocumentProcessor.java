@@ -7,8 +7,9 @@ import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriter;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
-public class DocumentProcessor implements IDocumentProcessor {
+public class DocumentProcessor implements IRawDocumentProcessor {
     IndexWriter writer;
     Document currentDocument;
     StringBuilder currentString;
@@ -26,7 +27,7 @@ public class DocumentProcessor implements IDocumentProcessor {
     }
 
     @Override
-    public void openDocument(Long documentId) {
+    public void openDocument(long documentId) {
         currentDocument.clear();
         // System.out.println("openDocument " + documentId);
         Field field = new StoredField("id", documentId);
@@ -41,9 +42,17 @@ public class DocumentProcessor implements IDocumentProcessor {
     }
 
     @Override
-    public void term(String term) {
-        // System.out.println("term: " + term);
-        currentString.append(" " + term);
+    public void term(byte[] bytes, int offset, int length) {
+        currentString.append(' ');
+        int end = offset + length;
+        for (int i = offset; i < end; ++i) {
+            if (bytes[i] < 0) {
+                // Not ascii. Decode the rest of the term properly.
+                currentString.append(new String(bytes, i, end - i, StandardCharsets.UTF_8));
+                break;
+            }
+            currentString.append((char)bytes[i]);
+        }
     }
 
     @Override
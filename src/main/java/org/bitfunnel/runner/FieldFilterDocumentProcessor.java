@@ -0,0 +1,62 @@
+package org.bitfunnel.runner;
+
+import org.bitfunnel.reproducibility.FieldSchema;
+
+/**
+ * Forwards to another IRawDocumentProcessor only the streams of the indexed
+ * fields of a FieldSchema. Streams keep their hex names as Lucene field names.
+ */
+public class FieldFilterDocumentProcessor implements IRawDocumentProcessor {
+  private final IRawDocumentProcessor processor;
+  private final FieldSchema schema;
+  // True between openStream() and closeStream() of a stream that is not forwarded.
+  private boolean skipping = false;
+
+  public FieldFilterDocumentProcessor(IRawDocumentProcessor processor, FieldSchema schema) {
+    this.processor = processor;
+    this.schema = schema;
+  }
+
+  @Override
+  public void openDocumentSet() {
+    processor.openDocumentSet();
+  }
+
+  @Override
+  public void openDocument(long documentId) {
+    processor.openDocument(documentId);
+  }
+
+  @Override
+  public void openStream(String name) {
+    skipping = !schema.isIndexed(Integer.parseInt(name, 16));
+    if (!skipping) {
+      processor.openStream(name);
+    }
+  }
+
+  @Override
+  public void term(byte[] bytes, int offset, int length) {
+    if (!skipping) {
+      processor.term(bytes, offset, length);
+    }
+  }
+
+  @Override
+  public void closeStream() {
+    if (!skipping) {
+      processor.closeStream();
+    }
+    skipping = false;
+  }
+
+  @Override
+  public void closeDocument() {
+    processor.closeDocument();
+  }
+
+  @Override
+  public void closeDocumentSet() {
+    processor.closeDocumentSet();
+  }
+}
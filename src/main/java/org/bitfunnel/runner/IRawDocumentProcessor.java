@@ -0,0 +1,22 @@
+package org.bitfunnel.runner;
+
+/**
+ * Receives the contents of a chunk without per-document or per-term
+ * allocation. Document ids are primitive longs. Terms are utf-8 byte
+ * slices of the parser's buffer, which are only valid during the call to
+ * term(). See IDocumentProcessor for the String based contract and
+ * StringDocumentProcessorAdapter to drive one from a raw source.
+ */
+public interface IRawDocumentProcessor {
+  void openDocumentSet();
+  void openDocument(long documentId);
+
+  /**
+   * @param name the stream id as two hex digits. The same String is passed for every use of a stream id.
+   */
+  void openStream(String name);
+  void term(byte[] bytes, int offset, int length);
+  void closeStream();
+  void closeDocument();
+  void closeDocumentSet();
+}
@@ -1,40 +1,83 @@
 package org.bitfunnel.runner;
 
+import com.martiansoftware.jsap.*;
 import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MMapDirectory;
+import org.bitfunnel.reproducibility.FieldSchema;
+import org.bitfunnel.reproducibility.IngestionLedger;
+import org.bitfunnel.reproducibility.IngestionMetrics;
+import org.bitfunnel.reproducibility.ReadAhead;
+import org.bitfunnel.reproducibility.LuceneIndex;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 
 public class IndexBuilder {
-    public static void main(String[] args) throws IOException, InterruptedException {
-        if (args.length != 3) {
-            System.out.println("Usage: [index directory] [manifest] [thread count");
+    public static void main(String[] args) throws Exception {
+        SimpleJSAP jsap = new SimpleJSAP( IndexBuilder.class.getName(),
+                "Builds a Lucene index from a manifest of BitFunnel chunk files.",
+                new Parameter[] {
+                        new Switch( "pretokenized", 'p', "pretokenized", "Index chunk terms as is, without an analyzer. Fields index documents only, without frequencies, positions or norms." ),
+                        new Switch( "shards", 's', "shards", "Give each thread its own IndexWriter and index shard, in a subdirectory of the index directory." ),
+                        new Switch( "merge", 'M', "merge", "With --shards, combine the shards into the index directory with addIndexes() and delete them." ),
+                        new FlaggedOption( "ramBuffer", JSAP.DOUBLE_PARSER, Double.toString(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB), JSAP.NOT_REQUIRED, 'r', "ram-buffer", "The RAM buffer size of each IndexWriter, in MB." ),
+                        new FlaggedOption( "csv", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "csv", "A CSV file to which a line of results is appended. Running once per thread count gives the scaling curve." ),
+                        new Switch( "incremental", 'i', "incremental", "Append the chunk files not yet in <indexDirectory>.ledger to the existing index, and add them to the ledger." ),
+                        new Switch( "manifestOrder", JSAP.NO_SHORTFLAG, "manifest-order", "Dispatch whole chunk files in manifest order instead of largest first." ),
+                        new FlaggedOption( "splitBytes", JSAP.LONGSIZE_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "split-bytes", "Split text chunk files larger than this at document boundaries (0 for a quarter of each thread's share of the manifest)." ),
+                        new FlaggedOption( "readAhead", JSAP.INTSIZE_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "read-ahead", "The number of chunk files and ranges to read ahead of the ingestion threads (0 to read on the ingestion threads)." ),
+                        new FlaggedOption( "ioThreads", JSAP.INTSIZE_PARSER, "2", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "io-threads", "The number of threads reading ahead." ),
+                        new FlaggedOption( "fields", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "fields", "A field schema, a file or an inline list such as \"0:text,1:title,2:anchors:ignored\". Only streams of indexed fields are ingested. Defaults to every stream." ),
+                        new Switch( "metrics", JSAP.NO_SHORTFLAG, "metrics", "Sample ingestion throughput, queue depth and per-thread busy time into <indexDirectory>.metrics.csv and <indexDirectory>.metrics.threads.csv." ),
+                        new FlaggedOption( "metricsInterval", JSAP.LONG_PARSER, "1000", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "metrics-interval", "The metrics sampling interval, in milliseconds." ),
+                        new UnflaggedOption( "indexDirectory", JSAP.STRING_PARSER, JSAP.REQUIRED, "The index directory." ),
+                        new UnflaggedOption( "manifest", JSAP.STRING_PARSER, JSAP.REQUIRED, "The manifest file. One chunk file per line." ),
+                        new UnflaggedOption( "threads", JSAP.INTSIZE_PARSER, JSAP.REQUIRED, "The number of threads to use." ),
+                });
+
+        JSAPResult jsapResult = jsap.parse( args );
+        if ( jsap.messagePrinted() ) return;
+
+        String indexDirectory = jsapResult.getString( "indexDirectory" );
+        String manifestFilename = jsapResult.getString( "manifest" );
+        int threadCount = jsapResult.getInt( "threads" );
+        boolean pretokenized = jsapResult.getBoolean( "pretokenized" );
+        boolean sharded = jsapResult.getBoolean( "shards" );
+        boolean merge = jsapResult.getBoolean( "merge" );
+        double ramBufferMB = jsapResult.getDouble( "ramBuffer" );
+        IngestionMetrics metrics = jsapResult.getBoolean( "metrics" ) ?
+                new IngestionMetrics(metricsFile(indexDirectory), jsapResult.getLong( "metricsInterval" )) :
+                new IngestionMetrics();
+        FieldSchema schema = jsapResult.contains( "fields" ) ? FieldSchema.parse(jsapResult.getString( "fields" )) : null;
+        if (jsapResult.getBoolean( "incremental" ) && sharded && !merge) {
+            // Unmerged shards are rewritten by every run.
+            System.out.println("--incremental requires --merge with --shards.");
             return;
         }
 
-        String indexDirectory = args[0];
-        String manifestFilename = args[1];
-        int threadCount = Integer.parseInt(args[2]);
-
         // Lucene setup.
         // We use MMapDirectory instead of RAMDirectory because Lucene documentation recommends MMapDirectory for better
         // performance with "large" (> 100MB) indicies.
@@ -47,64 +90,325 @@ public class IndexBuilder {
         ExecutorService executor = Executors.newFixedThreadPool(threadCount);
         ExecutorCompletionService completionService = new ExecutorCompletionService(executor);
 
-        ingestDocuments(manifestFilename, dir, threadCount, completionService);
+        String[] chunkFiles = getLinesFromFile(manifestFilename);
+        IngestionLedger ledger = null;
+        if (jsapResult.getBoolean( "incremental" )) {
+            ledger = new IngestionLedger(IngestionLedger.path(indexDirectory));
+            if (ledger.isEmpty() &&
+                (DirectoryReader.indexExists(dir) || LuceneIndex.readShardCount(Paths.get(indexDirectory)) > 0)) {
+                // Without a ledger, every chunk file would be ingested again.
+                executor.shutdownNow();
+                dir.close();
+                throw new IOException(String.format("IndexBuilder: %s has an index but no ledger %s. Rebuild it without --incremental.",
+                        indexDirectory,
+                        IngestionLedger.path(indexDirectory)));
+            }
+            String[] newFiles = ledger.newFiles(chunkFiles);
+            System.out.println(String.format("%d of %d chunk files are new. The index holds %d documents from %d chunk files.",
+                    newFiles.length,
+                    chunkFiles.length,
+                    ledger.documentCount(),
+                    ledger.entries().size()));
+            chunkFiles = newFiles;
+            if (chunkFiles.length == 0) {
+                executor.shutdownNow();
+                dir.close();
+                return;
+            }
+        }
+
+        long ingestStartTime = System.currentTimeMillis();
+        ConcurrentHashMap<String, LongAdder> documentsPerFile = new ConcurrentHashMap<>();
+        ChunkScheduler scheduler = new ChunkScheduler(chunkFiles,
+                                                      threadCount,
+                                                      jsapResult.getLong( "splitBytes" ),
+                                                      jsapResult.getBoolean( "manifestOrder" ));
+        ReadAhead readAhead = null;
+        if (jsapResult.getInt( "readAhead" ) > 0) {
+            readAhead = new ReadAhead(jsapResult.getInt( "ioThreads" ));
+            scheduler.setReadAhead(readAhead, jsapResult.getInt( "readAhead" ));
+            metrics.setIoWait(readAhead::ioWaitNanos);
+        }
+        long documentCount;
+        try {
+            documentCount = ingestDocuments(scheduler,
+                                            dir,
+                                            Paths.get(indexDirectory),
+                                            threadCount,
+                                            pretokenized,
+                                            sharded,
+                                            ledger != null,
+                                            ramBufferMB,
+                                            schema,
+                                            metrics,
+                                            documentsPerFile,
+                                            completionService);
+        }
+        catch (IOException e) {
+            // The worker threads are not daemons, so stop them before exiting.
+            metrics.close();
+            if (readAhead != null) {
+                readAhead.close();
+            }
+            executor.shutdownNow();
+            dir.close();
+            throw e;
+        }
+        long ingestDoneTime = System.currentTimeMillis();
+        metrics.close();
+        if (readAhead != null) {
+            System.out.println(String.format("Ingestion threads waited %f seconds on read-ahead I/O.",
+                    readAhead.ioWaitNanos() * 1e-9));
+            readAhead.close();
+        }
+
+        if (sharded && merge) {
+            mergeShards(dir, Paths.get(indexDirectory), threadCount, ledger != null, ramBufferMB);
+        }
+        if (ledger != null) {
+            // The new documents are committed, so record their files. The
+            // shared writer counts the documents already in the index too.
+            documentCount = 0;
+            for (String file : chunkFiles) {
+                LongAdder count = documentsPerFile.get(file);
+                ledger.append(file, count == null ? 0 : count.sum());
+                documentCount += count == null ? 0 : count.sum();
+            }
+        }
+        long doneTime = System.currentTimeMillis();
+
         System.out.println("Before ExecutorService shutdownNow().");
         executor.shutdownNow();
         System.out.println("ExecutorService shutdownNow() returned.");
+
+        double ingestSeconds = (ingestDoneTime - ingestStartTime) / 1000.0;
+        double totalSeconds = (doneTime - ingestStartTime) / 1000.0;
+        long indexBytes = directorySize(Paths.get(indexDirectory));
+        System.out.println(String.format("Ingested %d documents (%.0f documents per second). Index size: %d bytes.",
+                documentCount,
+                documentCount / ingestSeconds,
+                indexBytes));
+
+        if (jsapResult.contains( "csv" )) {
+            Path csv = Paths.get(jsapResult.getString( "csv" ));
+            StringBuilder line = new StringBuilder();
+            if (!Files.exists(csv)) {
+                line.append("threads,pretokenized,shards,merge,ramBufferMB,documents,ingestSeconds,totalSeconds,documentsPerSecond,indexBytes\n");
+            }
+            line.append(String.format("%d,%b,%b,%b,%.1f,%d,%.3f,%.3f,%.1f,%d\n",
+                    threadCount,
+                    pretokenized,
+                    sharded,
+                    merge,
+                    ramBufferMB,
+                    documentCount,
+                    ingestSeconds,
+                    totalSeconds,
+                    documentCount / ingestSeconds,
+                    indexBytes));
+            Files.write(csv, line.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
     }
 
 
-    private static void ingestDocuments(String manifestFilename,
+    /**
+     * Ingests the chunk files and ranges handed out by scheduler. Threads either share one IndexWriter on dir, or, when sharded, each
+     * write their own shard in a subdirectory of indexPath. Documents, terms
+     * and bytes read are counted in metrics, and documents by chunk file in
+     * documentsPerFile. When schema is non-null, only the streams of its indexed fields are ingested.
+     * Unless incremental, the index in dir is replaced rather than appended to.
+     * @return the number of documents ingested.
+     */
+    private static long ingestDocuments(ChunkScheduler scheduler,
                                         Directory dir,
+                                        Path indexPath,
                                         int threadCount,
+                                        boolean pretokenized,
+                                        boolean sharded,
+                                        boolean incremental,
+                                        double ramBufferMB,
+                                        FieldSchema schema,
+                                        IngestionMetrics metrics,
+                                        ConcurrentHashMap<String, LongAdder> documentsPerFile,
                                         ExecutorCompletionService completionService) throws IOException, InterruptedException {
-        String[] chunkfileNames = getLinesFromFile(manifestFilename);
+        // Shards from an earlier run would be appended to, any beyond
+        // threadCount would be read as part of this index, and readers
+        // prefer shards to the index in dir.
+        LuceneIndex.deleteShards(indexPath);
+        IndexWriter sharedWriter = sharded ? null : new IndexWriter(dir, writerConfig(ramBufferMB, incremental));
+        AtomicLong shardDocumentCount = new AtomicLong();
 
-        StandardAnalyzer analyzer = new StandardAnalyzer(CharArraySet.EMPTY_SET);
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        IndexWriter writer =  new IndexWriter(dir, config);
-
-        AtomicInteger fileIndex = new AtomicInteger();
-        System.out.println(String.format("Ingesting %d chunk files with %d threads.",
-                chunkfileNames.length,
-                threadCount));
+        metrics.setQueueDepth(scheduler::remaining);
+        System.out.println(String.format("Ingesting %d chunk files and ranges with %d threads%s%s.",
+                scheduler.taskCount(),
+                threadCount,
+                pretokenized ? " (pretokenized)" : "",
+                sharded ? " into per-thread shards" : ""));
         long ingestStartTime = System.currentTimeMillis();
         IntStream.range(0, threadCount).forEach(
                 t -> {
                     Callable task = () -> {
+                        IndexWriter writer = sharedWriter;
                         try {
-                            DocumentProcessor processor = new DocumentProcessor(writer);
-                            while (true) {
-                                int index = fileIndex.getAndIncrement();
-                                if (index >= chunkfileNames.length) {
-                                    fileIndex.decrementAndGet();
-                                    return null;
+                            if (sharded) {
+                                Directory shard = new MMapDirectory(LuceneIndex.shardPath(indexPath, t));
+                                writer = new IndexWriter(shard, writerConfig(ramBufferMB, false));
+                            }
+                            IRawDocumentProcessor processor = pretokenized ?
+                                    new TokenStreamDocumentProcessor(writer) :
+                                    new DocumentProcessor(writer);
+                            if (schema != null) {
+                                processor = new FieldFilterDocumentProcessor(processor, schema);
+                            }
+                            MeteredDocumentProcessor metered = new MeteredDocumentProcessor(processor, metrics);
+                            processor = metered;
+                            ChunkScheduler.Task chunk;
+                            while ((chunk = scheduler.next()) != null) {
+                                System.out.println(String.format("  %s", chunk));
+                                metrics.busy();
+                                try {
+                                    long documentsBefore = metered.documentCount();
+                                    InputStream inputStream = metrics.meter(chunk.open());
+                                    if (chunk.binary) {
+                                        BinaryCorpusFile corpus = new BinaryCorpusFile(inputStream);
+                                        corpus.process(processor);
+                                    }
+                                    else {
+                                        CorpusFile corpus = new CorpusFile(inputStream);
+                                        corpus.process(processor);
+                                    }
+                                    inputStream.close();
+                                    documentsPerFile.computeIfAbsent(chunk.file, file -> new LongAdder())
+                                                    .add(metered.documentCount() - documentsBefore);
+                                }
+                                finally {
+                                    metrics.idle();
+                                }
+                            }
+                            if (sharded) {
+                                // Commit this thread's shard.
+                                metrics.busy();
+                                try {
+                                    writer.commit();
+                                    shardDocumentCount.addAndGet(writer.numDocs());
+                                    writer.close();
+                                    writer.getDirectory().close();
+                                }
+                                finally {
+                                    metrics.idle();
                                 }
-                                System.out.println(String.format("  %s", chunkfileNames[index]));
-                                InputStream inputStream = new FileInputStream(chunkfileNames[index]);
-                                CorpusFile corpus = new CorpusFile(inputStream);
-                                corpus.process(processor);
                             }
-                        } catch (IOException e) {
-                            e.printStackTrace();
                             return null;
                         }
+                        catch (Exception e) {
+                            // Stop the other threads, and leave nothing of this one's shard.
+                            scheduler.cancel();
+                            if (sharded && writer != null) {
+                                writer.rollback();
+                                writer.getDirectory().close();
+                            }
+                            throw e;
+                        }
                     };
                     completionService.submit(task);
                 }
         );
 
+        ExecutionException failure = null;
         for (int i = 0; i < threadCount; ++i) {
-            completionService.take();
+            try {
+                completionService.take().get();
+            }
+            catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            // Nothing of this run is committed, so the ledger stays true to the index.
+            if (sharedWriter != null) {
+                sharedWriter.rollback();
+            }
+            throw new IOException("IndexBuilder: ingestion failed.", failure.getCause());
         }
 
-        // Commit index.
-        writer.commit();
+        long documentCount;
+        if (sharded) {
+            documentCount = shardDocumentCount.get();
+            LuceneIndex.writeShardCount(indexPath, threadCount);
+        }
+        else {
+            // Commit index.
+            sharedWriter.commit();
+            documentCount = sharedWriter.numDocs();
+            sharedWriter.close();
+        }
         long ingestDoneTime = System.currentTimeMillis();
 
-        System.out.println(String.format("Ingested %d chunk files in %f seconds.",
-                fileIndex.get(),
+        System.out.println(String.format("Ingested %d chunk files and ranges in %f seconds.",
+                scheduler.taskCount(),
                 (ingestDoneTime - ingestStartTime) / 1000.0));
+
+        return documentCount;
+    }
+
+
+    /**
+     * Adds the per-thread shards to the index in dir, or unless incremental
+     * replaces it with them, and deletes them.
+     */
+    private static void mergeShards(Directory dir, Path indexPath, int shardCount, boolean incremental, double ramBufferMB) throws IOException {
+        long startTime = System.currentTimeMillis();
+
+        Directory[] shards = new Directory[shardCount];
+        for (int i = 0; i < shardCount; ++i) {
+            shards[i] = new MMapDirectory(LuceneIndex.shardPath(indexPath, i));
+        }
+
+        // addIndexes() copies the shards' segments. The merge scheduler then
+        // runs whatever merges the merge policy picks on its own threads.
+        IndexWriter writer = new IndexWriter(dir, writerConfig(ramBufferMB, incremental));
+        writer.addIndexes(shards);
+        writer.commit();
+        writer.close();
+
+        for (int i = 0; i < shardCount; ++i) {
+            shards[i].close();
+        }
+        LuceneIndex.deleteShards(indexPath);
+
+        System.out.println(String.format("Merged %d shards in %f seconds.",
+                shardCount,
+                (System.currentTimeMillis() - startTime) / 1000.0));
+    }
+
+
+    /**
+     * @return the metrics file that sits next to indexDirectory.
+     */
+    static String metricsFile(String indexDirectory) {
+        Path index = Paths.get(indexDirectory).toAbsolutePath().normalize();
+        return index.resolveSibling(index.getFileName() + ".metrics.csv").toString();
+    }
+
+
+    /**
+     * @param append add to an existing index instead of replacing it.
+     */
+    static IndexWriterConfig writerConfig(double ramBufferMB, boolean append) {
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer(CharArraySet.EMPTY_SET));
+        config.setRAMBufferSizeMB(ramBufferMB);
+        config.setOpenMode(append ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND : IndexWriterConfig.OpenMode.CREATE);
+        return config;
+    }
+
+
+    private static long directorySize(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
     }
 
 
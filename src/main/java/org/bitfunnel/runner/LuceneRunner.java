@@ -3,8 +3,8 @@ package org.bitfunnel.runner;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.*;
 import org.apache.lucene.search.BooleanClause.Occur;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.MMapDirectory;
+import org.bitfunnel.reproducibility.LatencyHistogram;
+import org.bitfunnel.reproducibility.LuceneIndex;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -30,42 +30,32 @@ class LuceneRunner {
 
         String[] queryLog = getLinesFromFile(queryFilename);
 
-        // Lucene setup.
-        // We use MMapDirectory instead of RAMDirectory because Lucene documentation recommends MMapDirectory for better
-        // performance with "large" (> 100MB) indicies.
-        // However, other people have observed minimal differences between the two:
-        // http://blog.mikemccandless.com/2012/07/lucene-index-in-ram-with-azuls-zing-jvm.html
-        // With our setup, ingestion is significantly slower and querying is marginally faster when using MMapDirectory.
-        // The speedup in query speed is within the normal variance between runs whereas the slowdown in ingestion speed is
-        // large and noticable.
-        Directory dir = new MMapDirectory(Paths.get(indexDirectory));
+        // Lucene setup. See LuceneIndex for the choice of MMapDirectory.
         ExecutorService executor = Executors.newFixedThreadPool(threadCount);
         ExecutorCompletionService completionService = new ExecutorCompletionService(executor);
 
         // Now search the index:
-        DirectoryReader ireader = null;
-        ireader = DirectoryReader.open(dir);
+        // Opens a MultiReader over the shards of an index built with IndexBuilder --shards.
+        IndexReader ireader = new LuceneIndex(indexDirectory).openReader();
         System.out.println(String.format("Document count: %d", ireader.numDocs()));
 
         IndexSearcher isearcher = new IndexSearcher(ireader);
 
         // Measure execution latencies. Note that this methodology is not sufficient for measuring "real" tail latency.
         // Also note that throughput measurements for the paper were done with individual query measurement turned off, although the overhead should be low.
-        // long[] queryTimes = new long[queryLog.length];
+        LatencyHistogram latencies = new LatencyHistogram();
 
 
         AtomicInteger numCompleted = new AtomicInteger();
         AtomicInteger numHits = new AtomicInteger();
         System.out.println(String.format("Query warmup: processing %d queries with %d threads.", queryLog.length, threadCount));
-        // executeQueries(threadCount, completionService, isearcher, queryLog, numCompleted, numHits, queryTimes);
-        executeQueries(threadCount, completionService, isearcher, queryLog, numCompleted, numHits);
+        executeQueries(threadCount, completionService, isearcher, queryLog, numCompleted, numHits, null);
         numCompleted.set(0);
         numHits.set(0);
         System.out.println(String.format("Query measurement: processing %d queries with %d threads.", queryLog.length, threadCount));
         System.gc();
         long queryStartTime = System.currentTimeMillis();
-        // executeQueries(threadCount, completionService, isearcher, queryLog, numCompleted, numHits, queryTimes);
-        executeQueries(threadCount, completionService, isearcher, queryLog, numCompleted, numHits);
+        executeQueries(threadCount, completionService, isearcher, queryLog, numCompleted, numHits, latencies);
         long queryDoneTime = System.currentTimeMillis();
 
         executor.shutdown();
@@ -85,21 +75,14 @@ class LuceneRunner {
         System.out.println(String.format("QPS: %f", qps));
 
 
-        // System.out.println("total matches: " + numHits.get());
+        System.out.println(String.format("Latency p50: %f", latencies.valueAtPercentile(50.0) * 1e-9));
+        System.out.println(String.format("Latency p90: %f", latencies.valueAtPercentile(90.0) * 1e-9));
+        System.out.println(String.format("Latency p99: %f", latencies.valueAtPercentile(99.0) * 1e-9));
+        System.out.println(String.format("Latency p99.9: %f", latencies.valueAtPercentile(99.9) * 1e-9));
+        System.out.println(String.format("Latency max: %f", latencies.maxValue() * 1e-9));
 
-    //    java.util.Arrays.sort(queryTimes);
-    //    int maxIdx = queryTimes.length - 1;
-    //    int[] timeIdx = {
-    //            maxIdx - maxIdx / 2,
-    //            maxIdx - maxIdx / 10,
-    //            maxIdx - maxIdx / 100,
-    //            maxIdx - maxIdx / 1000,
-    //            maxIdx};
-    //
-    //    for (int idx : timeIdx) {
-    //        System.out.print(((double)queryTimes[idx]) / 1e9 + ",");
-    //    }
 
+        // System.out.println("total matches: " + numHits.get());
     }
 
     private static void executeQueries(int threadCount,
@@ -107,7 +90,8 @@ class LuceneRunner {
                                        IndexSearcher isearcher,
                                        String[] queryLog,
                                        AtomicInteger numCompleted,
-                                       AtomicInteger numHits) throws InterruptedException {
+                                       AtomicInteger numHits,
+                                       LatencyHistogram latencies) throws InterruptedException {
         IntStream.range(0, threadCount).forEach(
                 t -> {
                     Callable task = () -> {
@@ -116,18 +100,26 @@ class LuceneRunner {
                         // all of this out. Or maybe it doesn't. If it were up to me, I wouldn't write this code this way.
                         // Sorry!
                         MatchingCollector collector = new MatchingCollector();
+                        // Each thread records its own latencies, which are added to latencies at the end.
+                        LatencyHistogram threadLatencies = latencies != null ? new LatencyHistogram() : null;
                         while (true) {
                             int idx = numCompleted.getAndIncrement();
                             if (idx >= queryLog.length) {
                                 numCompleted.decrementAndGet();
                                 // numHits.addAndGet(collector.getTotalHits());
                                 collector.getDocIds();
+                                if (threadLatencies != null) {
+                                    synchronized (latencies) {
+                                        latencies.add(threadLatencies);
+                                    }
+                                }
                                 return null;
                             }
-//                            long singleStartTime = System.nanoTime();
-                              executeQuery(idx, queryLog, isearcher, collector);
-//                            long singleEndTime = System.nanoTime();
-//                            queryTimes[idx] = singleEndTime - singleStartTime;
+                            long singleStartTime = System.nanoTime();
+                            executeQuery(idx, queryLog, isearcher, collector);
+                            if (threadLatencies != null) {
+                                threadLatencies.recordValue(System.nanoTime() - singleStartTime);
+                            }
                         }
                     };
                     completionService.submit(task);
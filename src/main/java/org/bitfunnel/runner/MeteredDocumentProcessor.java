@@ -0,0 +1,66 @@
+package org.bitfunnel.runner;
+
+import org.bitfunnel.reproducibility.IngestionMetrics;
+
+/**
+ * Forwards to another IRawDocumentProcessor, counting documents and terms
+ * into an IngestionMetrics. Terms are added once per document.
+ */
+public class MeteredDocumentProcessor implements IRawDocumentProcessor {
+  private final IRawDocumentProcessor processor;
+  private final IngestionMetrics metrics;
+  private long termCount = 0;
+  private long documentCount = 0;
+
+  public MeteredDocumentProcessor(IRawDocumentProcessor processor, IngestionMetrics metrics) {
+    this.processor = processor;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void openDocumentSet() {
+    processor.openDocumentSet();
+  }
+
+  @Override
+  public void openDocument(long documentId) {
+    termCount = 0;
+    processor.openDocument(documentId);
+  }
+
+  @Override
+  public void openStream(String name) {
+    processor.openStream(name);
+  }
+
+  @Override
+  public void term(byte[] bytes, int offset, int length) {
+    ++termCount;
+    processor.term(bytes, offset, length);
+  }
+
+  @Override
+  public void closeStream() {
+    processor.closeStream();
+  }
+
+  @Override
+  public void closeDocument() {
+    processor.closeDocument();
+    ++documentCount;
+    metrics.addDocuments(1);
+    metrics.addTerms(termCount);
+  }
+
+  /**
+   * @return the number of documents closed through this processor.
+   */
+  public long documentCount() {
+    return documentCount;
+  }
+
+  @Override
+  public void closeDocumentSet() {
+    processor.closeDocumentSet();
+  }
+}
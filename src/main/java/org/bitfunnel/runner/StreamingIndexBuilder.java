@@ -0,0 +1,314 @@
+package org.bitfunnel.runner;
+
+import com.martiansoftware.jsap.*;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.bitfunnel.reproducibility.BinaryChunkReader;
+import org.bitfunnel.reproducibility.ChunkCompression;
+import org.bitfunnel.reproducibility.ChunkFrameReader;
+import org.bitfunnel.reproducibility.FieldSchema;
+import org.bitfunnel.reproducibility.IngestionMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Builds a Lucene index from a framed chunk stream (see ChunkFrameWriter) read
+ * from stdin or a named pipe, so chunks are indexed as an upstream process
+ * produces them, without temporary files.
+ *
+ * <p>The calling thread reads frames into a bounded queue, from which ingestion
+ * threads parse them into one IndexWriter. When the queue is full, reading
+ * stops and the producer blocks on the pipe, so memory is bounded by the queue
+ * length times the largest frame, plus the writer's RAM buffer. The index is
+ * committed every commit interval. Each commit reports the lag from the arrival
+ * of a frame's first byte to the commit that made its documents searchable.
+ * A failed commit ends the run. An existing index is appended to.
+ */
+public class StreamingIndexBuilder {
+    // A chunk, and System.nanoTime() when its first byte arrived.
+    private static class Frame {
+        final byte[] bytes;
+        final long arrivalNanos;
+
+        Frame(byte[] bytes, long arrivalNanos) {
+            this.bytes = bytes;
+            this.arrivalNanos = arrivalNanos;
+        }
+    }
+
+    // Tells ingestion threads that the stream has ended.
+    private static final Frame END = new Frame(null, 0);
+
+    private final IndexWriter writer;
+    private final boolean pretokenized;
+    private final FieldSchema schema;
+    private IngestionMetrics metrics = new IngestionMetrics();
+
+    // Arrival times of the frames ingested since the last commit.
+    private final List<Long> ingested = new ArrayList<>();
+
+    // The failure of a periodic commit, which ends the run.
+    private volatile IOException commitFailure = null;
+
+    // Totals over all commits.
+    private long frameCount = 0;
+    private double totalLagSeconds = 0;
+    private double maxLagSeconds = 0;
+
+
+    /**
+     * @param schema when non-null, only the streams of its indexed fields are ingested.
+     */
+    public StreamingIndexBuilder(IndexWriter writer, boolean pretokenized, FieldSchema schema) {
+        this.writer = writer;
+        this.pretokenized = pretokenized;
+        this.schema = schema;
+    }
+
+
+    public void setMetrics(IngestionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Ingests the frames of input until it ends, committing every commitIntervalMs.
+     * @param queueFrames the number of frames read ahead of the ingestion threads.
+     */
+    public void run(InputStream input, int threadCount, int queueFrames, long maxFrameBytes, long commitIntervalMs) throws Exception {
+        BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(queueFrames);
+        metrics.setQueueDepth(queue::size);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        ScheduledExecutorService committer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            List<Future<Void>> workers = new ArrayList<>(threadCount);
+            for (int t = 0; t < threadCount; ++t) {
+                workers.add(executor.submit(() -> {
+                    ingestFrames(queue);
+                    return null;
+                }));
+            }
+            committer.scheduleWithFixedDelay(() -> {
+                try {
+                    commit();
+                }
+                catch (IOException e) {
+                    commitFailure = e;
+                    // Stops the periodic commits.
+                    throw new RuntimeException(e);
+                }
+            }, commitIntervalMs, commitIntervalMs, TimeUnit.MILLISECONDS);
+
+            try (ChunkFrameReader reader = new ChunkFrameReader(input, maxFrameBytes)) {
+                byte[] bytes;
+                while ((bytes = reader.nextFrame()) != null) {
+                    metrics.addBytes(bytes.length);
+                    put(queue, new Frame(bytes, reader.arrivalNanos()), workers);
+                }
+            }
+            put(queue, END, workers);
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+            checkCommits();
+        }
+        finally {
+            committer.shutdown();
+            committer.awaitTermination(1, TimeUnit.MINUTES);
+            // If reading failed, END never went on the queue, so interrupt the
+            // ingestion threads still waiting in take().
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        commit();
+        System.out.println(String.format("Ingested %d frames. Lag from arrival to searchable: mean %f seconds, max %f seconds.",
+                frameCount,
+                frameCount > 0 ? totalLagSeconds / frameCount : 0.0,
+                maxLagSeconds));
+    }
+
+
+    /**
+     * Waits for room in the queue, rethrowing the failure of an ingestion thread,
+     * which would otherwise leave the reader blocked forever, or of a periodic commit.
+     */
+    private void put(BlockingQueue<Frame> queue, Frame frame, List<Future<Void>> workers) throws Exception {
+        checkCommits();
+        while (!queue.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+            checkCommits();
+            for (Future<Void> worker : workers) {
+                if (worker.isDone()) {
+                    worker.get();
+                    throw new IOException("StreamingIndexBuilder: an ingestion thread stopped early.");
+                }
+            }
+        }
+    }
+
+
+    private void checkCommits() throws IOException {
+        if (commitFailure != null) {
+            throw new IOException("StreamingIndexBuilder: a periodic commit failed.", commitFailure);
+        }
+    }
+
+
+    private void ingestFrames(BlockingQueue<Frame> queue) throws Exception {
+        IRawDocumentProcessor processor = pretokenized ?
+                new TokenStreamDocumentProcessor(writer) :
+                new DocumentProcessor(writer);
+        if (schema != null) {
+            processor = new FieldFilterDocumentProcessor(processor, schema);
+        }
+        processor = new MeteredDocumentProcessor(processor, metrics);
+
+        Frame frame;
+        while ((frame = queue.take()) != END) {
+            metrics.busy();
+            try {
+                PushbackInputStream chunk = new PushbackInputStream(
+                        ChunkCompression.open(new ByteArrayInputStream(frame.bytes)),
+                        BinaryChunkReader.MAGIC_LENGTH);
+                if (BinaryChunkReader.isBinaryChunk(chunk)) {
+                    new BinaryCorpusFile(chunk).process(processor);
+                }
+                else {
+                    new CorpusFile(chunk).process(processor);
+                }
+                chunk.close();
+                synchronized (ingested) {
+                    ingested.add(frame.arrivalNanos);
+                }
+            }
+            finally {
+                metrics.idle();
+            }
+        }
+        // Let the other threads see the end too.
+        queue.put(END);
+    }
+
+
+    /**
+     * Commits the documents added so far, which makes the frames ingested before
+     * the commit started searchable. If the commit fails, those frames are still
+     * counted by the next one.
+     */
+    private synchronized void commit() throws IOException {
+        List<Long> arrivals;
+        synchronized (ingested) {
+            arrivals = new ArrayList<>(ingested);
+            ingested.clear();
+        }
+        long startTime = System.nanoTime();
+        try {
+            writer.commit();
+        }
+        catch (IOException e) {
+            synchronized (ingested) {
+                ingested.addAll(arrivals);
+            }
+            throw e;
+        }
+        long searchableTime = System.nanoTime();
+        if (arrivals.isEmpty()) {
+            return;
+        }
+
+        double total = 0;
+        double max = 0;
+        for (long arrival : arrivals) {
+            double lag = (searchableTime - arrival) * 1e-9;
+            total += lag;
+            max = Math.max(max, lag);
+        }
+        frameCount += arrivals.size();
+        totalLagSeconds += total;
+        maxLagSeconds = Math.max(maxLagSeconds, max);
+
+        System.out.println(String.format("Committed %d frames (%d documents in index) in %f seconds. Lag: mean %f seconds, max %f seconds.",
+                arrivals.size(),
+                writer.numDocs(),
+                (searchableTime - startTime) * 1e-9,
+                total / arrivals.size(),
+                max));
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        SimpleJSAP jsap = new SimpleJSAP( StreamingIndexBuilder.class.getName(),
+                "Builds a Lucene index from a framed chunk stream read from stdin or a named pipe, committing periodically.",
+                new Parameter[] {
+                        new Switch( "pretokenized", 'p', "pretokenized", "Index chunk terms as is, without an analyzer." ),
+                        new FlaggedOption( "ramBuffer", JSAP.DOUBLE_PARSER, "64", JSAP.NOT_REQUIRED, 'r', "ram-buffer", "The RAM buffer size of the IndexWriter, in MB." ),
+                        new FlaggedOption( "commitInterval", JSAP.LONG_PARSER, "10000", JSAP.NOT_REQUIRED, 'c', "commit-interval", "Milliseconds between commits." ),
+                        new FlaggedOption( "queueFrames", JSAP.INTSIZE_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "queue-frames", "The number of frames read ahead of the ingestion threads (0 for twice the thread count)." ),
+                        new FlaggedOption( "maxFrameBytes", JSAP.LONGSIZE_PARSER, Long.toString(64L * 1024 * 1024), JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "max-frame-bytes", "The largest frame accepted. Frames are read into memory." ),
+                        new FlaggedOption( "fields", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "fields", "A field schema. Only streams of indexed fields are ingested. Defaults to every stream." ),
+                        new Switch( "metrics", JSAP.NO_SHORTFLAG, "metrics", "Sample ingestion throughput, queue depth and per-thread busy time into <indexDirectory>.metrics.csv." ),
+                        new FlaggedOption( "metricsInterval", JSAP.LONG_PARSER, "1000", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "metrics-interval", "The metrics sampling interval, in milliseconds." ),
+                        new UnflaggedOption( "indexDirectory", JSAP.STRING_PARSER, JSAP.REQUIRED, "The index directory." ),
+                        new UnflaggedOption( "input", JSAP.STRING_PARSER, JSAP.REQUIRED, "The framed chunk stream: a named pipe or file, or - for stdin." ),
+                        new UnflaggedOption( "threads", JSAP.INTSIZE_PARSER, JSAP.REQUIRED, "The number of ingestion threads." ),
+                });
+
+        JSAPResult jsapResult = jsap.parse( args );
+        if ( jsap.messagePrinted() ) return;
+
+        String indexDirectory = jsapResult.getString( "indexDirectory" );
+        String inputName = jsapResult.getString( "input" );
+        int threadCount = jsapResult.getInt( "threads" );
+        int queueFrames = jsapResult.getInt( "queueFrames" ) > 0 ? jsapResult.getInt( "queueFrames" ) : 2 * threadCount;
+        FieldSchema schema = jsapResult.contains( "fields" ) ? FieldSchema.parse(jsapResult.getString( "fields" )) : null;
+        IngestionMetrics metrics = jsapResult.getBoolean( "metrics" ) ?
+                new IngestionMetrics(IndexBuilder.metricsFile(indexDirectory), jsapResult.getLong( "metricsInterval" )) :
+                new IngestionMetrics();
+
+        long startTime = System.currentTimeMillis();
+        Directory dir = new MMapDirectory(Paths.get(indexDirectory));
+        IndexWriter writer = new IndexWriter(dir, IndexBuilder.writerConfig(jsapResult.getDouble( "ramBuffer" ), true));
+        StreamingIndexBuilder builder = new StreamingIndexBuilder(writer, jsapResult.getBoolean( "pretokenized" ), schema);
+        builder.setMetrics(metrics);
+        try (InputStream input = inputName.equals("-") ? System.in : new FileInputStream(inputName)) {
+            builder.run(input,
+                        threadCount,
+                        queueFrames,
+                        jsapResult.getLong( "maxFrameBytes" ),
+                        jsapResult.getLong( "commitInterval" ));
+        }
+        catch (Exception e) {
+            // Keep the index as of the last successful commit.
+            writer.rollback();
+            dir.close();
+            metrics.close();
+            throw e;
+        }
+        long documentCount = writer.numDocs();
+        writer.close();
+        dir.close();
+        metrics.close();
+
+        double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        System.out.println(String.format("Index holds %d documents. Streamed for %f seconds.",
+                documentCount,
+                seconds));
+    }
+}
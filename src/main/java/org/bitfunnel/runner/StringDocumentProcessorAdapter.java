@@ -0,0 +1,59 @@
+package org.bitfunnel.runner;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Drives an IDocumentProcessor from a source of raw events, decoding each
+ * term to a String.
+ */
+public class StringDocumentProcessorAdapter implements IRawDocumentProcessor {
+  private final IDocumentProcessor processor;
+
+
+  public StringDocumentProcessorAdapter(IDocumentProcessor processor) {
+    this.processor = processor;
+  }
+
+
+  @Override
+  public void openDocumentSet() {
+    processor.openDocumentSet();
+  }
+
+
+  @Override
+  public void openDocument(long documentId) {
+    processor.openDocument(documentId);
+  }
+
+
+  @Override
+  public void openStream(String name) {
+    processor.openStream(name);
+  }
+
+
+  @Override
+  public void term(byte[] bytes, int offset, int length) {
+    processor.term(new String(bytes, offset, length, StandardCharsets.UTF_8));
+  }
+
+
+  @Override
+  public void closeStream() {
+    processor.closeStream();
+  }
+
+
+  @Override
+  public void closeDocument() {
+    processor.closeDocument();
+  }
+
+
+  @Override
+  public void closeDocumentSet() {
+    processor.closeDocumentSet();
+  }
+}
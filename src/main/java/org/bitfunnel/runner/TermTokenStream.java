@@ -0,0 +1,76 @@
+package org.bitfunnel.runner;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.BytesTermAttribute;
+import org.apache.lucene.util.BytesRef;
+
+import java.util.Arrays;
+
+
+/**
+ * A reusable TokenStream over terms that were tokenized when the chunk was
+ * written. Terms are kept as utf-8 bytes and handed to Lucene as is, so no
+ * analyzer runs and no chars are decoded.
+ */
+public final class TermTokenStream extends TokenStream {
+  private final BytesTermAttribute termAttribute = addAttribute(BytesTermAttribute.class);
+  private final BytesRef term = new BytesRef();
+
+  // Term i is bytes[offsets[i]] to bytes[offsets[i + 1]].
+  private byte[] bytes = new byte[16 * 1024];
+  private int[] offsets = new int[1024 + 1];
+  private int termCount = 0;
+
+  private int next = 0;
+
+
+  /**
+   * Appends a term. The bytes are copied.
+   */
+  public void add(byte[] source, int offset, int length) {
+    int end = offsets[termCount];
+    if (end + length > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, end + length));
+    }
+    if (termCount + 2 > offsets.length) {
+      offsets = Arrays.copyOf(offsets, offsets.length * 2);
+    }
+    System.arraycopy(source, offset, bytes, end, length);
+    offsets[++termCount] = end + length;
+  }
+
+
+  /**
+   * Removes all terms, keeping the storage.
+   */
+  public void clear() {
+    termCount = 0;
+    next = 0;
+  }
+
+
+  public int termCount() {
+    return termCount;
+  }
+
+
+  @Override
+  public boolean incrementToken() {
+    if (next == termCount) {
+      return false;
+    }
+    clearAttributes();
+    term.bytes = bytes;
+    term.offset = offsets[next];
+    term.length = offsets[next + 1] - term.offset;
+    termAttribute.setBytesRef(term);
+    ++next;
+    return true;
+  }
+
+
+  @Override
+  public void reset() {
+    next = 0;
+  }
+}
@@ -0,0 +1,121 @@
+package org.bitfunnel.runner;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Adds chunk documents to an IndexWriter without analysis. Each stream becomes
+ * a field fed by a TermTokenStream holding the stream's terms. The chunk
+ * already tokenized and lower cased them.
+ *
+ * <p>Fields index documents only, with no frequencies, positions or norms,
+ * since the benchmark only runs conjunctive filters. Documents, fields and
+ * token streams are reused.
+ */
+public class TokenStreamDocumentProcessor implements IRawDocumentProcessor {
+  static final FieldType FIELD_TYPE = new FieldType();
+  static {
+    FIELD_TYPE.setTokenized(true);
+    FIELD_TYPE.setStored(false);
+    FIELD_TYPE.setOmitNorms(true);
+    FIELD_TYPE.setIndexOptions(IndexOptions.DOCS);
+    FIELD_TYPE.freeze();
+  }
+
+  private final IndexWriter writer;
+  private final Document document = new Document();
+  private final StoredField idField = new StoredField("id", 0L);
+
+  // Per stream name, the field and its token stream. Streams that appear
+  // more than once in a document share one field.
+  private final Map<String, Field> fields = new HashMap<>();
+  private final Map<String, TermTokenStream> tokenStreams = new HashMap<>();
+
+  private TermTokenStream currentStream;
+
+  private long documentCount = 0;
+  private long termCount = 0;
+
+
+  public TokenStreamDocumentProcessor(IndexWriter writer) {
+    this.writer = writer;
+  }
+
+
+  public long documentCount() {
+    return documentCount;
+  }
+
+
+  public long termCount() {
+    return termCount;
+  }
+
+
+  @Override
+  public void openDocumentSet() {
+  }
+
+
+  @Override
+  public void openDocument(long documentId) {
+    document.clear();
+    idField.setLongValue(documentId);
+    document.add(idField);
+  }
+
+
+  @Override
+  public void openStream(String name) {
+    currentStream = tokenStreams.get(name);
+    if (currentStream == null) {
+      currentStream = new TermTokenStream();
+      tokenStreams.put(name, currentStream);
+      fields.put(name, new Field(name, currentStream, FIELD_TYPE));
+    }
+    if (document.getField(name) == null) {
+      currentStream.clear();
+      document.add(fields.get(name));
+    }
+  }
+
+
+  @Override
+  public void term(byte[] bytes, int offset, int length) {
+    currentStream.add(bytes, offset, length);
+  }
+
+
+  @Override
+  public void closeStream() {
+  }
+
+
+  @Override
+  public void closeDocument() {
+    try {
+      writer.addDocument(document);
+    } catch (IOException e) {
+      throw new RuntimeException("Error adding document.", e);
+    }
+    ++documentCount;
+    for (TermTokenStream stream : tokenStreams.values()) {
+      termCount += stream.termCount();
+      stream.clear();
+    }
+  }
+
+
+  @Override
+  public void closeDocumentSet() {
+  }
+}
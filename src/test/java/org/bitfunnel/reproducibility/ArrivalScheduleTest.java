@@ -0,0 +1,80 @@
+package org.bitfunnel.reproducibility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+
+public class ArrivalScheduleTest
+        extends TestCase {
+
+    public ArrivalScheduleTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(ArrivalScheduleTest.class);
+    }
+
+
+    public void testConstantGaps() {
+        ArrivalSchedule schedule = new ArrivalSchedule(250, ArrivalSchedule.Arrivals.CONSTANT, 0);
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(1e9 / 250, schedule.nextGapNanos(), 1e-6);
+        }
+    }
+
+
+    public void testPoissonGapsAverageTheRate() {
+        ArrivalSchedule schedule = new ArrivalSchedule(250, ArrivalSchedule.Arrivals.POISSON, 42);
+        int count = 100000;
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for (int i = 0; i < count; ++i) {
+            double gap = schedule.nextGapNanos();
+            assertTrue(gap >= 0);
+            sum += gap;
+            min = Math.min(min, gap);
+            max = Math.max(max, gap);
+        }
+        // The mean of 100000 exponential gaps is within 1% of the rate's.
+        double mean = 1e9 / 250;
+        assertEquals(mean, sum / count, mean * 0.01);
+        // And the gaps are spread out, unlike CONSTANT's.
+        assertTrue(min < mean * 0.01);
+        assertTrue(max > mean * 5);
+
+        // The same seed gives the same gaps.
+        ArrivalSchedule first = new ArrivalSchedule(250, ArrivalSchedule.Arrivals.POISSON, 7);
+        ArrivalSchedule second = new ArrivalSchedule(250, ArrivalSchedule.Arrivals.POISSON, 7);
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(first.nextGapNanos(), second.nextGapNanos());
+        }
+    }
+
+
+    public void testDispatchQueuesQueriesThenEnds() throws InterruptedException {
+        // Fast enough that the test takes a few milliseconds.
+        ArrivalSchedule schedule = new ArrivalSchedule(100000, ArrivalSchedule.Arrivals.POISSON, 1);
+        LinkedBlockingQueue<ArrivalSchedule.ScheduledQuery> queue = new LinkedBlockingQueue<>();
+        schedule.dispatch(200, queue, 3);
+
+        assertEquals(203, queue.size());
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < 200; ++i) {
+            ArrivalSchedule.ScheduledQuery query = queue.take();
+            assertNotSame(ArrivalSchedule.END, query);
+            assertEquals(i, query.queryIndex);
+            assertTrue(query.scheduledNanos >= previous);
+            previous = query.scheduledNanos;
+        }
+        for (int i = 0; i < 3; ++i) {
+            assertSame(ArrivalSchedule.END, queue.take());
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
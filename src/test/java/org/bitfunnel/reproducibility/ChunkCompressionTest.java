@@ -0,0 +1,88 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.DocumentSequence;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+
+public class ChunkCompressionTest
+        extends TestCase {
+
+    public ChunkCompressionTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(ChunkCompressionTest.class);
+    }
+
+
+    public void testCompressedChunkDocumentSequence() throws IOException {
+        // Blocks far smaller than the chunk, so several are decompressed in parallel.
+        File blocks = File.createTempFile("chunk", ".bfcz");
+        blocks.deleteOnExit();
+        try (OutputStream output = new BlockCompressedOutputStream(new FileOutputStream(blocks), 10, 9)) {
+            output.write(ChunkDocumentSequenceTest.CHUNK.getBytes(StandardCharsets.UTF_8));
+        }
+        assertTrue(ChunkCompression.isCompressed(blocks.getPath()));
+
+        File gzip = File.createTempFile("chunk", ".gz");
+        gzip.deleteOnExit();
+        try (OutputStream output = new GZIPOutputStream(new FileOutputStream(gzip))) {
+            output.write(ChunkDocumentSequenceTest.CHUNK.getBytes(StandardCharsets.UTF_8));
+        }
+
+        for (File file : new File[] { blocks, gzip }) {
+            DocumentSequence sequence = new ChunkDocumentSequence(file.getPath());
+            assertEquals(ChunkDocumentSequenceTest.EXPECTED, ChunkDocumentSequenceTest.readAll(sequence));
+            sequence.close();
+        }
+    }
+
+
+    public void testSniffsCompressedChunks() throws Exception {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        ChunkDocumentSequenceTest.writeDocuments(new BinaryChunkFile(binary));
+        byte[] text = ChunkDocumentSequenceTest.CHUNK.getBytes(StandardCharsets.UTF_8);
+
+        for (byte[] contents : new byte[][] { binary.toByteArray(), text }) {
+            File raw = File.createTempFile("chunk", ".bin");
+            raw.deleteOnExit();
+            try (OutputStream output = new FileOutputStream(raw)) {
+                output.write(contents);
+            }
+            File blocks = File.createTempFile("chunk", ".bfcz");
+            blocks.deleteOnExit();
+            try (OutputStream output = new BlockCompressedOutputStream(new FileOutputStream(blocks), 10, 9)) {
+                output.write(contents);
+            }
+            File gzip = File.createTempFile("chunk", ".gz");
+            gzip.deleteOnExit();
+            try (OutputStream output = new GZIPOutputStream(new FileOutputStream(gzip))) {
+                output.write(contents);
+            }
+
+            boolean isBinary = contents != text;
+            for (File file : new File[] { raw, blocks, gzip }) {
+                assertEquals(isBinary, BinaryChunkReader.isBinaryChunk(file.getPath()));
+                try (InputStream input = new FileInputStream(file)) {
+                    // The prefix of a block compressed file comes from its first block alone.
+                    assertTrue(Arrays.equals(Arrays.copyOf(contents, 8), ChunkCompression.readPrefix(input, 8)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.Document;
+import it.unimi.di.big.mg4j.document.DocumentIterator;
+import it.unimi.di.big.mg4j.document.DocumentSequence;
+import it.unimi.dsi.io.WordReader;
+import it.unimi.dsi.lang.MutableString;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ChunkDocumentSequenceTest
+        extends TestCase {
+
+    // Two documents. The second has a stream (01) split across two segments
+    // and a term with multi-byte utf-8 characters.
+    static final String CHUNK =
+            "000000000000007b\00000\000one\000\00001\000body\000text\000\000\000" +
+            "00000000000001c8\00000\000two\000\00001\000some\000\00001\000m\u00f6re\u20ac\ud83d\ude00\000text\000\000\000" +
+            "\000";
+
+    static final List<String> EXPECTED = Arrays.asList(
+            "0000000000007b", "00:one", "01:body", "01:text",
+            "000000000001c8", "00:two", "01:some", "01:m\u00f6re\u20ac\ud83d\ude00", "01:text");
+
+
+    public ChunkDocumentSequenceTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(ChunkDocumentSequenceTest.class);
+    }
+
+
+    public void testChunkDocumentSequence() throws IOException {
+        File file = writeChunk(CHUNK);
+        DocumentSequence sequence = new ChunkDocumentSequence(file.getPath());
+        assertEquals(EXPECTED, readAll(sequence));
+        sequence.close();
+    }
+
+
+    public void testMappedChunkDocumentSequence() throws IOException {
+        File file = writeChunk(CHUNK);
+        DocumentSequence sequence = new MappedChunkDocumentSequence(file.getPath());
+        assertEquals(EXPECTED, readAll(sequence));
+        sequence.close();
+    }
+
+
+    public void testBinaryChunkRoundTrip() throws Exception {
+        // Same documents as CHUNK, written in the binary format.
+        File file = File.createTempFile("chunk", ".bin");
+        file.deleteOnExit();
+        try (OutputStream output = new FileOutputStream(file)) {
+            writeDocuments(new BinaryChunkFile(output));
+        }
+
+        assertTrue(BinaryChunkReader.isBinaryChunk(file.getPath()));
+        assertFalse(BinaryChunkReader.isBinaryChunk(writeChunk(CHUNK).getPath()));
+
+        DocumentSequence sequence = new BinaryChunkDocumentSequence(file.getPath());
+        assertEquals(EXPECTED, readAll(sequence));
+        sequence.close();
+
+        // Skipping a stream must not lose the terms it introduced.
+        try (BinaryChunkReader reader = new BinaryChunkReader(new FileInputStream(file))) {
+            assertTrue(reader.nextDocument());
+            assertEquals(0x7b, reader.documentId());
+            assertEquals(0, reader.nextStream());
+            assertEquals(1, reader.nextStream());
+            assertEquals("body", reader.dictionary().get(reader.nextTerm()));
+            assertTrue(reader.nextDocument());
+            assertEquals(0, reader.nextStream());
+            assertEquals("two", reader.dictionary().get(reader.nextTerm()));
+            assertEquals(-1, reader.nextTerm());
+            assertEquals(1, reader.nextStream());
+            assertEquals(1, reader.nextStream());
+            reader.nextTerm();
+            assertEquals("text", reader.dictionary().get(reader.nextTerm()));
+            assertEquals(-1, reader.nextStream());
+            assertFalse(reader.nextDocument());
+        }
+    }
+
+
+    public void testFieldSchemaSkipsIgnoredStreams() throws Exception {
+        // Field 0 is stream 01. Stream 00 is skipped.
+        FieldSchema schema = FieldSchema.parse("1:body, 0:text:ignored");
+        assertEquals(1, schema.fieldCount());
+        assertEquals("1:body,0:text:ignored", schema.toString());
+        assertEquals(2, schema.streamSlots());
+
+        List<String> expected = Arrays.asList(
+                "0000000000007b", "00:body", "00:text",
+                "000000000001c8", "00:some", "00:m\u00f6re\u20ac\ud83d\ude00", "00:text");
+
+        File file = writeChunk(CHUNK);
+        assertEquals(expected, readAll(new ChunkDocumentSequence(file.getPath(), schema)));
+        assertEquals(expected, readAll(new MappedChunkDocumentSequence(file.getPath(), schema)));
+
+        File binary = File.createTempFile("chunk", ".bin");
+        binary.deleteOnExit();
+        try (OutputStream output = new FileOutputStream(binary)) {
+            writeDocuments(new BinaryChunkFile(output));
+        }
+        assertEquals(expected, readAll(new BinaryChunkDocumentSequence(binary.getPath(), schema)));
+
+        try {
+            FieldSchema.parse("0:text:ignored");
+            fail("A schema without indexed fields was accepted.");
+        }
+        catch (IOException e) {
+            // Expected.
+        }
+    }
+
+
+    public void testChunkFileWritesTextFormat() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ChunkFile chunk = new ChunkFile(output);
+        writeDocuments(chunk);
+
+        assertEquals(CHUNK, new String(output.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(output.size(), chunk.bytesWritten());
+    }
+
+
+    // Writes the documents of CHUNK, with some terms in upper case.
+    static void writeDocuments(ChunkFile chunk) throws Exception {
+        try (ChunkFile.FileScope fileScope = chunk.new FileScope()) {
+            try (ChunkFile.DocumentScope documentScope = chunk.new DocumentScope(0x7b)) {
+                writeStream(chunk, 0, "ONE");
+                writeStream(chunk, 1, "Body", "text");
+            }
+            try (ChunkFile.DocumentScope documentScope = chunk.new DocumentScope(0x1c8)) {
+                writeStream(chunk, 0, "two");
+                writeStream(chunk, 1, "some");
+                writeStream(chunk, 1, "M\u00d6re\u20ac\ud83d\ude00", "text");
+            }
+        }
+    }
+
+
+    private static void writeStream(ChunkFile chunk, int streamId, String... terms) throws Exception {
+        try (ChunkFile.StreamScope streamScope = chunk.new StreamScope(streamId)) {
+            for (String term : terms) {
+                chunk.emitLowerCase(new MutableString(term));
+            }
+        }
+    }
+
+
+    public void testDocumentsArePooledAndGrow() throws IOException {
+        // The second document's text stream outgrows the initial buffer.
+        StringBuilder chunk = new StringBuilder("0000000000000001\00000\000small\000\000\000");
+        chunk.append("0000000000000002\00001\000");
+        for (int i = 0; i < 50000; ++i) {
+            chunk.append(String.format("t%d\000", i));
+        }
+        chunk.append("\000\000");
+        chunk.append("0000000000000003\00000\000last\000\000\000\000");
+
+        File file = writeChunk(chunk.toString());
+        ChunkDocumentSequence sequence = new ChunkDocumentSequence(file.getPath());
+        ChunkDocumentIterator iterator = (ChunkDocumentIterator)sequence.iterator();
+        MutableString word = new MutableString();
+        MutableString nonWord = new MutableString();
+
+        Document document = iterator.nextDocument();
+        assertEquals("0000000000000001", document.title().toString());
+        document.close();
+
+        document = iterator.nextDocument();
+        WordReader wordReader = document.wordReader(1);
+        wordReader.setReader((Reader)document.content(1));
+        int count = 0;
+        while (wordReader.next(word, nonWord)) {
+            assertEquals(String.format("t%d", count++), word.toString());
+        }
+        assertEquals(50000, count);
+        document.close();
+
+        // Stream 01 from the previous document must not leak into this one.
+        document = iterator.nextDocument();
+        assertEquals("0000000000000003", document.title().toString());
+        try {
+            document.content(1);
+            fail("Expected IOException for missing stream.");
+        }
+        catch (IOException e) {
+            // Expected.
+        }
+        document.close();
+
+        assertNull(iterator.nextDocument());
+        assertEquals(1, iterator.pool.allocated());
+        sequence.close();
+    }
+
+
+    public void testWordReaderOverPlainReader() throws IOException {
+        // Any Reader producing "(Term End)* End" works, not just ChunkStreamReader.
+        WordReader wordReader = new ChunkWordReader().copy();
+        wordReader.setReader(new StringReader("one\000m\u00f6re\000\000"));
+
+        MutableString word = new MutableString();
+        MutableString nonWord = new MutableString();
+        assertTrue(wordReader.next(word, nonWord));
+        assertEquals("one", word.toString());
+        assertTrue(wordReader.next(word, nonWord));
+        assertEquals("m\u00f6re", word.toString());
+        assertFalse(wordReader.next(word, nonWord));
+    }
+
+
+    static File writeChunk(String contents) throws IOException {
+        File file = File.createTempFile("chunk", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+
+    static List<String> readAll(DocumentSequence sequence) throws IOException {
+        return readAll(sequence.iterator(), sequence.factory().numberOfFields());
+    }
+
+
+    static List<String> readAll(DocumentIterator iterator, int fieldCount) throws IOException {
+        List<String> result = new ArrayList<>();
+        MutableString word = new MutableString();
+        MutableString nonWord = new MutableString();
+
+        Document document;
+        while ((document = iterator.nextDocument()) != null) {
+            result.add(document.title().toString().substring(2));
+            for (int f = 0; f < fieldCount; ++f) {
+                WordReader wordReader = document.wordReader(f);
+                wordReader.setReader((Reader)document.content(f));
+                while (wordReader.next(word, nonWord)) {
+                    result.add(String.format("%02x:%s", f, word));
+                }
+            }
+            document.close();
+        }
+        iterator.close();
+
+        return result;
+    }
+}
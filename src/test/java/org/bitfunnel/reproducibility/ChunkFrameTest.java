@@ -0,0 +1,80 @@
+package org.bitfunnel.reproducibility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+public class ChunkFrameTest
+        extends TestCase {
+
+    public ChunkFrameTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(ChunkFrameTest.class);
+    }
+
+
+    public void testChunkFrames() throws IOException {
+        byte[] chunk = ChunkDocumentSequenceTest.CHUNK.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ChunkFrameWriter writer = new ChunkFrameWriter(output)) {
+            writer.writeFrame(chunk, 0, chunk.length);
+            writer.writeFrame(chunk, 0, chunk.length);
+        }
+        byte[] stream = output.toByteArray();
+
+        ChunkFrameReader reader = new ChunkFrameReader(new ByteArrayInputStream(stream), chunk.length);
+        assertEquals(ChunkDocumentSequenceTest.EXPECTED, ChunkDocumentSequenceTest.readAll(new ChunkDocumentSequence(new ByteArrayInputStream(reader.nextFrame()))));
+        assertTrue(Arrays.equals(chunk, reader.nextFrame()));
+        assertNull(reader.nextFrame());
+
+        // A stream that ends between frames ends normally. One that ends inside a frame does not.
+        reader = new ChunkFrameReader(new ByteArrayInputStream(Arrays.copyOf(stream, stream.length - 8)), chunk.length);
+        reader.nextFrame();
+        reader.nextFrame();
+        assertNull(reader.nextFrame());
+        reader = new ChunkFrameReader(new ByteArrayInputStream(Arrays.copyOf(stream, stream.length - 9)), chunk.length);
+        reader.nextFrame();
+        try {
+            reader.nextFrame();
+            fail("A truncated frame was accepted.");
+        }
+        catch (IOException e) {
+            // Expected.
+        }
+    }
+
+
+    public void testTruncatedFrameLength() throws IOException {
+        byte[] chunk = ChunkDocumentSequenceTest.CHUNK.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ChunkFrameWriter writer = new ChunkFrameWriter(output)) {
+            writer.writeFrame(chunk, 0, chunk.length);
+            writer.writeFrame(chunk, 0, chunk.length);
+        }
+        byte[] stream = output.toByteArray();
+
+        // The stream ends three bytes into the length of the second frame.
+        int header = ChunkFrameWriter.MAGIC.length + 1;
+        int cut = header + 8 + chunk.length + 3;
+        ChunkFrameReader reader = new ChunkFrameReader(new ByteArrayInputStream(Arrays.copyOf(stream, cut)), chunk.length);
+        assertTrue(Arrays.equals(chunk, reader.nextFrame()));
+        try {
+            reader.nextFrame();
+            fail("A truncated frame length was accepted.");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("frame length"));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.bitfunnel.reproducibility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class ChunkIndexTest
+        extends TestCase {
+
+    public ChunkIndexTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(ChunkIndexTest.class);
+    }
+
+
+    public void testIndexedChunkDocumentSequence() throws Exception {
+        File file = File.createTempFile("chunk", ".txt");
+        file.deleteOnExit();
+        new File(ChunkIndex.path(file.getPath())).deleteOnExit();
+        // Blocks of 16 bytes, so the chunk has several.
+        ChunkIndex.Builder builder = new ChunkIndex.Builder(16);
+        try (OutputStream output = new FileOutputStream(file)) {
+            ChunkFile chunk = new ChunkFile(output);
+            chunk.setIndex(builder);
+            ChunkDocumentSequenceTest.writeDocuments(chunk);
+        }
+        builder.build().write(ChunkIndex.path(file.getPath()));
+
+        IndexedChunkDocumentSequence sequence = new IndexedChunkDocumentSequence(file.getPath());
+        ChunkIndex index = sequence.index();
+        assertEquals(2, sequence.size());
+        assertEquals(1, sequence.indexOf(0x1c8));
+        assertEquals(-1, sequence.indexOf(0x1c9));
+        assertEquals(ChunkDocumentSequenceTest.CHUNK.indexOf("00000000000001c8"), index.offset(1));
+        assertEquals(3, index.streamCount(1));
+        assertEquals(1, index.streamId(1, 2));
+        assertEquals(ChunkDocumentSequenceTest.CHUNK.indexOf("01\000m"), index.streamOffset(1, 2));
+        assertEquals(ChunkDocumentSequenceTest.EXPECTED, ChunkDocumentSequenceTest.readAll(sequence));
+
+        // A range, and a single document, read without the documents before them.
+        List<String> second = ChunkDocumentSequenceTest.EXPECTED.subList(ChunkDocumentSequenceTest.EXPECTED.indexOf("000000000001c8"), ChunkDocumentSequenceTest.EXPECTED.size());
+        assertEquals(second, ChunkDocumentSequenceTest.readAll(sequence.iterator(1, 2), 2));
+        assertEquals("00000000000001c8", sequence.document(1).title().toString());
+        byte[] bytes = ChunkDocumentSequenceTest.CHUNK.getBytes(StandardCharsets.UTF_8);
+        assertTrue(Arrays.equals(Arrays.copyOfRange(bytes, (int)index.offset(1), (int)index.offset(2)),
+                                 readBytes(sequence.stream(1))));
+        sequence.close();
+
+        // The checksums find a damaged block.
+        try (InputStream input = new FileInputStream(file)) {
+            assertEquals(-1, index.verify(input));
+        }
+        byte[] damaged = Files.readAllBytes(file.toPath());
+        damaged[40] ^= 1;
+        assertEquals(2, index.verify(new ByteArrayInputStream(damaged)));
+    }
+
+
+    private static byte[] readBytes(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != -1) {
+            output.write(b);
+        }
+        return output.toByteArray();
+    }
+}
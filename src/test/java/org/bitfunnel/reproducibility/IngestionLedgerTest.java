@@ -0,0 +1,61 @@
+package org.bitfunnel.reproducibility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+
+public class IngestionLedgerTest
+        extends TestCase {
+
+    public IngestionLedgerTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(IngestionLedgerTest.class);
+    }
+
+
+    public void testIngestionLedger() throws IOException {
+        File first = File.createTempFile("chunk", ".txt");
+        first.deleteOnExit();
+        File second = File.createTempFile("chunk", ".txt");
+        second.deleteOnExit();
+        Files.write(first.toPath(), ChunkDocumentSequenceTest.CHUNK.getBytes(StandardCharsets.UTF_8));
+        Files.write(second.toPath(), ChunkDocumentSequenceTest.CHUNK.getBytes(StandardCharsets.UTF_8));
+        File ledgerFile = File.createTempFile("index", IngestionLedger.EXTENSION);
+        ledgerFile.delete();
+        ledgerFile.deleteOnExit();
+        String[] files = { first.getPath(), second.getPath() };
+
+        IngestionLedger ledger = new IngestionLedger(ledgerFile.getPath());
+        assertTrue(ledger.isEmpty());
+        ledger.append(first.getPath(), 3);
+
+        // A reloaded ledger only reports the second file, numbered after the first.
+        ledger = new IngestionLedger(ledgerFile.getPath());
+        assertTrue(Arrays.equals(new String[] { second.getPath() }, ledger.newFiles(files)));
+        ledger.append(second.getPath(), 3);
+        assertEquals(0, new IngestionLedger(ledgerFile.getPath()).newFiles(files).length);
+        assertEquals(3, ledger.entries().get(1).firstDocument);
+        assertEquals(6, ledger.documentCount());
+
+        // A file that changed after ingestion is an error.
+        Files.write(first.toPath(), new byte[] { 0 });
+        try {
+            ledger.newFiles(files);
+            fail("A changed chunk file was accepted.");
+        }
+        catch (IOException e) {
+            // Expected.
+        }
+    }
+}
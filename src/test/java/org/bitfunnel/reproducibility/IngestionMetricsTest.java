@@ -0,0 +1,89 @@
+package org.bitfunnel.reproducibility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+
+public class IngestionMetricsTest
+        extends TestCase {
+
+    public IngestionMetricsTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(IngestionMetricsTest.class);
+    }
+
+
+    public void testSampledRows() throws Exception {
+        File file = File.createTempFile("index", ".metrics.csv");
+        file.deleteOnExit();
+        File threadsFile = new File(file.getPath().replace(".metrics.csv", ".metrics.threads.csv"));
+        threadsFile.deleteOnExit();
+
+        // An interval longer than the test, so the only sample is the one close() writes.
+        IngestionMetrics metrics = new IngestionMetrics(file.getPath(), 3600 * 1000);
+        metrics.setQueueDepth(() -> 7);
+        metrics.addDocuments(3);
+        metrics.addTerms(10);
+        metrics.addBytes(100);
+        try (InputStream input = metrics.meter(new ByteArrayInputStream(new byte[20]))) {
+            input.read();
+            input.read(new byte[30], 0, 30);
+        }
+
+        // This thread is busy for at least 50ms. Another is busy from its
+        // busy() to the sample, and a third is never busy.
+        metrics.busy();
+        Thread.sleep(50);
+        metrics.idle();
+        Thread busy = new Thread(metrics::busy, "busy");
+        busy.start();
+        busy.join();
+        Thread idle = new Thread(metrics::idle, "idle");
+        idle.start();
+        idle.join();
+        Thread.sleep(20);
+        metrics.close();
+
+        List<String> totals = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, totals.size());
+        assertTrue(totals.get(0).startsWith("seconds,documents,terms,bytes,"));
+        String[] row = totals.get(1).split(",");
+        double seconds = Double.parseDouble(row[0]);
+        assertEquals("3", row[1]);
+        assertEquals("10", row[2]);
+        assertEquals("120", row[3]);
+        assertEquals("7", row[7]);
+
+        List<String> threads = Files.readAllLines(threadsFile.toPath(), StandardCharsets.UTF_8);
+        assertEquals("seconds,thread,busySeconds,idleSeconds", threads.get(0));
+        assertEquals(4, threads.size());
+        for (String line : threads.subList(1, threads.size())) {
+            String[] fields = line.split(",");
+            double busySeconds = Double.parseDouble(fields[2]);
+            double idleSeconds = Double.parseDouble(fields[3]);
+            assertEquals(seconds, busySeconds + idleSeconds, 0.002);
+            if (fields[1].equals(Thread.currentThread().getName())) {
+                assertTrue(busySeconds >= 0.05);
+            }
+            else if (fields[1].equals("busy")) {
+                assertTrue(busySeconds >= 0.02);
+            }
+            else {
+                assertEquals("idle", fields[1]);
+                assertEquals(0.0, busySeconds);
+            }
+        }
+    }
+}
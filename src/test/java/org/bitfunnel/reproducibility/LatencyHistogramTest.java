@@ -0,0 +1,54 @@
+package org.bitfunnel.reproducibility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+
+public class LatencyHistogramTest
+        extends TestCase {
+
+    public LatencyHistogramTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(LatencyHistogramTest.class);
+    }
+
+
+    public void testPercentilesOfMergedHistograms() {
+        // Two threads record the odd and even values of 1..1000000 microseconds.
+        LatencyHistogram odd = new LatencyHistogram();
+        LatencyHistogram even = new LatencyHistogram();
+        for (long value = 1; value <= 1000000; ++value) {
+            (value % 2 == 0 ? even : odd).recordValue(value * 1000);
+        }
+        LatencyHistogram total = new LatencyHistogram();
+        total.add(odd);
+        total.add(even);
+
+        assertEquals(1000000, total.totalCount());
+        assertEquals(1000L * 1000000, total.maxValue());
+        assertEquals(1000, total.minValue());
+        assertEquals(500000.5 * 1000, total.mean(), 1e-6);
+
+        // Three significant digits.
+        double[] percentiles = { 50.0, 90.0, 99.0, 99.9, 100.0 };
+        for (double percentile : percentiles) {
+            double expected = percentile * 10000 * 1000;
+            assertEquals(expected, total.valueAtPercentile(percentile), expected * 1e-3);
+        }
+    }
+
+
+    public void testClampsLargeValues() {
+        LatencyHistogram histogram = new LatencyHistogram(1000000, 2);
+        histogram.recordValue(5);
+        histogram.recordValue(2000000);
+        assertEquals(1, histogram.clampedCount());
+        assertEquals(1000000, histogram.maxValue());
+        assertEquals(5, histogram.valueAtPercentile(50.0));
+    }
+}
@@ -0,0 +1,108 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.index.Index;
+import it.unimi.di.big.mg4j.index.IndexIterator;
+import it.unimi.di.big.mg4j.index.IndexReader;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class ParallelIndexBuilderTest
+        extends TestCase {
+
+    public ParallelIndexBuilderTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(ParallelIndexBuilderTest.class);
+    }
+
+
+    public void testThreadCountDoesNotChangeTheIndex() throws Exception {
+        Path directory = Files.createTempDirectory("index");
+        try {
+            // Three chunk files of five documents. Document i has "every",
+            // "even" or "odd", "third" when i is a multiple of three, and a
+            // term of its own, in its body; and "even" or "odd" in its title.
+            List<String> files = new ArrayList<>();
+            for (int chunk = 0; chunk < 3; ++chunk) {
+                StringBuilder contents = new StringBuilder();
+                for (int i = chunk * 5; i < (chunk + 1) * 5; ++i) {
+                    String parity = i % 2 == 0 ? "even" : "odd";
+                    contents.append(String.format("%016x\00000\000every\000%s\000", i, parity));
+                    if (i % 3 == 0) {
+                        contents.append("third\000");
+                    }
+                    contents.append(String.format("only%c\000\00001\000%s\000\000\000", (char)('a' + i), parity));
+                }
+                contents.append('\0');
+                Path file = directory.resolve(String.format("chunk-%d.txt", chunk));
+                Files.write(file, contents.toString().getBytes(StandardCharsets.UTF_8));
+                files.add(file.toString());
+            }
+            Path manifest = directory.resolve("manifest.txt");
+            Files.write(manifest, files, StandardCharsets.UTF_8);
+
+            String serial = directory.resolve("serial").toString();
+            String parallel = directory.resolve("parallel").toString();
+            // The parallel build also memory-maps the chunks, so it reads them differently.
+            new ParallelIndexBuilder(manifest.toString(), serial, false, false).run(1, false);
+            new ParallelIndexBuilder(manifest.toString(), parallel, false, true).run(3, false);
+
+            for (String field : new String[] { "text", "title" }) {
+                Index expected = Index.getInstance(serial + "-" + field, true, true);
+                Index actual = Index.getInstance(parallel + "-" + field, true, true);
+                assertEquals(15, expected.numberOfDocuments);
+                assertEquals(expected.numberOfDocuments, actual.numberOfDocuments);
+                assertEquals(expected.numberOfTerms, actual.numberOfTerms);
+                assertEquals(expected.numberOfOccurrences, actual.numberOfOccurrences);
+
+                for (String term : new String[] { "every", "even", "odd", "third", "onlyg", "missing" }) {
+                    assertEquals(field + " " + term, documents(expected, term), documents(actual, term));
+                }
+            }
+
+            Index text = Index.getInstance(serial + "-text", true, true);
+            assertEquals(15, documents(text, "every").size());
+            assertEquals(8, documents(text, "even").size());
+            assertEquals(5, documents(text, "third").size());
+            assertEquals(1, documents(text, "onlyg").size());
+            assertEquals(6L, (long)documents(text, "onlyg").get(0));
+        }
+        finally {
+            File[] files = directory.toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.toFile().delete();
+        }
+    }
+
+
+    /**
+     * @return the documents containing term, in order.
+     */
+    private static List<Long> documents(Index index, String term) throws Exception {
+        List<Long> result = new ArrayList<>();
+        try (IndexReader reader = index.getReader()) {
+            IndexIterator iterator = reader.documents(term);
+            long document;
+            while ((document = iterator.nextDocument()) != IndexIterator.END_OF_LIST) {
+                result.add(document);
+            }
+        }
+        return result;
+    }
+}
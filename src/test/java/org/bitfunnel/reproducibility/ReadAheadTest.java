@@ -0,0 +1,73 @@
+package org.bitfunnel.reproducibility;
+
+import it.unimi.di.big.mg4j.document.DocumentSequence;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+
+public class ReadAheadTest
+        extends TestCase {
+
+    public ReadAheadTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(ReadAheadTest.class);
+    }
+
+
+    public void testReadAheadChunkDocumentSequence() throws IOException {
+        File file = ChunkDocumentSequenceTest.writeChunk(ChunkDocumentSequenceTest.CHUNK);
+        // Blocks far smaller than the chunk, so parsing waits on the I/O thread.
+        try (ReadAhead readAhead = new ReadAhead(2, 7, 2)) {
+            // A stream closed before it is read must not hold up the others.
+            readAhead.open(() -> new FileInputStream(file)).close();
+
+            DocumentSequence sequence = new ChunkDocumentSequence(readAhead.open(() -> new FileInputStream(file)));
+            assertEquals(ChunkDocumentSequenceTest.EXPECTED, ChunkDocumentSequenceTest.readAll(sequence));
+            sequence.close();
+        }
+    }
+
+
+    public void testStreamsAreReadInAnyOrder() throws IOException {
+        byte[] first = new byte[100];
+        byte[] second = new byte[100];
+        for (int i = 0; i < 100; ++i) {
+            first[i] = (byte)i;
+            second[i] = (byte)(100 - i);
+        }
+        // One I/O thread and one block of credit, so the unread first stream
+        // must not keep the thread from reading the second.
+        try (ReadAhead readAhead = new ReadAhead(1, 4, 1)) {
+            InputStream firstStream = readAhead.open(() -> new ByteArrayInputStream(first));
+            InputStream secondStream = readAhead.open(() -> new ByteArrayInputStream(second));
+            assertTrue(Arrays.equals(second, readBytes(secondStream)));
+            assertTrue(Arrays.equals(first, readBytes(firstStream)));
+            secondStream.close();
+            firstStream.close();
+        }
+    }
+
+
+    private static byte[] readBytes(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            output.write(buffer, 0, n);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,40 @@
+package org.bitfunnel.reproducibility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+
+public class SampleStatisticsTest
+        extends TestCase {
+
+    public SampleStatisticsTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(SampleStatisticsTest.class);
+    }
+
+
+    public void testMeanDeviationAndConfidenceInterval() {
+        double[] qps = { 900.0, 1000.0, 1000.0, 1100.0, 2, 4, 6 };
+
+        SampleStatistics statistics = new SampleStatistics(qps, 0, 4);
+        assertEquals(4, statistics.count());
+        assertEquals(1000.0, statistics.mean(), 1e-9);
+        assertEquals(Math.sqrt(20000.0 / 3), statistics.standardDeviation(), 1e-9);
+        assertEquals(statistics.standardDeviation() / 1000.0, statistics.coefficientOfVariation(), 1e-12);
+        // t at 3 degrees of freedom.
+        assertEquals(3.182 * statistics.standardDeviation() / 2, statistics.confidenceInterval95(), 1e-9);
+
+        SampleStatistics tail = new SampleStatistics(qps, 4, 7);
+        assertEquals(4.0, tail.mean(), 1e-9);
+        assertEquals(2.0, tail.standardDeviation(), 1e-9);
+
+        SampleStatistics single = new SampleStatistics(new double[] { 5.0 });
+        assertEquals(0.0, single.standardDeviation());
+        assertEquals(0.0, single.confidenceInterval95());
+    }
+}
@@ -0,0 +1,52 @@
+package org.bitfunnel.reproducibility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+
+public class TermStatisticsTest
+        extends TestCase {
+
+    public TermStatisticsTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(TermStatisticsTest.class);
+    }
+
+
+    public void testTermStatistics() throws Exception {
+        File manifest = File.createTempFile("manifest", ".txt");
+        manifest.deleteOnExit();
+        Files.write(manifest.toPath(),
+                    Arrays.asList(ChunkDocumentSequenceTest.writeChunk(ChunkDocumentSequenceTest.CHUNK).getPath(), ChunkDocumentSequenceTest.writeChunk(ChunkDocumentSequenceTest.CHUNK).getPath()),
+                    StandardCharsets.UTF_8);
+        File output = File.createTempFile("statistics", ".bfts");
+        output.deleteOnExit();
+
+        // Spill after every document, so the counts come from merged runs.
+        TermStatisticsCollector collector = new TermStatisticsCollector(manifest.getPath(), output.getPath(), false, false);
+        collector.setMaxTerms(1);
+        collector.run(2);
+
+        TermStatistics statistics = TermStatistics.read(output.getPath());
+        assertEquals(4, statistics.documentCount());
+        int title = statistics.fieldIndex("title");
+        assertEquals(4, statistics.termCount(title));
+        assertEquals(4, statistics.documentFrequency(title, "text"));
+        assertEquals(2, statistics.documentFrequency(title, "m\u00f6re\u20ac\ud83d\ude00"));
+        assertEquals(2, statistics.collectionFrequency(statistics.fieldIndex("text"), "one"));
+        assertEquals(0, statistics.documentFrequency(title, "one"));
+        assertEquals(2, statistics.documentLengths(title).count(3));
+        assertEquals(10, statistics.sumCollectionFrequency(title));
+        assertEquals(3, statistics.termLengths(title).count(4));
+    }
+}
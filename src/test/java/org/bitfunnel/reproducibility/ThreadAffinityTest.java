@@ -0,0 +1,36 @@
+package org.bitfunnel.reproducibility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+
+public class ThreadAffinityTest
+        extends TestCase {
+
+    public ThreadAffinityTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(ThreadAffinityTest.class);
+    }
+
+
+    public void testParseCpuList() {
+        int[] cpus = ThreadAffinity.parseCpuList("0-3, 8,10-11");
+        assertEquals(7, cpus.length);
+        assertEquals(0, cpus[0]);
+        assertEquals(3, cpus[3]);
+        assertEquals(8, cpus[4]);
+        assertEquals(11, cpus[6]);
+
+        try {
+            ThreadAffinity.parseCpuList("3-1");
+            fail("A descending range should be rejected.");
+        }
+        catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.bitfunnel.runner;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.bitfunnel.reproducibility.ReadAhead;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public class ChunkSchedulerTest
+        extends TestCase {
+
+    public ChunkSchedulerTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(ChunkSchedulerTest.class);
+    }
+
+
+    public void testReadAheadCoversSplitChunk() throws IOException {
+        StringBuilder chunk = new StringBuilder();
+        for (int i = 0; i < 50; ++i) {
+            chunk.append(String.format("%016x\00000\000term%d\000body\000\000\000", i, i));
+        }
+        chunk.append('\0');
+        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        File file = File.createTempFile("chunk", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes);
+
+        ChunkScheduler scheduler = new ChunkScheduler(new String[] { file.getPath() }, 4, 200, false);
+        assertTrue(scheduler.taskCount() > 1);
+
+        List<ChunkScheduler.Task> tasks = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        // Blocks far smaller than a range, so each range is read ahead in pieces.
+        try (ReadAhead readAhead = new ReadAhead(2, 7, 2)) {
+            scheduler.setReadAhead(readAhead, 2);
+            ChunkScheduler.Task task;
+            while ((task = scheduler.next()) != null) {
+                tasks.add(task);
+                try (InputStream input = task.open()) {
+                    contents.add(readBytes(input));
+                }
+            }
+        }
+        assertEquals(scheduler.taskCount(), tasks.size());
+        assertEquals(0, scheduler.remaining());
+
+        // Each range parses as a chunk of its own, and together they hold the
+        // documents of the file in order.
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); ++i) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingLong(i -> tasks.get(i).start));
+        ByteArrayOutputStream documents = new ByteArrayOutputStream();
+        for (int i : order) {
+            byte[] range = contents.get(i);
+            assertEquals(0, range[range.length - 1]);
+            documents.write(range, 0, range.length - 1);
+        }
+        documents.write(0);
+        assertTrue(Arrays.equals(bytes, documents.toByteArray()));
+    }
+
+
+    public void testRangesReadByteByByte() throws IOException {
+        String chunk =
+                "000000000000007b\00000\000one\000\000\000" +
+                "00000000000001c8\00000\000two\000\000\000" +
+                "\000";
+        File file = File.createTempFile("chunk", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), chunk.getBytes(StandardCharsets.UTF_8));
+
+        ChunkScheduler scheduler = new ChunkScheduler(new String[] { file.getPath() }, 2, 10, false);
+        assertEquals(2, scheduler.taskCount());
+        StringBuilder ranges = new StringBuilder();
+        ChunkScheduler.Task task;
+        while ((task = scheduler.next()) != null) {
+            try (InputStream input = task.open()) {
+                int b;
+                while ((b = input.read()) != -1) {
+                    ranges.append((char)b);
+                }
+            }
+        }
+        // Both documents are the same size, so the ranges come out in file order.
+        assertEquals("000000000000007b\00000\000one\000\000\000\000" +
+                     "00000000000001c8\00000\000two\000\000\000\000",
+                     ranges.toString());
+    }
+
+
+    private static byte[] readBytes(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64];
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            output.write(buffer, 0, n);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,149 @@
+package org.bitfunnel.runner;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CorpusFileTest
+        extends TestCase {
+
+    public CorpusFileTest(String testName) {
+        super(testName);
+    }
+
+
+    public static Test suite() {
+        return new TestSuite(CorpusFileTest.class);
+    }
+
+
+    public void testReportsChunkContents() throws IOException {
+        // The long term does not fit in CorpusFile's initial buffer.
+        StringBuilder longTerm = new StringBuilder();
+        for (int i = 0; i < CorpusFile.BUFFER_SIZE + 100; ++i) {
+            longTerm.append((char)('a' + i % 26));
+        }
+
+        String chunk =
+                "000000000000007b\00000\000one\000\00001\000m\u00f6re\u20ac\000text\000\000\000" +
+                "ffffffffffffffff\00001\000" + longTerm + "\000x\000\000\000" +
+                "\000";
+
+        List<String> events = process(chunk);
+        assertEquals(Arrays.asList(
+                "open", "doc 123", "stream 00", "one", "close stream", "stream 01", "m\u00f6re\u20ac", "text", "close stream", "close doc",
+                "doc -1", "stream 01", longTerm.toString(), "x", "close stream", "close doc", "close"),
+                events);
+    }
+
+
+    public void testDeliversRawTerms() throws IOException {
+        String chunk = "000000000000007b\00001\000body\000m\u00f6re\000\000\000\000";
+        List<String> events = new ArrayList<>();
+        CorpusFile corpus = new CorpusFile(new ByteArrayInputStream(chunk.getBytes(StandardCharsets.UTF_8)));
+        corpus.process(new IRawDocumentProcessor() {
+            public void openDocumentSet() { }
+            public void openDocument(long documentId) { events.add("doc " + documentId); }
+            public void openStream(String name) { events.add("stream " + name); }
+            public void term(byte[] bytes, int offset, int length) {
+                events.add(new String(bytes, offset, length, StandardCharsets.UTF_8));
+            }
+            public void closeStream() { }
+            public void closeDocument() { }
+            public void closeDocumentSet() { }
+        });
+        assertEquals(Arrays.asList("doc 123", "stream 01", "body", "m\u00f6re"), events);
+    }
+
+
+    public void testRejectsMalformedChunks() {
+        String[] chunks = {
+                "000000000000007g\00000\000one\000\000\000\000",    // Bad hex digit.
+                "000000000000007b\00000\000one\000\000\000",        // Missing end of corpus.
+                "000000000000007b\00000\000one",                    // Truncated term.
+                "7b\00000\000one\000\000\000\000" };                // Short document id.
+        for (String chunk : chunks) {
+            try {
+                process(chunk);
+                fail("Expected IOException.");
+            }
+            catch (IOException e) {
+                // Expected.
+            }
+        }
+    }
+
+
+    public void testScheduledRangesCoverEveryDocument() throws IOException {
+        // Documents with an empty last stream and with no streams at all.
+        String chunk =
+                "0000000000000001\00000\000one\000two\000\000\000" +
+                "0000000000000002\00000\000\00001\000three\000\000\000" +
+                "0000000000000003\00000\000four\000\00001\000\000\000" +
+                "0000000000000004\000\000" +
+                "0000000000000005\00001\000five\000\000\000" +
+                "0000000000000006\000\000" +
+                "\000";
+        File file = File.createTempFile("CorpusFileTest", ".chunk");
+        file.deleteOnExit();
+        Files.write(file.toPath(), chunk.getBytes(StandardCharsets.UTF_8));
+
+        for (long splitBytes = 1; splitBytes < chunk.length(); ++splitBytes) {
+            ChunkScheduler scheduler = new ChunkScheduler(new String[] { file.getPath() }, 1, splitBytes, false);
+            List<String> events = new ArrayList<>();
+            ChunkScheduler.Task task;
+            while ((task = scheduler.next()) != null) {
+                try (InputStream input = task.open()) {
+                    new CorpusFile(input).process(new IDocumentProcessor() {
+                        public void openDocumentSet() { }
+                        public void openDocument(Long documentId) { events.add("doc " + documentId); }
+                        public void openStream(String name) { }
+                        public void term(String term) { events.add(term); }
+                        public void closeStream() { }
+                        public void closeDocument() { }
+                        public void closeDocumentSet() { }
+                    });
+                }
+            }
+            // Ranges are dispatched largest first, so compare the documents in id order.
+            List<String> documents = new ArrayList<>();
+            for (String event : events) {
+                if (event.startsWith("doc ")) {
+                    documents.add(event);
+                }
+            }
+            Collections.sort(documents);
+            assertEquals("splitBytes " + splitBytes,
+                         Arrays.asList("doc 1", "doc 2", "doc 3", "doc 4", "doc 5", "doc 6"),
+                         documents);
+            assertEquals(11, events.size());
+        }
+    }
+
+
+    private static List<String> process(String chunk) throws IOException {
+        List<String> events = new ArrayList<>();
+        CorpusFile corpus = new CorpusFile(new ByteArrayInputStream(chunk.getBytes(StandardCharsets.UTF_8)));
+        corpus.process(new IDocumentProcessor() {
+            public void openDocumentSet() { events.add("open"); }
+            public void openDocument(Long documentId) { events.add("doc " + documentId); }
+            public void openStream(String name) { events.add("stream " + name); }
+            public void term(String term) { events.add(term); }
+            public void closeStream() { events.add("close stream"); }
+            public void closeDocument() { events.add("close doc"); }
+            public void closeDocumentSet() { events.add("close"); }
+        });
+        return events;
+    }
+}
@@ -79,5 +79,44 @@ public class LuceneRunnerTest
         dir.close();
     }
 
-}
+    public void testPretokenizedIngestion() throws IOException {
+        // The second document repeats stream 01, as multi-segment streams do.
+        byte[] inputFile =
+                ("000000000000007b\00000\000one\000\00001\000body\000text\000\000\000" +
+                        "00000000000001c8\00000\000two\000\00001\000some\000\00001\000u.s.\000text\000\000\000" +
+                        "\000").getBytes(StandardCharsets.UTF_8);
+
+        Directory dir = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new StandardAnalyzer()));
+        TokenStreamDocumentProcessor processor = new TokenStreamDocumentProcessor(writer);
+        new CorpusFile(new ByteArrayInputStream(inputFile)).process(processor);
+        writer.commit();
+        assertEquals(2, processor.documentCount());
+        assertEquals(7, processor.termCount());
+
+        DirectoryReader ireader = DirectoryReader.open(dir);
+        IndexSearcher isearcher = new IndexSearcher(ireader);
+        assertEquals(2, ireader.numDocs());
 
+        // Terms are indexed exactly as written, without frequencies or positions.
+        Terms terms = MultiFields.getTerms(ireader, "01");
+        assertFalse(terms.hasFreqs());
+        assertFalse(terms.hasPositions());
+        assertEquals(4, terms.size());
+
+        assertEquals(2, countHits(isearcher, new Term("01", "text")));
+        assertEquals(1, countHits(isearcher, new Term("01", "u.s.")));
+        assertEquals(1, countHits(isearcher, new Term("01", "some")));
+        assertEquals(0, countHits(isearcher, new Term("00", "text")));
+
+        ireader.close();
+        dir.close();
+    }
+
+
+    private static int countHits(IndexSearcher isearcher, Term term) throws IOException {
+        TotalHitCountCollector collector = new TotalHitCountCollector();
+        isearcher.search(new ConstantScoreQuery(new TermQuery(term)), collector);
+        return collector.getTotalHits();
+    }
+}